@@ -0,0 +1,148 @@
+package top.skidder.parser;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+// 把多个 AnalysisPass 融合到一次遍历中：每个节点只访问一次，按节点类型分派给关心它的分析。
+// 多个文件时每个文件是一个 ForkJoin 任务，结果用各个分析的 merge 按文件顺序两两合并，与顺序执行的结果相同
+public final class Analysis {
+    private final AnalysisPass<?>[] passes;
+    // 每种节点类型对应的分析下标，第一次遇到这个类型时计算
+    private final ClassValue<int[]> dispatch = new ClassValue<int[]>() {
+        @Override
+        protected int[] computeValue(Class<?> type) {
+            int[] indices = new int[passes.length];
+            int count = 0;
+            for (int i = 0; i < passes.length; i++) {
+                for (Class<? extends AstNode> interest : passes[i].nodeTypes()) {
+                    if (interest.isAssignableFrom(type)) {
+                        indices[count++] = i;
+                        break;
+                    }
+                }
+            }
+            return Arrays.copyOf(indices, count);
+        }
+    };
+
+    public Analysis(Collection<? extends AnalysisPass<?>> passes) {
+        this.passes = passes.toArray(new AnalysisPass<?>[0]);
+    }
+
+    public Analysis(AnalysisPass<?>... passes) {
+        this(Arrays.asList(passes));
+    }
+
+    // 在当前线程上分析一个文件
+    public Results run(List<? extends AstNode> statements) {
+        Object[] states = begin();
+        new Walker(states).walk(statements);
+        return new Results(passes, states);
+    }
+
+    // 并行分析多个文件并合并结果
+    public Results runAll(List<? extends List<? extends AstNode>> files) {
+        return runAll(files, ForkJoinPool.commonPool());
+    }
+
+    public Results runAll(List<? extends List<? extends AstNode>> files, ForkJoinPool pool) {
+        if (files.isEmpty()) {
+            return new Results(passes, begin());
+        }
+        return new Results(passes, pool.invoke(new AnalysisTask(files, 0, files.size())));
+    }
+
+    private Object[] begin() {
+        Object[] states = new Object[passes.length];
+        for (int i = 0; i < passes.length; i++) {
+            states[i] = passes[i].begin();
+        }
+        return states;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private Object[] merge(Object[] left, Object[] right) {
+        for (int i = 0; i < passes.length; i++) {
+            left[i] = ((AnalysisPass) passes[i]).merge(left[i], right[i]);
+        }
+        return left;
+    }
+
+    // 每个分析的结果
+    public static final class Results {
+        private final AnalysisPass<?>[] passes;
+        private final Object[] states;
+
+        Results(AnalysisPass<?>[] passes, Object[] states) {
+            this.passes = passes;
+            this.states = states;
+        }
+
+        @SuppressWarnings("unchecked")
+        public <S> S get(AnalysisPass<S> pass) {
+            for (int i = 0; i < passes.length; i++) {
+                if (passes[i] == pass) {
+                    return (S) states[i];
+                }
+            }
+            throw new IllegalArgumentException("Pass is not part of this analysis: " + pass);
+        }
+    }
+
+    private final class Walker extends AstWalker {
+        private final Object[] states;
+
+        Walker(Object[] states) {
+            this.states = states;
+        }
+
+        @Override
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        protected boolean enter(AstNode node) {
+            for (int index : dispatch.get(node.getClass())) {
+                ((AnalysisPass) passes[index]).enter(node, states[index]);
+            }
+            return true;
+        }
+
+        @Override
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        protected void exit(AstNode node) {
+            for (int index : dispatch.get(node.getClass())) {
+                ((AnalysisPass) passes[index]).exit(node, states[index]);
+            }
+        }
+    }
+
+    // 分析 [from, to) 中的文件，只剩一个文件时直接遍历
+    private final class AnalysisTask extends RecursiveTask<Object[]> {
+        private static final long serialVersionUID = 1L;
+
+        private final List<? extends List<? extends AstNode>> files;
+        private final int from;
+        private final int to;
+
+        AnalysisTask(List<? extends List<? extends AstNode>> files, int from, int to) {
+            this.files = files;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Object[] compute() {
+            if (to - from == 1) {
+                Object[] states = begin();
+                new Walker(states).walk(files.get(from));
+                return states;
+            }
+            int mid = (from + to) >>> 1;
+            AnalysisTask right = new AnalysisTask(files, mid, to);
+            right.fork();
+            Object[] left = new AnalysisTask(files, from, mid).compute();
+            return merge(left, right.join());
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package top.skidder.parser;
+
+import java.util.Collection;
+
+// Analysis 中的一个分析，S 为它的状态和结果。每个文件开始时用 begin 创建状态，
+// 遍历时只有 nodeTypes 中的类型（包括子类）的节点会交给 enter/exit，最后用 merge 把各个文件的结果按文件顺序合并
+public interface AnalysisPass<S> {
+    // 关心的节点类型，AstNode.class 表示所有节点
+    Collection<Class<? extends AstNode>> nodeTypes();
+
+    S begin();
+
+    // 前序，进入节点时调用
+    void enter(AstNode node, S state);
+
+    // 后序，节点的子节点都遍历完后调用
+    default void exit(AstNode node, S state) {
+    }
+
+    // 合并两组文件的结果，left 中的文件在 right 之前；可以修改并返回其中一个
+    S merge(S left, S right);
+}
@@ -0,0 +1,122 @@
+package top.skidder.parser;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+
+// 磁盘上的 AST 缓存：文件以源码内容的 SHA-256 和格式版本命名，命中时通过内存映射读取并反序列化，不再做词法分析和解析。
+// 版本不一致、文件损坏或无法读取时退回正常解析并重写缓存；写入先写临时文件再改名，多个进程可以共享同一个目录。
+// 读写都不递归，嵌套再深的 AST 也会被缓存
+public final class AstCache {
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final Path directory;
+    private final SymbolPool symbols;
+
+    public AstCache(Path directory) throws IOException {
+        this(directory, null);
+    }
+
+    public AstCache(Path directory, SymbolPool symbols) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.symbols = symbols;
+    }
+
+    public List<Statement> parse(Path file) throws IOException, ParseError {
+        return parse(MappedSource.map(file), true);
+    }
+
+    public List<Statement> parse(CharSequence code) throws ParseError {
+        return parse(code, false);
+    }
+
+    // mapped 为 true 时 code 是内存映射的文件，字面量立即解码，AST 不引用映射
+    private List<Statement> parse(CharSequence code, boolean mapped) throws ParseError {
+        Path entry = directory.resolve(key(code) + ".v" + AstSerializer.VERSION + ".ast");
+        List<Statement> cached = load(entry);
+        if (cached != null) {
+            return cached;
+        }
+        List<Statement> statements = mapped
+                ? ParseContext.local().parse(code, symbols, Parser.DEFAULT_MAX_DEPTH, true)
+                : LuaParser.parse(code, symbols);
+        store(entry, statements);
+        return statements;
+    }
+
+    // 读取缓存，不存在或者无法使用时返回 null
+    private List<Statement> load(Path entry) {
+        try (FileChannel channel = FileChannel.open(entry, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return AstSerializer.read(buffer, symbols);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException | IllegalArgumentException e) {
+            return null; // 损坏或者版本不一致，重新解析后覆盖
+        }
+    }
+
+    // 写入缓存失败不影响解析结果
+    private void store(Path entry, List<Statement> statements) {
+        byte[] bytes = AstSerializer.write(statements);
+        Path temp = null;
+        try {
+            temp = Files.createTempFile(directory, entry.getFileName().toString(), ".tmp");
+            Files.write(temp, bytes);
+            try {
+                Files.move(temp, entry, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, entry, StandardCopyOption.REPLACE_EXISTING);
+            }
+            temp = null;
+        } catch (IOException e) {
+            // 目录不可写等情况，下次启动时重新解析
+        } finally {
+            if (temp != null) {
+                try {
+                    Files.deleteIfExists(temp);
+                } catch (IOException ignored) {
+                    // 临时文件留在目录中不影响缓存的使用
+                }
+            }
+        }
+    }
+
+    // 源码内容的 SHA-256，按 UTF-16 编码计算
+    private static String key(CharSequence code) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // 每个 Java 平台都必须支持 SHA-256
+        }
+        byte[] chunk = new byte[8192];
+        int size = 0;
+        for (int i = 0, length = code.length(); i < length; i++) {
+            char c = code.charAt(i);
+            chunk[size++] = (byte) (c >>> 8);
+            chunk[size++] = (byte) c;
+            if (size == chunk.length) {
+                digest.update(chunk, 0, size);
+                size = 0;
+            }
+        }
+        digest.update(chunk, 0, size);
+        byte[] hash = digest.digest();
+        char[] hex = new char[hash.length * 2];
+        for (int i = 0; i < hash.length; i++) {
+            hex[i * 2] = HEX[(hash[i] >> 4) & 0xF];
+            hex[i * 2 + 1] = HEX[hash[i] & 0xF];
+        }
+        return new String(hex);
+    }
+}
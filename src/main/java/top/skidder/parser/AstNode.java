@@ -0,0 +1,34 @@
+package top.skidder.parser;
+
+// Statement 和 Expression 的公共基类：源码范围、访问者分派和按下标访问子节点。
+// 子节点按源码顺序排列，null 的子节点（没有步长的 for、没有初始值的 local 等）不计入
+public abstract class AstNode {
+    // 在源码中的范围 [offset, endOffset)，不是由 Parser 创建的节点为 -1
+    int offset = -1;
+    int endOffset = -1;
+
+    AstNode() {
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public int getEndOffset() {
+        return endOffset;
+    }
+
+    // 本包中的节点类型都会覆盖它分派到对应的 visit 方法，其他子类交给 visitNode
+    public <R, C> R accept(AstVisitor<R, C> visitor, C context) {
+        return visitor.visitNode(this, context);
+    }
+
+    public int childCount() {
+        return 0;
+    }
+
+    // 第 index 个子节点，0 <= index < childCount()
+    public AstNode child(int index) {
+        throw new IndexOutOfBoundsException("child " + index + " of " + getClass().getSimpleName());
+    }
+}
@@ -0,0 +1,663 @@
+package top.skidder.parser;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+// AST 的紧凑二进制格式：文件头（魔数、版本、内容长度、CRC32），字符串表，然后是前序排列的节点。
+// 节点以一个字节的类型开头，以源码范围结尾，整数和字符串下标都是变长编码，重复的名字只保存一次。
+// 字符串按 UTF-16 字符逐个变长编码，不经过 UTF-8 转换，字符串转义产生的单独代理字符也能原样读回
+final class AstSerializer {
+    // 语法树结构、解析规则或这个格式变化时加一，旧版本的缓存会被忽略
+    static final int VERSION = 5;
+
+    private static final int MAGIC = 0x4C415354; // "LAST"
+    private static final int HEADER = 16;
+
+    private static final int NULL = 0;
+    private static final int EXPRESSION_STATEMENT = 1;
+    private static final int ASSIGNMENT = 2;
+    private static final int IF = 3;
+    private static final int WHILE = 4;
+    private static final int REPEAT = 5;
+    private static final int FOR = 6;
+    private static final int FOR_IN = 7;
+    private static final int LOCAL = 8;
+    private static final int RETURN = 9;
+    private static final int LITERAL = 20;
+    private static final int NUMBER = 21;
+    private static final int BOOLEAN = 22;
+    private static final int NIL = 23;
+    private static final int BINARY = 24;
+    private static final int UNARY = 25;
+    private static final int FUNCTION_DEFINITION = 26;
+    private static final int ANONYMOUS_FUNCTION = 27;
+    private static final int FUNCTION_CALL = 28;
+    private static final int METHOD_CALL = 29;
+    private static final int MEMBER_ACCESS = 30;
+    private static final int TABLE = 31;
+    private static final int VARIABLE = 32;
+
+    private AstSerializer() {
+    }
+
+    static byte[] write(List<Statement> statements) {
+        Writer body = new Writer();
+        body.statements(statements);
+        Writer out = new Writer();
+        out.int32(MAGIC);
+        out.int32(VERSION);
+        out.int32(0); // 内容长度和 CRC 最后填写
+        out.int32(0);
+        out.varint(body.strings.size());
+        for (String string : body.strings.keySet()) {
+            out.varint(string.length());
+            for (int i = 0; i < string.length(); i++) {
+                out.varint(string.charAt(i));
+            }
+        }
+        out.bytes(body.buffer, body.size);
+        int end = out.size;
+        CRC32 crc = new CRC32();
+        crc.update(out.buffer, HEADER, end - HEADER);
+        out.size = 8;
+        out.int32(end - HEADER);
+        out.int32((int) crc.getValue());
+        return Arrays.copyOf(out.buffer, end);
+    }
+
+    // 读取 write 的结果，symbols 不为 null 时名字和短字符串会被规范化；版本不一致或内容损坏时抛出 IllegalArgumentException
+    static List<Statement> read(ByteBuffer buffer, SymbolPool symbols) {
+        try {
+            if (buffer.getInt(0) != MAGIC) {
+                throw new IllegalArgumentException("Not a serialized AST");
+            }
+            if (buffer.getInt(4) != VERSION) {
+                throw new IllegalArgumentException("Unsupported AST version " + buffer.getInt(4));
+            }
+            int length = buffer.getInt(8);
+            if (length < 0 || length != buffer.limit() - HEADER) {
+                throw new IllegalArgumentException("Truncated AST");
+            }
+            ByteBuffer content = buffer.duplicate();
+            content.position(HEADER);
+            CRC32 crc = new CRC32();
+            crc.update(content.duplicate());
+            if ((int) crc.getValue() != buffer.getInt(12)) {
+                throw new IllegalArgumentException("AST checksum mismatch");
+            }
+            return new Reader(content, symbols).read();
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | ClassCastException e) {
+            throw new IllegalArgumentException("Corrupt AST", e);
+        }
+    }
+
+    // 写入和读取都用显式栈代替递归，嵌套再深的语法树也不会占用 Java 调用栈
+    private static final class Writer {
+        private static final Object NULL_EXPRESSION = new Object();
+
+        byte[] buffer = new byte[256];
+        int size;
+        final Map<String, Integer> strings = new LinkedHashMap<>();
+        // 还没有写出的内容，按相反顺序压栈：节点（或 NULL_EXPRESSION）展开成它的各个部分，为 null 时写出 values 中的整数
+        private Object[] items = new Object[64];
+        private int[] values = new int[64];
+        private int pending;
+        // 正在展开的节点的各个部分，按写出顺序排列
+        private Object[] parts = new Object[16];
+        private int[] partValues = new int[16];
+        private int partCount;
+
+        void statements(List<Statement> statements) {
+            list(statements);
+            flush();
+            while (pending > 0) {
+                Object item = items[--pending];
+                items[pending] = null;
+                if (item == null) {
+                    varint(values[pending]);
+                } else if (item == NULL_EXPRESSION) {
+                    tag(NULL);
+                } else {
+                    node((AstNode) item);
+                    flush();
+                }
+            }
+        }
+
+        // 节点写成类型、字段和子节点，最后是源码范围：起始偏移加一和长度，没有位置信息时为 0 和 0
+        private void node(AstNode node) {
+            if (node instanceof Statement) {
+                statement((Statement) node);
+            } else {
+                expression((Expression) node);
+            }
+            part(node.offset + 1);
+            part(node.offset < 0 ? 0 : node.endOffset - node.offset);
+        }
+
+        private void statement(Statement statement) {
+            if (statement instanceof Statement.ExpressionStatement) {
+                part(EXPRESSION_STATEMENT);
+                child(((Statement.ExpressionStatement) statement).getExpression());
+            } else if (statement instanceof Statement.AssignmentStatement) {
+                Statement.AssignmentStatement assignment = (Statement.AssignmentStatement) statement;
+                part(ASSIGNMENT);
+                string(assignment.variable);
+                child(assignment.value);
+            } else if (statement instanceof Statement.IfStatement) {
+                Statement.IfStatement ifStatement = (Statement.IfStatement) statement;
+                part(IF);
+                child(ifStatement.getCondition());
+                list(ifStatement.getIfStatements());
+                list(ifStatement.getElseifStatements());
+                list(ifStatement.getElseifConditions());
+                for (int start : ifStatement.elseifStarts) {
+                    part(start);
+                }
+                list(ifStatement.getElseStatements());
+            } else if (statement instanceof Statement.WhileStatement) {
+                Statement.WhileStatement whileStatement = (Statement.WhileStatement) statement;
+                part(WHILE);
+                child(whileStatement.getCondition());
+                list(whileStatement.getBody());
+            } else if (statement instanceof Statement.RepeatStatement) {
+                Statement.RepeatStatement repeat = (Statement.RepeatStatement) statement;
+                part(REPEAT);
+                list(repeat.getBody());
+                child(repeat.getCondition());
+            } else if (statement instanceof Statement.ForStatement) {
+                Statement.ForStatement forStatement = (Statement.ForStatement) statement;
+                part(FOR);
+                string(forStatement.getVarName());
+                child(forStatement.getStart());
+                child(forStatement.getEnd());
+                child(forStatement.getStep());
+                list(forStatement.getBody());
+            } else if (statement instanceof Statement.ForInStatement) {
+                Statement.ForInStatement forIn = (Statement.ForInStatement) statement;
+                part(FOR_IN);
+                string(forIn.getKey());
+                string(forIn.getValue());
+                child(forIn.getIterator());
+                list(forIn.getBody());
+            } else if (statement instanceof Statement.LocalDeclarationStatement) {
+                Statement.LocalDeclarationStatement local = (Statement.LocalDeclarationStatement) statement;
+                part(LOCAL);
+                string(local.variableName);
+                child(local.initializer);
+            } else if (statement instanceof Statement.ReturnStatement) {
+                part(RETURN);
+                list(((Statement.ReturnStatement) statement).getReturnValues());
+            } else {
+                throw new IllegalArgumentException("Cannot serialize " + statement.getClass().getName());
+            }
+        }
+
+        private void expression(Expression expression) {
+            if (expression instanceof Expression.NumberLiteralExpression) {
+                part(NUMBER);
+                string(((Expression.NumberLiteralExpression) expression).getValue());
+            } else if (expression instanceof Expression.LiteralExpression) {
+                Expression.LiteralExpression literal = (Expression.LiteralExpression) expression;
+                part(LITERAL);
+                string(literal.type);
+                string(literal.getValue());
+            } else if (expression instanceof Expression.BooleanLiteralExpression) {
+                part(BOOLEAN);
+                part(((Expression.BooleanLiteralExpression) expression).getValue() ? 1 : 0);
+            } else if (expression instanceof Expression.NilLiteralExpression) {
+                part(NIL);
+            } else if (expression instanceof Expression.BinaryExpression) {
+                Expression.BinaryExpression binary = (Expression.BinaryExpression) expression;
+                part(BINARY);
+                string(binary.operator);
+                child(binary.left);
+                child(binary.right);
+            } else if (expression instanceof Expression.UnaryExpression) {
+                Expression.UnaryExpression unary = (Expression.UnaryExpression) expression;
+                part(UNARY);
+                string(unary.operator);
+                child(unary.expression);
+            } else if (expression instanceof Expression.FunctionDefinitionExpression) {
+                Expression.FunctionDefinitionExpression function = (Expression.FunctionDefinitionExpression) expression;
+                part(FUNCTION_DEFINITION);
+                string(function.name);
+                names(function.parameters);
+                list(function.body);
+            } else if (expression instanceof Expression.AnonymousFunctionExpression) {
+                Expression.AnonymousFunctionExpression function = (Expression.AnonymousFunctionExpression) expression;
+                part(ANONYMOUS_FUNCTION);
+                names(function.parameters);
+                list(function.body);
+            } else if (expression instanceof Expression.FunctionCallExpression) {
+                Expression.FunctionCallExpression call = (Expression.FunctionCallExpression) expression;
+                part(FUNCTION_CALL);
+                string(call.name);
+                list(call.arguments);
+            } else if (expression instanceof Expression.MethodCallExpression) {
+                Expression.MethodCallExpression call = (Expression.MethodCallExpression) expression;
+                part(METHOD_CALL);
+                // ":" 调用隐含的 self 参数就是对象本身，不再写一遍，读取时放回同一个对象
+                int self = call.selfArguments();
+                part(call.isColonCall ? 1 : 0);
+                part(self);
+                string(call.getMethod());
+                child(call.getObject());
+                list(call.getArguments().subList(self, call.getArguments().size()));
+            } else if (expression instanceof Expression.MemberAccessExpression) {
+                Expression.MemberAccessExpression access = (Expression.MemberAccessExpression) expression;
+                part(MEMBER_ACCESS);
+                string(access.getMember());
+                child(access.getObject());
+            } else if (expression instanceof Expression.TableExpression) {
+                Expression.TableExpression table = (Expression.TableExpression) expression;
+                part(TABLE);
+                list(table.getArrayElements());
+                part(table.getTableEntries().size());
+                for (Map.Entry<String, Expression> entry : table.getTableEntries().entrySet()) {
+                    string(entry.getKey());
+                    child(entry.getValue());
+                }
+            } else if (expression instanceof Expression.VariableExpression) {
+                part(VARIABLE);
+                string(((Expression.VariableExpression) expression).getName());
+            } else {
+                throw new IllegalArgumentException("Cannot serialize " + expression.getClass().getName());
+            }
+        }
+
+        private void list(List<? extends AstNode> nodes) {
+            part(nodes.size());
+            for (int i = 0, count = nodes.size(); i < count; i++) {
+                child(nodes.get(i));
+            }
+        }
+
+        private void names(List<String> names) {
+            part(names.size());
+            for (String name : names) {
+                string(name);
+            }
+        }
+
+        private void child(AstNode node) {
+            part(node == null ? NULL_EXPRESSION : node, 0);
+        }
+
+        // 字符串写成字符串表中的下标加一，0 表示 null
+        private void string(String string) {
+            if (string == null) {
+                part(0);
+                return;
+            }
+            Integer index = strings.get(string);
+            if (index == null) {
+                index = strings.size();
+                strings.put(string, index);
+            }
+            part(index + 1);
+        }
+
+        private void part(int value) {
+            part(null, value);
+        }
+
+        private void part(Object item, int value) {
+            if (partCount == parts.length) {
+                parts = Arrays.copyOf(parts, partCount * 2);
+                partValues = Arrays.copyOf(partValues, partCount * 2);
+            }
+            parts[partCount] = item;
+            partValues[partCount++] = value;
+        }
+
+        // 把展开的各个部分倒序压栈，第一个部分最先写出
+        private void flush() {
+            if (pending + partCount > items.length) {
+                int capacity = Math.max(items.length * 2, pending + partCount);
+                items = Arrays.copyOf(items, capacity);
+                values = Arrays.copyOf(values, capacity);
+            }
+            for (int i = partCount - 1; i >= 0; i--) {
+                items[pending] = parts[i];
+                values[pending++] = partValues[i];
+                parts[i] = null;
+            }
+            partCount = 0;
+        }
+
+        void tag(int tag) {
+            ensure(1);
+            buffer[size++] = (byte) tag;
+        }
+
+        void varint(int value) {
+            ensure(5);
+            while ((value & ~0x7F) != 0) {
+                buffer[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[size++] = (byte) value;
+        }
+
+        void int32(int value) {
+            ensure(4);
+            buffer[size++] = (byte) (value >>> 24);
+            buffer[size++] = (byte) (value >>> 16);
+            buffer[size++] = (byte) (value >>> 8);
+            buffer[size++] = (byte) value;
+        }
+
+        void bytes(byte[] bytes, int length) {
+            ensure(length);
+            System.arraycopy(bytes, 0, buffer, size, length);
+            size += length;
+        }
+
+        private void ensure(int extra) {
+            if (size + extra > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + extra));
+            }
+        }
+    }
+
+    // 节点字段的种类，Reader 按每种节点的字段列表依次读取
+    private static final int STRING = 0;
+    private static final int EXPRESSION = 1;
+    private static final int EXPRESSIONS = 2;
+    private static final int STATEMENTS = 3;
+    private static final int NAMES = 4;
+    private static final int FLAG = 5;
+    private static final int STARTS = 6; // 每个 elseif 的语句起始下标，个数等于 elseif 条件的个数
+    private static final int ENTRIES = 7; // 表构造器的键值对
+
+    private static final int[][] FIELDS = new int[VARIABLE + 1][];
+
+    static {
+        FIELDS[EXPRESSION_STATEMENT] = new int[]{EXPRESSION};
+        FIELDS[ASSIGNMENT] = new int[]{STRING, EXPRESSION};
+        FIELDS[IF] = new int[]{EXPRESSION, STATEMENTS, STATEMENTS, EXPRESSIONS, STARTS, STATEMENTS};
+        FIELDS[WHILE] = new int[]{EXPRESSION, STATEMENTS};
+        FIELDS[REPEAT] = new int[]{STATEMENTS, EXPRESSION};
+        FIELDS[FOR] = new int[]{STRING, EXPRESSION, EXPRESSION, EXPRESSION, STATEMENTS};
+        FIELDS[FOR_IN] = new int[]{STRING, STRING, EXPRESSION, STATEMENTS};
+        FIELDS[LOCAL] = new int[]{STRING, EXPRESSION};
+        FIELDS[RETURN] = new int[]{EXPRESSIONS};
+        FIELDS[LITERAL] = new int[]{STRING, STRING};
+        FIELDS[NUMBER] = new int[]{STRING};
+        FIELDS[BOOLEAN] = new int[]{FLAG};
+        FIELDS[NIL] = new int[0];
+        FIELDS[BINARY] = new int[]{STRING, EXPRESSION, EXPRESSION};
+        FIELDS[UNARY] = new int[]{STRING, EXPRESSION};
+        FIELDS[FUNCTION_DEFINITION] = new int[]{STRING, NAMES, STATEMENTS};
+        FIELDS[ANONYMOUS_FUNCTION] = new int[]{NAMES, STATEMENTS};
+        FIELDS[FUNCTION_CALL] = new int[]{STRING, EXPRESSIONS};
+        FIELDS[METHOD_CALL] = new int[]{FLAG, FLAG, STRING, EXPRESSION, EXPRESSIONS};
+        FIELDS[MEMBER_ACCESS] = new int[]{STRING, EXPRESSION};
+        FIELDS[TABLE] = new int[]{EXPRESSIONS, ENTRIES};
+        FIELDS[VARIABLE] = new int[]{STRING};
+    }
+
+    // 读取中的节点：已经读到的字段，以及正在读取的列表字段
+    private static final class Frame {
+        int tag;
+        int[] fields;
+        int field; // 下一个要读取的字段
+        final Object[] values = new Object[6];
+        List<Object> list; // 正在读取的列表，读完后放进 values
+        int remaining; // 列表中还没有读取的元素个数
+    }
+
+    private static final class Reader {
+        private final ByteBuffer buffer;
+        private final SymbolPool symbols;
+        private String[] strings;
+        private Frame[] frames = new Frame[32];
+        private int depth;
+
+        Reader(ByteBuffer buffer, SymbolPool symbols) {
+            this.buffer = buffer;
+            this.symbols = symbols;
+        }
+
+        @SuppressWarnings("unchecked")
+        List<Statement> read() {
+            strings = new String[count()];
+            for (int i = 0; i < strings.length; i++) {
+                char[] chars = new char[count()];
+                for (int j = 0; j < chars.length; j++) {
+                    int c = varint();
+                    if (c < 0 || c > Character.MAX_VALUE) {
+                        throw new IllegalArgumentException("Corrupt AST");
+                    }
+                    chars[j] = (char) c;
+                }
+                String string = new String(chars);
+                strings[i] = symbols != null && string.length() <= SymbolPool.MAX_STRING_LENGTH ? symbols.intern(string) : string;
+            }
+            // 最外层是一个只有语句列表的节点
+            Frame root = push(-1, new int[]{STATEMENTS});
+            while (depth > 1 || root.field == 0) {
+                Frame frame = frames[depth - 1];
+                if (frame.list != null) {
+                    element(frame);
+                } else if (frame.field < frame.fields.length) {
+                    field(frame);
+                } else {
+                    AstNode node = build(frame.tag, frame.values);
+                    node.offset = varint() - 1;
+                    node.endOffset = end(node.offset);
+                    Arrays.fill(frame.values, null);
+                    depth--;
+                    deliver(node);
+                }
+            }
+            if (buffer.hasRemaining()) {
+                throw new IllegalArgumentException("Trailing data after AST");
+            }
+            return (List<Statement>) root.values[0];
+        }
+
+        private void field(Frame frame) {
+            switch (frame.fields[frame.field]) {
+                case STRING:
+                    frame.values[frame.field++] = string();
+                    break;
+                case FLAG:
+                    frame.values[frame.field++] = buffer.get() != 0;
+                    break;
+                case STARTS: {
+                    List<?> elseifStatements = (List<?>) frame.values[2];
+                    int[] elseifStarts = new int[((List<?>) frame.values[3]).size()];
+                    for (int i = 0; i < elseifStarts.length; i++) {
+                        elseifStarts[i] = varint();
+                        if (elseifStarts[i] < (i == 0 ? 0 : elseifStarts[i - 1]) || elseifStarts[i] > elseifStatements.size()) {
+                            throw new IllegalArgumentException("Corrupt AST");
+                        }
+                    }
+                    frame.values[frame.field++] = elseifStarts;
+                    break;
+                }
+                case EXPRESSION:
+                    child(false);
+                    break;
+                default:
+                    frame.remaining = count();
+                    frame.list = new ArrayList<>(frame.remaining);
+                    break;
+            }
+        }
+
+        // 读取列表字段的下一个元素，列表读完时放进 values
+        private void element(Frame frame) {
+            if (frame.remaining == 0) {
+                frame.values[frame.field++] = frame.list;
+                frame.list = null;
+                return;
+            }
+            switch (frame.fields[frame.field]) {
+                case NAMES:
+                    frame.list.add(string());
+                    frame.remaining--;
+                    break;
+                case STATEMENTS:
+                    child(true);
+                    break;
+                case EXPRESSIONS:
+                    child(false);
+                    break;
+                default: // ENTRIES，键和值依次放进列表
+                    frame.list.add(string());
+                    child(false);
+                    break;
+            }
+        }
+
+        // 开始读取一个子节点，null 的表达式直接交给当前节点
+        private void child(boolean statement) {
+            int tag = buffer.get();
+            if (!statement && tag == NULL) {
+                deliver(null);
+                return;
+            }
+            boolean valid = statement ? tag >= EXPRESSION_STATEMENT && tag <= RETURN : tag >= LITERAL && tag <= VARIABLE;
+            if (!valid) {
+                throw new IllegalArgumentException("Unknown " + (statement ? "statement" : "expression") + " tag " + tag);
+            }
+            push(tag, FIELDS[tag]);
+        }
+
+        private Frame push(int tag, int[] fields) {
+            if (depth == frames.length) {
+                frames = Arrays.copyOf(frames, depth * 2);
+            }
+            Frame frame = frames[depth];
+            if (frame == null) {
+                frames[depth] = frame = new Frame();
+            }
+            depth++;
+            frame.tag = tag;
+            frame.fields = fields;
+            frame.field = 0;
+            frame.list = null;
+            return frame;
+        }
+
+        private void deliver(AstNode node) {
+            Frame parent = frames[depth - 1];
+            if (parent.list != null) {
+                parent.list.add(node);
+                parent.remaining--;
+            } else {
+                parent.values[parent.field++] = node;
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private static AstNode build(int tag, Object[] values) {
+            switch (tag) {
+                case EXPRESSION_STATEMENT:
+                    return new Statement.ExpressionStatement((Expression) values[0]);
+                case ASSIGNMENT:
+                    return new Statement.AssignmentStatement((String) values[0], (Expression) values[1]);
+                case IF:
+                    return new Statement.IfStatement((Expression) values[0], (List<Statement>) values[1], (List<Statement>) values[2],
+                            (List<Expression>) values[3], (List<Statement>) values[5], (int[]) values[4]);
+                case WHILE:
+                    return new Statement.WhileStatement((Expression) values[0], (List<Statement>) values[1]);
+                case REPEAT:
+                    return new Statement.RepeatStatement((List<Statement>) values[0], (Expression) values[1]);
+                case FOR:
+                    return new Statement.ForStatement((String) values[0], (Expression) values[1], (Expression) values[2],
+                            (Expression) values[3], (List<Statement>) values[4]);
+                case FOR_IN:
+                    return new Statement.ForInStatement((String) values[0], (String) values[1], (Expression) values[2],
+                            (List<Statement>) values[3]);
+                case LOCAL:
+                    return new Statement.LocalDeclarationStatement((String) values[0], (Expression) values[1]);
+                case RETURN:
+                    return new Statement.ReturnStatement((List<Expression>) values[0]);
+                case NUMBER: {
+                    String text = (String) values[0];
+                    return new Expression.NumberLiteralExpression(text, 0, text.length());
+                }
+                case LITERAL:
+                    return new Expression.LiteralExpression((String) values[0], (String) values[1]);
+                case BOOLEAN:
+                    return new Expression.BooleanLiteralExpression((Boolean) values[0]);
+                case NIL:
+                    return new Expression.NilLiteralExpression();
+                case BINARY:
+                    return new Expression.BinaryExpression((Expression) values[1], (String) values[0], (Expression) values[2]);
+                case UNARY:
+                    return new Expression.UnaryExpression((String) values[0], (Expression) values[1]);
+                case FUNCTION_DEFINITION:
+                    return new Expression.FunctionDefinitionExpression((String) values[0], (List<String>) values[1],
+                            (List<Statement>) values[2]);
+                case ANONYMOUS_FUNCTION:
+                    return new Expression.AnonymousFunctionExpression((List<String>) values[0], (List<Statement>) values[1]);
+                case FUNCTION_CALL:
+                    return new Expression.FunctionCallExpression((String) values[0], (List<Expression>) values[1]);
+                case METHOD_CALL: {
+                    Expression object = (Expression) values[3];
+                    List<Expression> arguments = (List<Expression>) values[4];
+                    if ((Boolean) values[1]) {
+                        arguments.add(0, object);
+                    }
+                    return new Expression.MethodCallExpression(object, (String) values[2], arguments, (Boolean) values[0]);
+                }
+                case MEMBER_ACCESS:
+                    return new Expression.MemberAccessExpression((Expression) values[1], (String) values[0]);
+                case TABLE: {
+                    List<Object> pairs = (List<Object>) values[1];
+                    Map<String, Expression> entries = new HashMap<>();
+                    for (int i = 0; i < pairs.size(); i += 2) {
+                        entries.put((String) pairs.get(i), (Expression) pairs.get(i + 1));
+                    }
+                    return new Expression.TableExpression((List<Expression>) values[0], entries);
+                }
+                default: // VARIABLE
+                    return new Expression.VariableExpression((String) values[0]);
+            }
+        }
+
+        // 读取节点末尾记录的长度
+        private int end(int offset) {
+            int length = varint();
+            return offset < 0 ? -1 : offset + length;
+        }
+
+        String string() {
+            int index = varint();
+            return index == 0 ? null : strings[index - 1];
+        }
+
+        // 数量不能超过剩余的字节数，损坏的文件不会导致分配巨大的数组
+        int count() {
+            int count = varint();
+            if (count < 0 || count > buffer.remaining()) {
+                throw new IllegalArgumentException("Corrupt AST");
+            }
+            return count;
+        }
+
+        int varint() {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                byte b = buffer.get();
+                value |= (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Corrupt AST");
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package top.skidder.parser;
+
+// AST 的访问者，通过 AstNode.accept 分派到对应节点类型的方法。R 为返回值类型，C 为调用方传递的上下文。
+// 所有方法默认交给 visitNode，只需要覆盖关心的节点类型；NumberLiteralExpression 默认按普通字面量处理
+public interface AstVisitor<R, C> {
+    // 没有被覆盖的节点类型都会到这里，默认返回 null
+    default R visitNode(AstNode node, C context) {
+        return null;
+    }
+
+    default R visitExpressionStatement(Statement.ExpressionStatement node, C context) {
+        return visitNode(node, context);
+    }
+
+    default R visitAssignment(Statement.AssignmentStatement node, C context) {
+        return visitNode(node, context);
+    }
+
+    default R visitIf(Statement.IfStatement node, C context) {
+        return visitNode(node, context);
+    }
+
+    default R visitWhile(Statement.WhileStatement node, C context) {
+        return visitNode(node, context);
+    }
+
+    default R visitRepeat(Statement.RepeatStatement node, C context) {
+        return visitNode(node, context);
+    }
+
+    default R visitFor(Statement.ForStatement node, C context) {
+        return visitNode(node, context);
+    }
+
+    default R visitForIn(Statement.ForInStatement node, C context) {
+        return visitNode(node, context);
+    }
+
+    default R visitLocalDeclaration(Statement.LocalDeclarationStatement node, C context) {
+        return visitNode(node, context);
+    }
+
+    default R visitReturn(Statement.ReturnStatement node, C context) {
+        return visitNode(node, context);
+    }
+
+    default R visitLiteral(Expression.LiteralExpression node, C context) {
+        return visitNode(node, context);
+    }
+
+    default R visitNumberLiteral(Expression.NumberLiteralExpression node, C context) {
+        return visitLiteral(node, context);
+    }
+
+    default R visitBooleanLiteral(Expression.BooleanLiteralExpression node, C context) {
+        return visitNode(node, context);
+    }
+
+    default R visitNilLiteral(Expression.NilLiteralExpression node, C context) {
+        return visitNode(node, context);
+    }
+
+    default R visitBinary(Expression.BinaryExpression node, C context) {
+        return visitNode(node, context);
+    }
+
+    default R visitUnary(Expression.UnaryExpression node, C context) {
+        return visitNode(node, context);
+    }
+
+    default R visitFunctionDefinition(Expression.FunctionDefinitionExpression node, C context) {
+        return visitNode(node, context);
+    }
+
+    default R visitAnonymousFunction(Expression.AnonymousFunctionExpression node, C context) {
+        return visitNode(node, context);
+    }
+
+    default R visitFunctionCall(Expression.FunctionCallExpression node, C context) {
+        return visitNode(node, context);
+    }
+
+    default R visitMethodCall(Expression.MethodCallExpression node, C context) {
+        return visitNode(node, context);
+    }
+
+    default R visitMemberAccess(Expression.MemberAccessExpression node, C context) {
+        return visitNode(node, context);
+    }
+
+    default R visitTable(Expression.TableExpression node, C context) {
+        return visitNode(node, context);
+    }
+
+    default R visitVariable(Expression.VariableExpression node, C context) {
+        return visitNode(node, context);
+    }
+}
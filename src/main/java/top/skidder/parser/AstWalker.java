@@ -0,0 +1,83 @@
+package top.skidder.parser;
+
+import java.util.Arrays;
+import java.util.List;
+
+// AST 的深度优先遍历：进入节点时调用 enter（前序），它的子节点都遍历完后调用 exit（后序）。
+// 用显式栈和 AstNode.child 按下标访问子节点，嵌套再深也不占用 Java 调用栈，遍历时不创建迭代器。
+// 栈在多次 walk 之间复用，同一个 AstWalker 不能被多个线程同时使用
+public abstract class AstWalker {
+    private AstNode[] nodes = new AstNode[32];
+    private int[] next = new int[32]; // 每个节点下一个要访问的子节点下标
+    private int depth;
+
+    // 返回 false 时跳过 node 的子节点，exit 仍然会被调用
+    protected boolean enter(AstNode node) {
+        return true;
+    }
+
+    protected void exit(AstNode node) {
+    }
+
+    // 当前节点之上的祖先数量，在 enter/exit 中调用时根节点为 0
+    protected final int depth() {
+        return depth;
+    }
+
+    // 第 level 层的祖先，0 为根节点
+    protected final AstNode ancestor(int level) {
+        if (level < 0 || level >= depth) {
+            throw new IndexOutOfBoundsException("level " + level + ", depth " + depth);
+        }
+        return nodes[level];
+    }
+
+    public final void walk(List<? extends AstNode> roots) {
+        for (int i = 0, size = roots.size(); i < size; i++) {
+            walk(roots.get(i));
+        }
+    }
+
+    // 可以在 enter/exit 中再次调用，遍历另一棵树
+    public final void walk(AstNode root) {
+        int base = depth;
+        if (!enter(root)) {
+            exit(root);
+            return;
+        }
+        push(root);
+        try {
+            while (depth > base) {
+                AstNode node = nodes[depth - 1];
+                int index = next[depth - 1];
+                if (index < node.childCount()) {
+                    next[depth - 1] = index + 1;
+                    AstNode child = node.child(index);
+                    if (enter(child)) {
+                        push(child);
+                    } else {
+                        exit(child);
+                    }
+                } else {
+                    nodes[--depth] = null;
+                    exit(node);
+                }
+            }
+        } finally {
+            // enter/exit 抛出异常时丢弃这次遍历留在栈上的节点
+            while (depth > base) {
+                nodes[--depth] = null;
+            }
+        }
+    }
+
+    private void push(AstNode node) {
+        if (depth == nodes.length) {
+            nodes = Arrays.copyOf(nodes, depth * 2);
+            next = Arrays.copyOf(next, depth * 2);
+        }
+        nodes[depth] = node;
+        next[depth] = 0;
+        depth++;
+    }
+}
@@ -0,0 +1,74 @@
+package top.skidder.parser;
+
+import java.lang.reflect.Method;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Consumer;
+
+// 批量解析：文件的读取和解析交给 executor 并发执行，完成的结果按完成顺序在调用线程上交给回调。
+// 同时在处理中的文件最多 maxInFlight 个，回调返回后才会提交下一个文件，内存中的源码和 AST 数量因此有上限
+final class BatchParser {
+    static final int DEFAULT_MAX_IN_FLIGHT = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+
+    private BatchParser() {
+    }
+
+    static void parseAll(Collection<Path> paths, SymbolPool symbols, Consumer<ParsedFile> callback) throws InterruptedException {
+        ExecutorService virtualThreads = newVirtualThreadExecutor();
+        if (virtualThreads == null) {
+            parseAll(paths, symbols, ForkJoinPool.commonPool(), DEFAULT_MAX_IN_FLIGHT, callback);
+            return;
+        }
+        try {
+            parseAll(paths, symbols, virtualThreads, DEFAULT_MAX_IN_FLIGHT, callback);
+        } finally {
+            virtualThreads.shutdown();
+        }
+    }
+
+    static void parseAll(Collection<Path> paths, SymbolPool symbols, Executor executor, int maxInFlight, Consumer<ParsedFile> callback) throws InterruptedException {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight must be positive: " + maxInFlight);
+        }
+        BlockingQueue<ParsedFile> completed = new LinkedBlockingQueue<>();
+        int inFlight = 0;
+        for (Path path : paths) {
+            if (inFlight == maxInFlight) {
+                callback.accept(completed.take());
+                inFlight--;
+            }
+            executor.execute(() -> completed.add(parse(path, symbols)));
+            inFlight++;
+        }
+        while (inFlight > 0) {
+            callback.accept(completed.take());
+            inFlight--;
+        }
+    }
+
+    private static ParsedFile parse(Path path, SymbolPool symbols) {
+        try {
+            return new ParsedFile(path, LuaParser.parse(path, symbols), null);
+        } catch (Exception e) {
+            return new ParsedFile(path, null, e);
+        } catch (Error e) {
+            return new ParsedFile(path, null, new ExecutionException(e)); // 保证每个文件都有结果，调用线程不会一直等待
+        }
+    }
+
+    // Java 21 以上用虚拟线程执行文件读取，之前的版本返回 null，改用 ForkJoinPool
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method method = java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package top.skidder.parser;
+
+// 只读取到 end 之前的 token，从 end 开始为 EOF。下标与原来的 TokenSource 相同，Parser 从一段 token 的起点开始解析时错误信息中的位置不变
+final class BoundedTokens implements TokenSource {
+    final TokenSource tokens;
+    private final int end;
+
+    BoundedTokens(TokenSource tokens, int end) {
+        // 嵌套截取时直接截取最底层的来源
+        this.tokens = tokens instanceof BoundedTokens ? ((BoundedTokens) tokens).tokens : tokens;
+        this.end = end;
+    }
+
+    @Override
+    public TokenKind kind(int index) {
+        return index < end ? tokens.kind(index) : TokenKind.EOF;
+    }
+
+    @Override
+    public String value(int index) {
+        return index < end ? tokens.value(index) : null;
+    }
+
+    @Override
+    public CharSequence source(int index) {
+        return tokens.source(index);
+    }
+
+    @Override
+    public int start(int index) {
+        return tokens.start(index);
+    }
+
+    @Override
+    public int end(int index) {
+        return tokens.end(index);
+    }
+
+    @Override
+    public int offset(int index) {
+        return tokens.offset(Math.min(index, end));
+    }
+
+    @Override
+    public int endOffset(int index) {
+        return index < end ? tokens.endOffset(index) : tokens.offset(end);
+    }
+
+    @Override
+    public SymbolPool symbols() {
+        return tokens.symbols();
+    }
+}
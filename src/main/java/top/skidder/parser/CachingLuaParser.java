@@ -0,0 +1,180 @@
+package top.skidder.parser;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+// 按源码内容缓存 AST 的解析器：用 64 位哈希查找，命中时再比较长度和内容确认。
+// 按估算的内存占用做 LRU 淘汰；多个线程同时解析相同的源码时只有一个线程真正解析，其余线程等待它的结果。
+// 返回的 AST 在调用方之间共享，不能修改
+public final class CachingLuaParser {
+    // AST 占用的估算：每个 token 大约 56 字节的节点和列表，加上源码本身
+    private static final int BYTES_PER_TOKEN = 56;
+
+    private final long maxWeight;
+    private final SymbolPool symbols;
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true); // 按访问顺序，最久未使用的在最前面
+    private long weight; // 已完成的条目的估算内存总和
+
+    // maxWeight 为缓存的 AST 和源码的估算总字节数上限
+    public CachingLuaParser(long maxWeight) {
+        this(maxWeight, null);
+    }
+
+    public CachingLuaParser(long maxWeight, SymbolPool symbols) {
+        if (maxWeight < 0) {
+            throw new IllegalArgumentException("maxWeight must not be negative: " + maxWeight);
+        }
+        this.maxWeight = maxWeight;
+        this.symbols = symbols;
+    }
+
+    public List<Statement> parse(CharSequence code) throws ParseError {
+        Key key = new Key(code, hash(code));
+        Entry entry;
+        boolean owner = false;
+        synchronized (this) {
+            entry = entries.get(key);
+            if (entry == null) {
+                String source = code.toString(); // 缓存的 AST 引用源码，不能引用调用方可能修改的 CharSequence
+                entry = new Entry(new Key(source, key.hash));
+                entries.put(entry.key, entry);
+                owner = true;
+            }
+        }
+        if (owner) {
+            entry.task.run();
+            completed(entry);
+        }
+        return entry.get();
+    }
+
+    // 缓存的条目数量，包括正在解析的
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    // 已缓存内容的估算字节数
+    public synchronized long weight() {
+        return weight;
+    }
+
+    public synchronized void clear() {
+        entries.values().removeIf(entry -> entry.counted);
+        weight = 0;
+    }
+
+    // 解析完成后计入内存占用并淘汰最久未使用的条目；解析失败的不缓存
+    private synchronized void completed(Entry entry) {
+        if (entry.weight < 0) {
+            entries.remove(entry.key);
+            return;
+        }
+        entry.counted = true;
+        weight += entry.weight;
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (weight > maxWeight && iterator.hasNext()) {
+            Entry eldest = iterator.next();
+            if (eldest.counted) {
+                weight -= eldest.weight;
+                iterator.remove();
+            }
+        }
+    }
+
+    // FNV-1a，按字符计算
+    private static long hash(CharSequence code) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0, length = code.length(); i < length; i++) {
+            hash = (hash ^ code.charAt(i)) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private final class Entry {
+        final Key key;
+        final FutureTask<List<Statement>> task;
+        long weight = -1; // 解析成功后才知道
+        boolean counted; // 已经计入总占用，只有这样的条目才会被淘汰
+
+        Entry(Key key) {
+            String source = (String) key.source;
+            this.key = key;
+            this.task = new FutureTask<>(() -> {
+                TokenBuffer tokens = new Lexer(source, symbols).tokenize();
+                List<Statement> statements = new Parser(tokens).parseAll();
+                weight = (long) tokens.size() * BYTES_PER_TOKEN + source.length();
+                return Collections.unmodifiableList(statements);
+            });
+        }
+
+        // 等待解析完成，其他线程的解析失败时抛出同一个错误
+        List<Statement> get() throws ParseError {
+            boolean interrupted = false;
+            try {
+                while (true) {
+                    try {
+                        return task.get();
+                    } catch (InterruptedException e) {
+                        interrupted = true; // 等待其他线程时不响应中断，结束后恢复中断状态
+                    }
+                }
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof ParseError) {
+                    throw (ParseError) cause;
+                }
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new IllegalStateException(cause);
+            } finally {
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    // 缓存键：哈希相同时比较长度和内容
+    private static final class Key {
+        final CharSequence source;
+        final long hash;
+
+        Key(CharSequence source, long hash) {
+            this.source = source;
+            this.hash = hash;
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) (hash ^ (hash >>> 32));
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            if (hash != other.hash || source.length() != other.source.length()) {
+                return false;
+            }
+            for (int i = 0, length = source.length(); i < length; i++) {
+                if (source.charAt(i) != other.source.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
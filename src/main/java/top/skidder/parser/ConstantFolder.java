@@ -0,0 +1,459 @@
+package top.skidder.parser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// 常量折叠：只由字面量组成的算术、位运算、比较、连接和逻辑运算子树按 Lua 5.3 的语义计算成一个字面量，
+// and/or 的左侧是常量时直接选出结果；条件为常量的 if 语句只保留会执行的分支。
+// 运行时会报错（整数除以零、非整数参与位运算等）或者结果无法写成字面量（inf、nan、最小整数）的运算保持原样。
+// 返回新的语法树，没有变化的子树与原来的共享；用 AstWalker 后序遍历，嵌套再深也不占用 Java 调用栈
+public final class ConstantFolder {
+    private static final Object NIL = new Object(); // 常量 nil
+
+    private ConstantFolder() {
+    }
+
+    public static List<Statement> fold(List<Statement> statements) {
+        Folder folder = new Folder();
+        folder.walk(statements);
+        folder.base = 0;
+        return folder.statements(0, folder.size);
+    }
+
+    public static Expression fold(Expression expression) {
+        Folder folder = new Folder();
+        folder.walk(expression);
+        return (Expression) folder.values[0];
+    }
+
+    // 后序遍历：每个节点的子节点折叠后的结果依次留在 values 上，exit 时取出来重建节点，没有变化时返回原节点。
+    // 语句的结果可以是 null（被删除）或者语句列表（if 的分支展开到外层）
+    private static final class Folder extends AstWalker implements AstVisitor<Object, Void> {
+        Object[] values = new Object[64];
+        int size;
+        int base; // 当前节点的第一个子节点的结果在 values 中的位置
+
+        @Override
+        protected void exit(AstNode node) {
+            int count = node.childCount();
+            base = size - count;
+            Object result = node.accept(this, null);
+            while (size > base) {
+                values[--size] = null;
+            }
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = result;
+        }
+
+        private boolean unchanged(AstNode node) {
+            for (int i = 0, count = size - base; i < count; i++) {
+                if (values[base + i] != node.child(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private Expression expression(int index) {
+            return (Expression) values[base + index];
+        }
+
+        private List<Expression> expressions(int from, int count) {
+            List<Expression> expressions = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                expressions.add(expression(from + i));
+            }
+            return expressions;
+        }
+
+        @SuppressWarnings("unchecked")
+        List<Statement> statements(int from, int count) {
+            List<Statement> statements = new ArrayList<>(count);
+            for (int i = from + base, end = from + base + count; i < end; i++) {
+                Object value = values[i];
+                if (value instanceof List) {
+                    statements.addAll((List<Statement>) value);
+                } else if (value != null) {
+                    statements.add((Statement) value);
+                }
+            }
+            return statements;
+        }
+
+        // 字面量和变量没有子节点
+        @Override
+        public Object visitNode(AstNode node, Void context) {
+            return node;
+        }
+
+        @Override
+        public Object visitExpressionStatement(Statement.ExpressionStatement node, Void context) {
+            return unchanged(node) ? node : at(new Statement.ExpressionStatement(expression(0)), node);
+        }
+
+        @Override
+        public Object visitAssignment(Statement.AssignmentStatement node, Void context) {
+            return unchanged(node) ? node : at(new Statement.AssignmentStatement(node.variable, expression(0)), node);
+        }
+
+        @Override
+        public Object visitLocalDeclaration(Statement.LocalDeclarationStatement node, Void context) {
+            return unchanged(node) ? node : at(new Statement.LocalDeclarationStatement(node.variableName, expression(0)), node);
+        }
+
+        @Override
+        public Object visitReturn(Statement.ReturnStatement node, Void context) {
+            return unchanged(node) ? node : at(new Statement.ReturnStatement(expressions(0, size - base)), node);
+        }
+
+        @Override
+        public Object visitWhile(Statement.WhileStatement node, Void context) {
+            return unchanged(node) ? node : at(new Statement.WhileStatement(expression(0), statements(1, size - base - 1)), node);
+        }
+
+        @Override
+        public Object visitRepeat(Statement.RepeatStatement node, Void context) {
+            int body = size - base - 1;
+            return unchanged(node) ? node : at(new Statement.RepeatStatement(statements(0, body), expression(body)), node);
+        }
+
+        @Override
+        public Object visitFor(Statement.ForStatement node, Void context) {
+            if (unchanged(node)) {
+                return node;
+            }
+            int header = node.getStep() == null ? 2 : 3;
+            return at(new Statement.ForStatement(node.getVarName(), expression(0), expression(1), header == 3 ? expression(2) : null,
+                    statements(header, size - base - header)), node);
+        }
+
+        @Override
+        public Object visitForIn(Statement.ForInStatement node, Void context) {
+            return unchanged(node) ? node : at(new Statement.ForInStatement(node.getKey(), node.getValue(), expression(0),
+                    statements(1, size - base - 1)), node);
+        }
+
+        @Override
+        public Object visitIf(Statement.IfStatement node, Void context) {
+            int ifCount = node.getIfStatements().size();
+            int conditionCount = node.getElseifConditions().size();
+            // 每个分支的条件和语句，第一个是 if，之后是各个 elseif
+            List<Expression> conditions = new ArrayList<>(conditionCount + 1);
+            List<List<Statement>> bodies = new ArrayList<>(conditionCount + 1);
+            conditions.add(expression(0));
+            bodies.add(statements(1, ifCount));
+            int index = 1 + ifCount;
+            for (int i = 0; i < conditionCount; i++) {
+                // 子节点中每个 elseif 的条件后面紧跟它的语句
+                int count = node.getElseifBody(i).size();
+                conditions.add(expression(index));
+                bodies.add(statements(index + 1, count));
+                index += 1 + count;
+            }
+            List<Statement> elseStatements = statements(index, size - base - index);
+
+            // 删除条件恒为假的分支；条件恒为真的分支成为 else，它之后的分支不会再执行
+            Expression decided = conditions.get(0);
+            boolean pruned = false;
+            for (int i = 0; i < conditions.size(); i++) {
+                Boolean truth = truth(conditions.get(i));
+                if (truth == null) {
+                    continue;
+                }
+                pruned = true;
+                if (truth) {
+                    decided = conditions.get(i);
+                    elseStatements = bodies.get(i);
+                    conditions.subList(i, conditions.size()).clear();
+                    bodies.subList(i, bodies.size()).clear();
+                    break;
+                }
+                conditions.remove(i);
+                bodies.remove(i);
+                i--;
+            }
+            if (!pruned && unchanged(node)) {
+                return node;
+            }
+            if (conditions.isEmpty()) {
+                return inline(elseStatements, decided, node);
+            }
+            List<Statement> elseifStatements = new ArrayList<>();
+            int[] elseifStarts = new int[conditions.size() - 1];
+            for (int i = 1; i < conditions.size(); i++) {
+                elseifStarts[i - 1] = elseifStatements.size();
+                elseifStatements.addAll(bodies.get(i));
+            }
+            return at(new Statement.IfStatement(conditions.get(0), bodies.get(0), elseifStatements,
+                    new ArrayList<>(conditions.subList(1, conditions.size())), elseStatements, elseifStarts), node);
+        }
+
+        // 一定会执行的分支：没有语句时删除整个 if，否则展开到外层。分支中有 local 或 return 时展开会改变作用域或者让 return 不在语句块末尾，
+        // 这时保留为 "if true then ... end"
+        private Object inline(List<Statement> statements, Expression condition, AstNode node) {
+            if (statements.isEmpty()) {
+                return null;
+            }
+            for (Statement statement : statements) {
+                if (statement instanceof Statement.LocalDeclarationStatement || statement instanceof Statement.ReturnStatement) {
+                    Statement.IfStatement block = new Statement.IfStatement(at(literal(Boolean.TRUE), condition), statements,
+                            new ArrayList<>(), new ArrayList<>(), new ArrayList<>());
+                    return at(block, node);
+                }
+            }
+            return statements;
+        }
+
+        @Override
+        public Object visitBinary(Expression.BinaryExpression node, Void context) {
+            Expression left = expression(0);
+            Expression right = expression(1);
+            Object a = constant(left);
+            if (a != null && ("and".equals(node.operator) || "or".equals(node.operator))) {
+                // 左侧为常量时结果就是其中一侧，右侧不需要是常量。
+                // and/or 只保留函数调用的第一个返回值，直接换成调用会展开所有返回值，这时保留原来的运算
+                if (truthy(a) != "and".equals(node.operator)) {
+                    return left;
+                }
+                if (!(right instanceof Expression.FunctionCallExpression || right instanceof Expression.MethodCallExpression)) {
+                    return right;
+                }
+            }
+            Object b = constant(right);
+            Object result = a == null || b == null ? null : binary(node.operator, a, b);
+            if (result != null) {
+                return at(literal(result), node);
+            }
+            return unchanged(node) ? node : at(new Expression.BinaryExpression(left, node.operator, right), node);
+        }
+
+        @Override
+        public Object visitUnary(Expression.UnaryExpression node, Void context) {
+            Expression operand = expression(0);
+            Object value = constant(operand);
+            Object result = value == null ? null : unary(node.operator, value);
+            if (result != null) {
+                return at(literal(result), node);
+            }
+            return unchanged(node) ? node : at(new Expression.UnaryExpression(node.operator, operand), node);
+        }
+
+        @Override
+        public Object visitFunctionDefinition(Expression.FunctionDefinitionExpression node, Void context) {
+            return unchanged(node) ? node : at(new Expression.FunctionDefinitionExpression(node.name, node.parameters, statements(0, size - base)), node);
+        }
+
+        @Override
+        public Object visitAnonymousFunction(Expression.AnonymousFunctionExpression node, Void context) {
+            return unchanged(node) ? node : at(new Expression.AnonymousFunctionExpression(node.parameters, statements(0, size - base)), node);
+        }
+
+        @Override
+        public Object visitFunctionCall(Expression.FunctionCallExpression node, Void context) {
+            return unchanged(node) ? node : at(new Expression.FunctionCallExpression(node.name, expressions(0, size - base)), node);
+        }
+
+        @Override
+        public Object visitMethodCall(Expression.MethodCallExpression node, Void context) {
+            if (unchanged(node)) {
+                return node;
+            }
+            Expression object = expression(0);
+            List<Expression> arguments = expressions(1, size - base - 1);
+            if (node.selfArguments() > 0) {
+                arguments.add(0, object); // 与 Parser 一样把对象本身作为第一个参数
+            }
+            return at(new Expression.MethodCallExpression(object, node.getMethod(), arguments, node.isColonCall), node);
+        }
+
+        @Override
+        public Object visitMemberAccess(Expression.MemberAccessExpression node, Void context) {
+            return unchanged(node) ? node : at(new Expression.MemberAccessExpression(expression(0), node.getMember()), node);
+        }
+
+        @Override
+        public Object visitTable(Expression.TableExpression node, Void context) {
+            if (unchanged(node)) {
+                return node;
+            }
+            int array = node.getArrayElements().size();
+            Map<String, Expression> entries = new HashMap<>();
+            int index = array;
+            // 键值对的子节点按 tableEntries 的遍历顺序排列
+            for (String key : node.getTableEntries().keySet()) {
+                entries.put(key, expression(index++));
+            }
+            return at(new Expression.TableExpression(expressions(0, array), entries), node);
+        }
+    }
+
+    // 新节点沿用被替换的节点在源码中的范围
+    private static <T extends AstNode> T at(T node, AstNode source) {
+        node.offset = source.offset;
+        node.endOffset = source.endOffset;
+        return node;
+    }
+
+    // 字面量的值：Long、Double、String、Boolean 或 NIL，不是字面量时为 null
+    private static Object constant(Expression expression) {
+        if (expression instanceof Expression.NumberLiteralExpression) {
+            Expression.NumberLiteralExpression number = (Expression.NumberLiteralExpression) expression;
+            return number.isInteger() ? (Object) number.longValue() : (Object) number.doubleValue();
+        }
+        if (expression instanceof Expression.LiteralExpression) {
+            Expression.LiteralExpression literal = (Expression.LiteralExpression) expression;
+            if ("STRING".equals(literal.type)) {
+                return literal.getValue();
+            }
+            if (TokenKind.TRUE.type.equals(literal.type)) {
+                return TokenKind.TRUE.text.equals(literal.getValue());
+            }
+            return null;
+        }
+        if (expression instanceof Expression.BooleanLiteralExpression) {
+            return ((Expression.BooleanLiteralExpression) expression).getValue();
+        }
+        if (expression instanceof Expression.NilLiteralExpression) {
+            return NIL;
+        }
+        return null;
+    }
+
+    private static Boolean truth(Expression expression) {
+        Object value = constant(expression);
+        return value == null ? null : truthy(value);
+    }
+
+    private static boolean truthy(Object value) {
+        return value != NIL && value != Boolean.FALSE;
+    }
+
+    // 与 Parser 创建的字面量形式相同
+    private static Expression literal(Object value) {
+        if (value instanceof Long) {
+            return new Expression.NumberLiteralExpression((long) (Long) value);
+        }
+        if (value instanceof Double) {
+            return new Expression.NumberLiteralExpression((double) (Double) value);
+        }
+        if (value instanceof String) {
+            return new Expression.LiteralExpression("STRING", (String) value);
+        }
+        if (value instanceof Boolean) {
+            TokenKind kind = (Boolean) value ? TokenKind.TRUE : TokenKind.FALSE;
+            return new Expression.LiteralExpression(kind.type, kind.text);
+        }
+        return new Expression.NilLiteralExpression();
+    }
+
+    // 二元运算的结果，不能在编译期计算或者结果不能写成字面量时为 null
+    private static Object binary(String operator, Object a, Object b) {
+        switch (operator) {
+            case "+":
+            case "-":
+            case "*":
+            case "/":
+            case "//":
+            case "%":
+            case "^":
+                return representable(arithmetic(operator, a, b));
+            case "&":
+            case "|":
+            case "~":
+            case "<<":
+            case ">>": {
+                Long x = LuaValues.integer(a);
+                Long y = LuaValues.integer(b);
+                return x == null || y == null ? null : representable(LuaValues.bitwise(operator, x, y));
+            }
+            case "..":
+                if ((a instanceof String || LuaValues.isNumber(a)) && (b instanceof String || LuaValues.isNumber(b))) {
+                    String left = string(a);
+                    String right = string(b);
+                    return left == null || right == null ? null : left + right;
+                }
+                return null;
+            case "==":
+                return LuaValues.equal(a, b);
+            case "~=":
+                return !LuaValues.equal(a, b);
+            case "<":
+                return compare(a, b, false);
+            case "<=":
+                return compare(a, b, true);
+            case ">":
+                return compare(b, a, false);
+            case ">=":
+                return compare(b, a, true);
+            default:
+                return null;
+        }
+    }
+
+    private static Object unary(String operator, Object value) {
+        switch (operator) {
+            case "not":
+                return !truthy(value);
+            case "-":
+                if (value instanceof Long) {
+                    return representable(-(Long) value);
+                }
+                return value instanceof Double ? representable(-(Double) value) : null;
+            case "~": {
+                Long x = LuaValues.integer(value);
+                return x == null ? null : representable(~x);
+            }
+            case "#":
+                return value instanceof String ? (Object) LuaValues.length((String) value) : null;
+            default:
+                return null;
+        }
+    }
+
+    private static Object arithmetic(String operator, Object a, Object b) {
+        if (!LuaValues.isNumber(a) || !LuaValues.isNumber(b)) {
+            return null; // 字符串到数字的转换留给运行时
+        }
+        return LuaValues.arithmetic(operator, a, b);
+    }
+
+    // inf、nan 和最小整数不能写成一个数字字面量
+    private static Object representable(Object value) {
+        if (value instanceof Double && (((Double) value).isNaN() || ((Double) value).isInfinite())) {
+            return null;
+        }
+        if (value instanceof Long && (Long) value == Long.MIN_VALUE) {
+            return null;
+        }
+        return value;
+    }
+
+    // 小于（orEqual 为 true 时小于等于）。数字按数值比较，字符串与运行时一样按 LuaValues.compare，其他组合在运行时报错，不折叠
+    private static Object compare(Object a, Object b, boolean orEqual) {
+        if (LuaValues.isNumber(a) && LuaValues.isNumber(b)) {
+            Integer order = LuaValues.order(a, b);
+            return order != null && (orEqual ? order <= 0 : order < 0);
+        }
+        if (a instanceof String && b instanceof String) {
+            int order = LuaValues.compare((String) a, (String) b);
+            return orEqual ? order <= 0 : order < 0;
+        }
+        return null;
+    }
+
+    // ".." 中的数字按 Lua 的 "%.14g" 转为字符串，inf 和 nan 的写法与平台有关，不折叠
+    private static String string(Object value) {
+        if (value instanceof String) {
+            return (String) value;
+        }
+        if (value instanceof Double && (((Double) value).isNaN() || ((Double) value).isInfinite())) {
+            return null;
+        }
+        return LuaValues.toString(value);
+    }
+}
@@ -0,0 +1,34 @@
+package top.skidder.parser;
+
+// 解析过程中发现的问题，offset 为在源码中的字符偏移
+public final class Diagnostic {
+    private final int offset;
+    final int end; // 词法错误扫描到的位置，修改落在 [offset, end] 内时这个错误需要重新检查
+    private final String message;
+
+    Diagnostic(int offset, String message) {
+        this(offset, offset, message);
+    }
+
+    Diagnostic(int offset, int end, String message) {
+        this.offset = offset;
+        this.end = end;
+        this.message = message;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    @Override
+    public String toString() {
+        return "Diagnostic{" +
+                "offset=" + offset +
+                ", message='" + message + '\'' +
+                '}';
+    }
+}
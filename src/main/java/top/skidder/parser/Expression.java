@@ -3,24 +3,134 @@ package top.skidder.parser;
 import java.util.List;
 import java.util.Map;
 
-public class Expression {
+public class Expression extends AstNode {
 
     public static class LiteralExpression extends Expression {
-        public String type;
-        public String value;
+        public final String type;
+        // 字面量只记录在源码中的范围，值在第一次访问时才解码。
+        // 不兼容的改动：以前的公共字段 value 已经移除（字段无法延迟解码），改用 getValue()；type 也不能再修改
+        private CharSequence source;
+        private int start;
+        private int end;
+        private SymbolPool symbols;
+        private volatile String value;
 
         public LiteralExpression(String type, String value) {
             this.type = type;
             this.value = value;
         }
 
+        LiteralExpression(String type, CharSequence source, int start, int end, SymbolPool symbols) {
+            this.type = type;
+            this.source = source;
+            this.start = start;
+            this.end = end;
+            this.symbols = symbols;
+        }
+
+        public String getValue() {
+            String result = value;
+            if (result == null) {
+                synchronized (this) {
+                    result = value;
+                    if (result == null) {
+                        result = "STRING".equals(type) ? Lexer.decodeString(source, start, end) : source.subSequence(start, end).toString();
+                        if (symbols != null && "STRING".equals(type) && result.length() <= SymbolPool.MAX_STRING_LENGTH) {
+                            result = symbols.intern(result);
+                        }
+                        value = result;
+                        source = null; // 解码后不再引用源码
+                        symbols = null;
+                    }
+                }
+            }
+            return result;
+        }
+
         @Override
         public String toString() {
             return "LiteralExpression{" +
                     "type='" + type + '\'' +
-                    "value='" + value + '\'' +
+                    "value='" + getValue() + '\'' +
                     '}';
         }
+
+        @Override
+        public <R, C> R accept(AstVisitor<R, C> visitor, C context) {
+            return visitor.visitLiteral(this, context);
+        }
+    }
+
+    public static class NumberLiteralExpression extends LiteralExpression {
+        // 数字在构造时解析一次，按 Lua 5.3 的规则区分整数和浮点数
+        private final boolean integer;
+        private final long longValue;
+        private final double doubleValue;
+
+        NumberLiteralExpression(CharSequence source, int start, int end) {
+            super("NUMBER", source, start, end, null);
+            long parsed = 0;
+            boolean isInteger = true;
+            boolean negative = end > start && source.charAt(start) == '-'; // 常量折叠产生的负数
+            int from = negative ? start + 1 : start;
+            boolean hex = end - from > 2 && source.charAt(from) == '0' && (source.charAt(from + 1) | 0x20) == 'x';
+            for (int i = hex ? from + 2 : from; i < end && isInteger; i++) {
+                int digit = Character.digit(source.charAt(i), hex ? 16 : 10);
+                if (digit < 0) {
+                    isInteger = false;
+                } else if (hex) {
+                    parsed = (parsed << 4) | digit; // 十六进制整数按 2^64 取模回绕
+                } else if (parsed > (Long.MAX_VALUE - digit) / 10) {
+                    isInteger = false; // 十进制整数溢出时转为浮点数
+                } else {
+                    parsed = parsed * 10 + digit;
+                }
+            }
+            this.integer = isInteger;
+            if (isInteger) {
+                this.longValue = negative ? -parsed : parsed;
+                this.doubleValue = longValue;
+            } else {
+                String text = source.subSequence(start, end).toString();
+                if (hex && text.indexOf('p') < 0 && text.indexOf('P') < 0) {
+                    text = text + "p0"; // Java 的十六进制浮点数必须带指数
+                }
+                this.doubleValue = Double.parseDouble(text);
+                this.longValue = (long) doubleValue;
+            }
+        }
+
+        // 常量折叠的结果，文本是 Lua 能够读回同一个值的形式
+        NumberLiteralExpression(long value) {
+            super("NUMBER", Long.toString(value));
+            this.integer = true;
+            this.longValue = value;
+            this.doubleValue = value;
+        }
+
+        NumberLiteralExpression(double value) {
+            super("NUMBER", Double.toString(value));
+            this.integer = false;
+            this.longValue = (long) value;
+            this.doubleValue = value;
+        }
+
+        public boolean isInteger() {
+            return integer;
+        }
+
+        public long longValue() {
+            return longValue;
+        }
+
+        public double doubleValue() {
+            return doubleValue;
+        }
+
+        @Override
+        public <R, C> R accept(AstVisitor<R, C> visitor, C context) {
+            return visitor.visitNumberLiteral(this, context);
+        }
     }
 
     public static class BooleanLiteralExpression extends Expression {
@@ -40,6 +150,11 @@ public class Expression {
                     "value=" + value +
                     '}';
         }
+
+        @Override
+        public <R, C> R accept(AstVisitor<R, C> visitor, C context) {
+            return visitor.visitBooleanLiteral(this, context);
+        }
     }
 
     public static class NilLiteralExpression extends Expression {
@@ -51,6 +166,11 @@ public class Expression {
         public String toString() {
             return "NilLiteralExpression{}";
         }
+
+        @Override
+        public <R, C> R accept(AstVisitor<R, C> visitor, C context) {
+            return visitor.visitNilLiteral(this, context);
+        }
     }
 
     public static class BinaryExpression extends Expression {
@@ -72,6 +192,28 @@ public class Expression {
                     ", right=" + right +
                     '}';
         }
+
+        @Override
+        public <R, C> R accept(AstVisitor<R, C> visitor, C context) {
+            return visitor.visitBinary(this, context);
+        }
+
+        @Override
+        public int childCount() {
+            return 2;
+        }
+
+        @Override
+        public AstNode child(int index) {
+            switch (index) {
+                case 0:
+                    return left;
+                case 1:
+                    return right;
+                default:
+                    return super.child(index);
+            }
+        }
     }
 
     public static class FunctionDefinitionExpression extends Expression {
@@ -93,6 +235,24 @@ public class Expression {
                     ", body=" + body.toString() +
                     '}';
         }
+
+        @Override
+        public <R, C> R accept(AstVisitor<R, C> visitor, C context) {
+            return visitor.visitFunctionDefinition(this, context);
+        }
+
+        @Override
+        public int childCount() {
+            return body.size();
+        }
+
+        @Override
+        public AstNode child(int index) {
+            if (index < 0 || index >= body.size()) {
+                return super.child(index);
+            }
+            return body.get(index);
+        }
     }
 
     public static class UnaryExpression extends Expression {
@@ -103,6 +263,24 @@ public class Expression {
             this.operator = operator;
             this.expression = expression;
         }
+
+        @Override
+        public <R, C> R accept(AstVisitor<R, C> visitor, C context) {
+            return visitor.visitUnary(this, context);
+        }
+
+        @Override
+        public int childCount() {
+            return 1;
+        }
+
+        @Override
+        public AstNode child(int index) {
+            if (index != 0) {
+                return super.child(index);
+            }
+            return expression;
+        }
     }
 
     public static class FunctionCallExpression extends Expression {
@@ -121,6 +299,24 @@ public class Expression {
                     ", arguments=" + arguments.toString() +
                     '}';
         }
+
+        @Override
+        public <R, C> R accept(AstVisitor<R, C> visitor, C context) {
+            return visitor.visitFunctionCall(this, context);
+        }
+
+        @Override
+        public int childCount() {
+            return arguments.size();
+        }
+
+        @Override
+        public AstNode child(int index) {
+            if (index < 0 || index >= arguments.size()) {
+                return super.child(index);
+            }
+            return arguments.get(index);
+        }
     }
 
     public static class AnonymousFunctionExpression extends Expression {
@@ -139,11 +335,30 @@ public class Expression {
                     ", body=" + body +
                     '}';
         }
+
+        @Override
+        public <R, C> R accept(AstVisitor<R, C> visitor, C context) {
+            return visitor.visitAnonymousFunction(this, context);
+        }
+
+        @Override
+        public int childCount() {
+            return body.size();
+        }
+
+        @Override
+        public AstNode child(int index) {
+            if (index < 0 || index >= body.size()) {
+                return super.child(index);
+            }
+            return body.get(index);
+        }
     }
 
     public static class TableExpression extends Expression {
         private final List<Expression> arrayElements;
         private final Map<String, Expression> tableEntries;
+        private volatile Expression[] entryValues; // 按下标访问键值对时的快照，第一次访问子节点时创建
 
         public TableExpression(List<Expression> arrayElements, Map<String, Expression> tableEntries) {
             this.arrayElements = arrayElements;
@@ -165,6 +380,37 @@ public class Expression {
                     ", tableEntries=" + tableEntries +
                     '}';
         }
+
+        @Override
+        public <R, C> R accept(AstVisitor<R, C> visitor, C context) {
+            return visitor.visitTable(this, context);
+        }
+
+        @Override
+        public int childCount() {
+            return arrayElements.size() + tableEntries.size();
+        }
+
+        @Override
+        public AstNode child(int index) {
+            // 数组部分之后是键值对的值，按 tableEntries 的遍历顺序
+            if (index < 0 || index >= arrayElements.size() + tableEntries.size()) {
+                return super.child(index);
+            }
+            if (index < arrayElements.size()) {
+                return arrayElements.get(index);
+            }
+            return entryValues()[index - arrayElements.size()];
+        }
+
+        // 遍历子节点时不为每个表创建迭代器，键值对的数量变化时重新创建快照
+        private Expression[] entryValues() {
+            Expression[] values = entryValues;
+            if (values == null || values.length != tableEntries.size()) {
+                entryValues = values = tableEntries.values().toArray(new Expression[0]);
+            }
+            return values;
+        }
     }
 
     public static class MemberAccessExpression extends Expression {
@@ -191,6 +437,24 @@ public class Expression {
                     ", member='" + member + '\'' +
                     '}';
         }
+
+        @Override
+        public <R, C> R accept(AstVisitor<R, C> visitor, C context) {
+            return visitor.visitMemberAccess(this, context);
+        }
+
+        @Override
+        public int childCount() {
+            return 1;
+        }
+
+        @Override
+        public AstNode child(int index) {
+            if (index != 0) {
+                return super.child(index);
+            }
+            return object;
+        }
     }
 
     public static class MethodCallExpression extends Expression {
@@ -238,6 +502,33 @@ public class Expression {
             sb.append('}');
             return sb.toString();
         }
+
+        @Override
+        public <R, C> R accept(AstVisitor<R, C> visitor, C context) {
+            return visitor.visitMethodCall(this, context);
+        }
+
+        @Override
+        public int childCount() {
+            return 1 + arguments.size() - selfArguments();
+        }
+
+        @Override
+        public AstNode child(int index) {
+            if (index == 0) {
+                return object;
+            }
+            int i = index - 1 + selfArguments();
+            if (index < 0 || i >= arguments.size()) {
+                return super.child(index);
+            }
+            return arguments.get(i);
+        }
+
+        // ":" 调用时 Parser 把对象本身作为第一个参数，遍历子节点时跳过它，避免同一个节点被访问两次
+        int selfArguments() {
+            return isColonCall && !arguments.isEmpty() && arguments.get(0) == object ? 1 : 0;
+        }
     }
 
     public static class VariableExpression extends Expression {
@@ -257,6 +548,11 @@ public class Expression {
                     "name='" + name + '\'' +
                     '}';
         }
+
+        @Override
+        public <R, C> R accept(AstVisitor<R, C> visitor, C context) {
+            return visitor.visitVariable(this, context);
+        }
     }
 
 }
@@ -0,0 +1,598 @@
+package top.skidder.parser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// 扁平的 AST：每个节点是几个 int 数组中的一行（种类、值、第一个子节点、下一个兄弟节点），按前序排列，
+// 子树在数组中是连续的一段，遍历时不需要追踪对象引用。值是字符串表中的下标，没有时为 -1。
+// 节点用下标表示，根节点为 0，没有子节点或兄弟节点时为 -1。每个节点还记录在源码中的范围。可以与 Statement/Expression 组成的类树互相转换
+public final class FlatAst {
+    // 语句，子节点依次为：
+    public static final int CHUNK = 0; // 语句...
+    public static final int EXPRESSION_STATEMENT = 1; // 表达式
+    public static final int ASSIGNMENT = 2; // 值为变量名；表达式
+    public static final int IF = 3; // 条件, BLOCK, 每个 elseif 一个 BLOCK 组成的 BLOCK, elseif 的条件 LIST, else 的 BLOCK
+    public static final int WHILE = 4; // 条件, BLOCK
+    public static final int REPEAT = 5; // BLOCK, 条件
+    public static final int FOR = 6; // 值为变量名；起始值, 结束值, 步长或 EMPTY, BLOCK
+    public static final int FOR_IN = 7; // NAME, NAME 或 EMPTY, 迭代表达式, BLOCK
+    public static final int LOCAL = 8; // 值为变量名；初始值或 EMPTY
+    public static final int RETURN = 9; // 返回值...
+
+    // 表达式
+    public static final int NUMBER = 20; // 值为数字的文本
+    public static final int STRING = 21; // 值为解码后的字符串
+    public static final int LITERAL = 22; // 其他字面量，值为文本；NAME（字面量类型）
+    public static final int BOOLEAN = 23; // 值为 0 或 1
+    public static final int NIL = 24;
+    public static final int BINARY = 25; // 值为运算符；左操作数, 右操作数
+    public static final int UNARY = 26; // 值为运算符；操作数
+    public static final int FUNCTION_DEFINITION = 27; // 值为函数名；PARAMETERS, BLOCK
+    public static final int ANONYMOUS_FUNCTION = 28; // PARAMETERS, BLOCK
+    public static final int FUNCTION_CALL = 29; // 值为函数名；参数...
+    public static final int METHOD_CALL = 30; // 值为方法名；对象, 参数 LIST
+    public static final int COLON_CALL = 31; // 与 METHOD_CALL 相同，用 ":" 调用；参数 LIST 不含隐含的 self
+    public static final int MEMBER_ACCESS = 32; // 值为成员名；对象
+    public static final int TABLE = 33; // 数组部分的 LIST, FIELD...
+    public static final int VARIABLE = 34; // 值为变量名
+
+    // 辅助节点
+    public static final int BLOCK = 40; // 语句...
+    public static final int LIST = 41; // 表达式...
+    public static final int PARAMETERS = 42; // NAME...
+    public static final int NAME = 43; // 值为名字
+    public static final int FIELD = 44; // 值为键名；值表达式
+    public static final int EMPTY = 45; // 类树中的 null
+
+    private int[] kinds;
+    private int[] values;
+    private int[] firstChildren;
+    private int[] nextSiblings;
+    private int[] offsets;
+    private int[] endOffsets;
+    private int size;
+    private final List<String> strings = new ArrayList<>();
+    private Map<String, Integer> stringIndex = new HashMap<>(); // 只在构建时使用
+
+    private FlatAst(int capacity) {
+        kinds = new int[capacity];
+        values = new int[capacity];
+        firstChildren = new int[capacity];
+        nextSiblings = new int[capacity];
+        offsets = new int[capacity];
+        endOffsets = new int[capacity];
+    }
+
+    // 从类树构建
+    public static FlatAst of(List<Statement> statements) {
+        FlatAst ast = new FlatAst(Math.max(statements.size() * 8, 16));
+        new Builder(ast).build(statements);
+        ast.stringIndex = null;
+        return ast;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int root() {
+        return 0;
+    }
+
+    public int kind(int node) {
+        return kinds[node];
+    }
+
+    public int firstChild(int node) {
+        return firstChildren[node];
+    }
+
+    public int nextSibling(int node) {
+        return nextSiblings[node];
+    }
+
+    // 第 index 个子节点，不存在时为 -1
+    public int child(int node, int index) {
+        int child = firstChildren[node];
+        for (int i = 0; i < index && child >= 0; i++) {
+            child = nextSiblings[child];
+        }
+        return child;
+    }
+
+    public int childCount(int node) {
+        int count = 0;
+        for (int child = firstChildren[node]; child >= 0; child = nextSiblings[child]) {
+            count++;
+        }
+        return count;
+    }
+
+    // 节点的字符串值，没有时为 null
+    public String text(int node) {
+        int value = values[node];
+        return value < 0 || kinds[node] == BOOLEAN ? null : strings.get(value);
+    }
+
+    // 节点的整数值：字符串表中的下标，BOOLEAN 节点为 0 或 1，没有时为 -1
+    public int value(int node) {
+        return values[node];
+    }
+
+    // 节点在源码中的范围，辅助节点和没有位置信息的节点为 -1
+    public int offset(int node) {
+        return offsets[node];
+    }
+
+    public int endOffset(int node) {
+        return endOffsets[node];
+    }
+
+    // 子树的结束位置（不含）。子树在数组中是连续的，[node, subtreeEnd(node)) 内就是整个子树
+    public int subtreeEnd(int node) {
+        int last = node;
+        while (firstChildren[last] >= 0) {
+            last = firstChildren[last];
+            while (nextSiblings[last] >= 0) {
+                last = nextSiblings[last];
+            }
+        }
+        return last + 1;
+    }
+
+    // 转换回类树。子节点的下标总是大于父节点，从后往前构建时每个节点的子节点都已经构建好，不需要递归。
+    // built[node] 是节点对应的对象：语句、表达式、BLOCK/LIST/PARAMETERS 的列表、NAME 的名字、FIELD 的值
+    public List<Statement> toStatements() {
+        Object[] built = new Object[size];
+        for (int node = size - 1; node > 0; node--) {
+            built[node] = build(node, built);
+        }
+        return childrenOf(root(), built);
+    }
+
+    private int node(int kind, int value) {
+        if (size == kinds.length) {
+            int capacity = size + (size >> 1);
+            kinds = Arrays.copyOf(kinds, capacity);
+            values = Arrays.copyOf(values, capacity);
+            firstChildren = Arrays.copyOf(firstChildren, capacity);
+            nextSiblings = Arrays.copyOf(nextSiblings, capacity);
+            offsets = Arrays.copyOf(offsets, capacity);
+            endOffsets = Arrays.copyOf(endOffsets, capacity);
+        }
+        kinds[size] = kind;
+        values[size] = value;
+        firstChildren[size] = -1;
+        nextSiblings[size] = -1;
+        offsets[size] = -1;
+        endOffsets[size] = -1;
+        return size++;
+    }
+
+    private int string(String string) {
+        if (string == null) {
+            return -1;
+        }
+        Integer index = stringIndex.get(string);
+        if (index == null) {
+            index = strings.size();
+            strings.add(string);
+            stringIndex.put(string, index);
+        }
+        return index;
+    }
+
+    // 从类树构建行，用显式的栈代替递归。栈中每一项是某个父节点下一个待构建的子节点，
+    // 出栈时才分配行并接到父节点最后一个子节点之后，所以行仍按前序排列，子树仍是连续的
+    private static final class Builder {
+        // 待构建子节点的种类
+        private static final int STATEMENT_ITEM = 0;
+        private static final int EXPRESSION_ITEM = 1; // null 对应 EMPTY
+        private static final int BLOCK_ITEM = 2;
+        private static final int LIST_ITEM = 3;
+        private static final int PARAMETERS_ITEM = 4;
+        private static final int NAME_ITEM = 5;
+        private static final int ELSEIF_ITEM = 6; // IfStatement 的 elseif 分支
+        private static final int FIELD_ITEM = 7;
+
+        private final FlatAst ast;
+        private int[] lastChildren = new int[16];
+        // 待构建的子节点栈：父节点、种类、对象
+        private int[] parents = new int[16];
+        private int[] types = new int[16];
+        private Object[] items = new Object[16];
+        private int pending;
+        // 当前节点的子节点，按源码顺序收集后逆序压栈
+        private int[] childTypes = new int[8];
+        private Object[] childItems = new Object[8];
+        private int children;
+
+        Builder(FlatAst ast) {
+            this.ast = ast;
+        }
+
+        void build(List<Statement> statements) {
+            int root = row(CHUNK, -1);
+            for (Statement statement : statements) {
+                child(STATEMENT_ITEM, statement);
+            }
+            push(root);
+            while (pending > 0) {
+                pending--;
+                int parent = parents[pending];
+                int type = types[pending];
+                Object item = items[pending];
+                items[pending] = null;
+                int node = node(type, item);
+                link(parent, node);
+                push(node);
+            }
+        }
+
+        private int row(int kind, int value) {
+            int node = ast.node(kind, value);
+            if (node == lastChildren.length) {
+                lastChildren = Arrays.copyOf(lastChildren, node + (node >> 1));
+            }
+            lastChildren[node] = -1;
+            return node;
+        }
+
+        private void link(int parent, int child) {
+            int last = lastChildren[parent];
+            if (last < 0) {
+                ast.firstChildren[parent] = child;
+            } else {
+                ast.nextSiblings[last] = child;
+            }
+            lastChildren[parent] = child;
+        }
+
+        private void child(int type, Object item) {
+            if (children == childTypes.length) {
+                childTypes = Arrays.copyOf(childTypes, children * 2);
+                childItems = Arrays.copyOf(childItems, children * 2);
+            }
+            childTypes[children] = type;
+            childItems[children++] = item;
+        }
+
+        // 把收集到的子节点逆序压栈，出栈时就是源码顺序
+        private void push(int parent) {
+            if (pending + children > parents.length) {
+                int capacity = Math.max(pending + children, parents.length * 2);
+                parents = Arrays.copyOf(parents, capacity);
+                types = Arrays.copyOf(types, capacity);
+                items = Arrays.copyOf(items, capacity);
+            }
+            while (children > 0) {
+                children--;
+                parents[pending] = parent;
+                types[pending] = childTypes[children];
+                items[pending++] = childItems[children];
+                childItems[children] = null;
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private int node(int type, Object item) {
+            switch (type) {
+                case STATEMENT_ITEM:
+                    return statement((Statement) item);
+                case EXPRESSION_ITEM:
+                    return expression((Expression) item);
+                case BLOCK_ITEM: {
+                    int node = row(BLOCK, -1);
+                    for (Statement statement : (List<Statement>) item) {
+                        child(STATEMENT_ITEM, statement);
+                    }
+                    return node;
+                }
+                case LIST_ITEM: {
+                    int node = row(LIST, -1);
+                    expressions((List<Expression>) item);
+                    return node;
+                }
+                case PARAMETERS_ITEM: {
+                    int node = row(PARAMETERS, -1);
+                    for (String name : (List<String>) item) {
+                        child(NAME_ITEM, name);
+                    }
+                    return node;
+                }
+                case NAME_ITEM:
+                    return row(NAME, ast.string((String) item));
+                case ELSEIF_ITEM: {
+                    Statement.IfStatement ifStatement = (Statement.IfStatement) item;
+                    int node = row(BLOCK, -1);
+                    for (int i = 0; i < ifStatement.getElseifConditions().size(); i++) {
+                        child(BLOCK_ITEM, ifStatement.getElseifBody(i));
+                    }
+                    return node;
+                }
+                case FIELD_ITEM: {
+                    Map.Entry<String, Expression> entry = (Map.Entry<String, Expression>) item;
+                    int node = row(FIELD, ast.string(entry.getKey()));
+                    child(EXPRESSION_ITEM, entry.getValue());
+                    return node;
+                }
+                default:
+                    throw new IllegalStateException("Unknown item " + type);
+            }
+        }
+
+        private void expressions(List<Expression> expressions) {
+            for (Expression expression : expressions) {
+                child(EXPRESSION_ITEM, expression);
+            }
+        }
+
+        private int statement(Statement statement) {
+            int node;
+            if (statement instanceof Statement.ExpressionStatement) {
+                node = row(EXPRESSION_STATEMENT, -1);
+                child(EXPRESSION_ITEM, ((Statement.ExpressionStatement) statement).getExpression());
+            } else if (statement instanceof Statement.AssignmentStatement) {
+                Statement.AssignmentStatement assignment = (Statement.AssignmentStatement) statement;
+                node = row(ASSIGNMENT, ast.string(assignment.variable));
+                child(EXPRESSION_ITEM, assignment.value);
+            } else if (statement instanceof Statement.IfStatement) {
+                Statement.IfStatement ifStatement = (Statement.IfStatement) statement;
+                node = row(IF, -1);
+                child(EXPRESSION_ITEM, ifStatement.getCondition());
+                child(BLOCK_ITEM, ifStatement.getIfStatements());
+                child(ELSEIF_ITEM, ifStatement);
+                child(LIST_ITEM, ifStatement.getElseifConditions());
+                child(BLOCK_ITEM, ifStatement.getElseStatements());
+            } else if (statement instanceof Statement.WhileStatement) {
+                Statement.WhileStatement whileStatement = (Statement.WhileStatement) statement;
+                node = row(WHILE, -1);
+                child(EXPRESSION_ITEM, whileStatement.getCondition());
+                child(BLOCK_ITEM, whileStatement.getBody());
+            } else if (statement instanceof Statement.RepeatStatement) {
+                Statement.RepeatStatement repeat = (Statement.RepeatStatement) statement;
+                node = row(REPEAT, -1);
+                child(BLOCK_ITEM, repeat.getBody());
+                child(EXPRESSION_ITEM, repeat.getCondition());
+            } else if (statement instanceof Statement.ForStatement) {
+                Statement.ForStatement forStatement = (Statement.ForStatement) statement;
+                node = row(FOR, ast.string(forStatement.getVarName()));
+                child(EXPRESSION_ITEM, forStatement.getStart());
+                child(EXPRESSION_ITEM, forStatement.getEnd());
+                child(EXPRESSION_ITEM, forStatement.getStep());
+                child(BLOCK_ITEM, forStatement.getBody());
+            } else if (statement instanceof Statement.ForInStatement) {
+                Statement.ForInStatement forIn = (Statement.ForInStatement) statement;
+                node = row(FOR_IN, -1);
+                child(NAME_ITEM, forIn.getKey());
+                if (forIn.getValue() == null) {
+                    child(EXPRESSION_ITEM, null);
+                } else {
+                    child(NAME_ITEM, forIn.getValue());
+                }
+                child(EXPRESSION_ITEM, forIn.getIterator());
+                child(BLOCK_ITEM, forIn.getBody());
+            } else if (statement instanceof Statement.LocalDeclarationStatement) {
+                Statement.LocalDeclarationStatement local = (Statement.LocalDeclarationStatement) statement;
+                node = row(LOCAL, ast.string(local.variableName));
+                child(EXPRESSION_ITEM, local.initializer);
+            } else if (statement instanceof Statement.ReturnStatement) {
+                node = row(RETURN, -1);
+                expressions(((Statement.ReturnStatement) statement).getReturnValues());
+            } else {
+                throw new IllegalArgumentException("Unsupported statement " + statement.getClass().getName());
+            }
+            ast.offsets[node] = statement.offset;
+            ast.endOffsets[node] = statement.endOffset;
+            return node;
+        }
+
+        private int expression(Expression expression) {
+            int node;
+            if (expression == null) {
+                return row(EMPTY, -1);
+            } else if (expression instanceof Expression.NumberLiteralExpression) {
+                node = row(NUMBER, ast.string(((Expression.NumberLiteralExpression) expression).getValue()));
+            } else if (expression instanceof Expression.LiteralExpression) {
+                Expression.LiteralExpression literal = (Expression.LiteralExpression) expression;
+                if ("STRING".equals(literal.type)) {
+                    node = row(STRING, ast.string(literal.getValue()));
+                } else {
+                    node = row(LITERAL, ast.string(literal.getValue()));
+                    child(NAME_ITEM, literal.type);
+                }
+            } else if (expression instanceof Expression.BooleanLiteralExpression) {
+                node = row(BOOLEAN, ((Expression.BooleanLiteralExpression) expression).getValue() ? 1 : 0);
+            } else if (expression instanceof Expression.NilLiteralExpression) {
+                node = row(NIL, -1);
+            } else if (expression instanceof Expression.BinaryExpression) {
+                Expression.BinaryExpression binary = (Expression.BinaryExpression) expression;
+                node = row(BINARY, ast.string(binary.operator));
+                child(EXPRESSION_ITEM, binary.left);
+                child(EXPRESSION_ITEM, binary.right);
+            } else if (expression instanceof Expression.UnaryExpression) {
+                Expression.UnaryExpression unary = (Expression.UnaryExpression) expression;
+                node = row(UNARY, ast.string(unary.operator));
+                child(EXPRESSION_ITEM, unary.expression);
+            } else if (expression instanceof Expression.FunctionDefinitionExpression) {
+                Expression.FunctionDefinitionExpression function = (Expression.FunctionDefinitionExpression) expression;
+                node = row(FUNCTION_DEFINITION, ast.string(function.name));
+                child(PARAMETERS_ITEM, function.parameters);
+                child(BLOCK_ITEM, function.body);
+            } else if (expression instanceof Expression.AnonymousFunctionExpression) {
+                Expression.AnonymousFunctionExpression function = (Expression.AnonymousFunctionExpression) expression;
+                node = row(ANONYMOUS_FUNCTION, -1);
+                child(PARAMETERS_ITEM, function.parameters);
+                child(BLOCK_ITEM, function.body);
+            } else if (expression instanceof Expression.FunctionCallExpression) {
+                Expression.FunctionCallExpression call = (Expression.FunctionCallExpression) expression;
+                node = row(FUNCTION_CALL, ast.string(call.name));
+                expressions(call.arguments);
+            } else if (expression instanceof Expression.MethodCallExpression) {
+                Expression.MethodCallExpression call = (Expression.MethodCallExpression) expression;
+                node = row(call.isColonCall ? COLON_CALL : METHOD_CALL, ast.string(call.getMethod()));
+                child(EXPRESSION_ITEM, call.getObject());
+                // 隐含的 self 就是对象本身，不再存一份，转换回类树时放回同一个对象
+                child(LIST_ITEM, call.getArguments().subList(call.selfArguments(), call.getArguments().size()));
+            } else if (expression instanceof Expression.MemberAccessExpression) {
+                Expression.MemberAccessExpression access = (Expression.MemberAccessExpression) expression;
+                node = row(MEMBER_ACCESS, ast.string(access.getMember()));
+                child(EXPRESSION_ITEM, access.getObject());
+            } else if (expression instanceof Expression.TableExpression) {
+                Expression.TableExpression table = (Expression.TableExpression) expression;
+                node = row(TABLE, -1);
+                child(LIST_ITEM, table.getArrayElements());
+                for (Map.Entry<String, Expression> entry : table.getTableEntries().entrySet()) {
+                    child(FIELD_ITEM, entry);
+                }
+            } else if (expression instanceof Expression.VariableExpression) {
+                node = row(VARIABLE, ast.string(((Expression.VariableExpression) expression).getName()));
+            } else {
+                throw new IllegalArgumentException("Unsupported expression " + expression.getClass().getName());
+            }
+            ast.offsets[node] = expression.offset;
+            ast.endOffsets[node] = expression.endOffset;
+            return node;
+        }
+    }
+
+    // 节点的子节点已经构建好的对象组成的列表
+    @SuppressWarnings("unchecked")
+    private <T> List<T> childrenOf(int parent, Object[] built) {
+        List<T> children = new ArrayList<>();
+        for (int child = firstChildren[parent]; child >= 0; child = nextSiblings[child]) {
+            children.add((T) built[child]);
+        }
+        return children;
+    }
+
+    private Object build(int node, Object[] built) {
+        switch (kinds[node]) {
+            case BLOCK:
+            case LIST:
+            case PARAMETERS:
+                return childrenOf(node, built);
+            case NAME:
+                return text(node);
+            case FIELD:
+                return built[firstChildren[node]];
+            case EMPTY:
+                return null;
+            default:
+                if (kinds[node] < NUMBER) {
+                    Statement statement = newStatement(node, built);
+                    statement.offset = offsets[node];
+                    statement.endOffset = endOffsets[node];
+                    return statement;
+                }
+                Expression expression = newExpression(node, built);
+                expression.offset = offsets[node];
+                expression.endOffset = endOffsets[node];
+                return expression;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Statement newStatement(int node, Object[] built) {
+        int first = firstChildren[node];
+        switch (kinds[node]) {
+            case EXPRESSION_STATEMENT:
+                return new Statement.ExpressionStatement((Expression) built[first]);
+            case ASSIGNMENT:
+                return new Statement.AssignmentStatement(text(node), (Expression) built[first]);
+            case IF: {
+                int ifBlock = nextSiblings[first];
+                int elseifBlock = nextSiblings[ifBlock];
+                int elseifConditions = nextSiblings[elseifBlock];
+                int elseBlock = nextSiblings[elseifConditions];
+                List<Statement> elseifStatements = new ArrayList<>();
+                List<Expression> conditions = (List<Expression>) built[elseifConditions];
+                int[] elseifStarts = new int[conditions.size()];
+                int count = 0;
+                for (int block = firstChildren[elseifBlock]; block >= 0; block = nextSiblings[block]) {
+                    elseifStarts[count++] = elseifStatements.size();
+                    elseifStatements.addAll((List<Statement>) built[block]);
+                }
+                return new Statement.IfStatement((Expression) built[first], (List<Statement>) built[ifBlock], elseifStatements,
+                        conditions, (List<Statement>) built[elseBlock], elseifStarts);
+            }
+            case WHILE:
+                return new Statement.WhileStatement((Expression) built[first], (List<Statement>) built[nextSiblings[first]]);
+            case REPEAT:
+                return new Statement.RepeatStatement((List<Statement>) built[first], (Expression) built[nextSiblings[first]]);
+            case FOR: {
+                int end = nextSiblings[first];
+                int step = nextSiblings[end];
+                return new Statement.ForStatement(text(node), (Expression) built[first], (Expression) built[end], (Expression) built[step],
+                        (List<Statement>) built[nextSiblings[step]]);
+            }
+            case FOR_IN: {
+                int value = nextSiblings[first];
+                int iterator = nextSiblings[value];
+                return new Statement.ForInStatement(text(first), text(value), (Expression) built[iterator],
+                        (List<Statement>) built[nextSiblings[iterator]]);
+            }
+            case LOCAL:
+                return new Statement.LocalDeclarationStatement(text(node), (Expression) built[first]);
+            case RETURN:
+                return new Statement.ReturnStatement(childrenOf(node, built));
+            default:
+                throw new IllegalStateException("Not a statement: " + kinds[node]);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Expression newExpression(int node, Object[] built) {
+        int first = firstChildren[node];
+        switch (kinds[node]) {
+            case NUMBER: {
+                String text = text(node);
+                return new Expression.NumberLiteralExpression(text, 0, text.length());
+            }
+            case STRING:
+                return new Expression.LiteralExpression("STRING", text(node));
+            case LITERAL:
+                return new Expression.LiteralExpression(text(first), text(node));
+            case BOOLEAN:
+                return new Expression.BooleanLiteralExpression(values[node] != 0);
+            case NIL:
+                return new Expression.NilLiteralExpression();
+            case BINARY:
+                return new Expression.BinaryExpression((Expression) built[first], text(node), (Expression) built[nextSiblings[first]]);
+            case UNARY:
+                return new Expression.UnaryExpression(text(node), (Expression) built[first]);
+            case FUNCTION_DEFINITION:
+                return new Expression.FunctionDefinitionExpression(text(node), (List<String>) built[first],
+                        (List<Statement>) built[nextSiblings[first]]);
+            case ANONYMOUS_FUNCTION:
+                return new Expression.AnonymousFunctionExpression((List<String>) built[first], (List<Statement>) built[nextSiblings[first]]);
+            case FUNCTION_CALL:
+                return new Expression.FunctionCallExpression(text(node), childrenOf(node, built));
+            case METHOD_CALL:
+                return new Expression.MethodCallExpression((Expression) built[first], text(node),
+                        (List<Expression>) built[nextSiblings[first]], false);
+            case COLON_CALL: {
+                Expression object = (Expression) built[first];
+                List<Expression> arguments = (List<Expression>) built[nextSiblings[first]];
+                arguments.add(0, object); // 与 Parser 一样把对象本身作为第一个参数
+                return new Expression.MethodCallExpression(object, text(node), arguments, true);
+            }
+            case MEMBER_ACCESS:
+                return new Expression.MemberAccessExpression((Expression) built[first], text(node));
+            case TABLE: {
+                Map<String, Expression> entries = new HashMap<>();
+                for (int field = nextSiblings[first]; field >= 0; field = nextSiblings[field]) {
+                    entries.put(text(field), (Expression) built[field]);
+                }
+                return new Expression.TableExpression((List<Expression>) built[first], entries);
+            }
+            case VARIABLE:
+                return new Expression.VariableExpression(text(node));
+            default:
+                throw new IllegalStateException("Not an expression: " + kinds[node]);
+        }
+    }
+}
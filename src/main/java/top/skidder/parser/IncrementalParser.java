@@ -0,0 +1,163 @@
+package top.skidder.parser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+// 增量解析：修改源码后只重新解析与修改重叠的顶层语句。
+// 新解析出的语句起点一旦与修改之后某条旧语句的起点（加上长度变化）重合，之后的词法和语法状态就与旧版本完全相同，剩下的语句原样复用
+final class IncrementalParser {
+
+    private IncrementalParser() {
+    }
+
+    // 带错误恢复的完整解析，同时记录每条顶层语句的起始偏移
+    static ParseResult parse(CharSequence code) {
+        List<Diagnostic> diagnostics = new ArrayList<>();
+        Parser parser = parser(code, 0, diagnostics);
+        List<Statement> statements = new ArrayList<>();
+        int[] starts = new int[16];
+        while (true) {
+            int start = parser.offset();
+            int count = statements.size();
+            if (!next(parser, statements)) {
+                break;
+            }
+            if (statements.size() > count) {
+                starts = record(starts, count, start);
+            }
+        }
+        return result(code, statements, starts, diagnostics);
+    }
+
+    static ParseResult reparse(ParseResult previous, int offset, int removed, String inserted) {
+        CharSequence old = previous.getSource();
+        if (offset < 0 || removed < 0 || offset + removed > old.length()) {
+            throw new IndexOutOfBoundsException("offset " + offset + ", removed " + removed + ", length " + old.length());
+        }
+        String source = new StringBuilder(old.length() - removed + inserted.length())
+                .append(old, 0, offset)
+                .append(inserted)
+                .append(old, offset + removed, old.length())
+                .toString();
+        int delta = inserted.length() - removed;
+        List<Statement> oldStatements = previous.getStatements();
+        int[] oldStarts = previous.starts;
+        int count = oldStatements.size();
+
+        // 之前的词法错误如果一直扫描到了修改的位置（例如未闭合的长注释），修改可能让它不再出错，要从它之前开始
+        int limit = offset;
+        for (Diagnostic diagnostic : previous.getDiagnostics()) {
+            if (diagnostic.getOffset() < limit && diagnostic.end >= offset) {
+                limit = diagnostic.getOffset();
+            }
+        }
+        // 从 limit 之前的倒数第二条语句开始：它的第一个 token 和之前的所有 token 都在 limit 之前结束，
+        // 前一条语句在哪里结束只取决于这个 token，因此之前的语句和诊断信息都不受影响
+        int first = Math.max(lastBefore(oldStarts, count, limit) - 1, 0);
+        int from = first == 0 ? 0 : oldStarts[first];
+
+        List<Statement> statements = new ArrayList<>(count + 8);
+        statements.addAll(oldStatements.subList(0, first));
+        int[] starts = Arrays.copyOf(oldStarts, Math.max(count, 16));
+        List<Diagnostic> diagnostics = new ArrayList<>();
+        List<Diagnostic> reparsed = new ArrayList<>();
+        Parser parser = parser(source, from, reparsed);
+        parser.detachLiterals();
+
+        int reuse = first; // 下一条可能对齐的旧语句
+        int end; // 重新解析的部分在新源码中的结束位置，一直解析到末尾时不限
+        while (true) {
+            int start = parser.offset();
+            // 与修改重叠或者已经落在当前位置之前的旧语句不可能再对齐
+            while (reuse < count && (oldStarts[reuse] < offset + removed || oldStarts[reuse] + delta < start)) {
+                reuse++;
+            }
+            if (reuse < count && oldStarts[reuse] + delta == start) {
+                end = start;
+                break;
+            }
+            int parsed = statements.size();
+            if (!next(parser, statements)) {
+                reuse = count;
+                end = Integer.MAX_VALUE;
+                break;
+            }
+            if (statements.size() > parsed) {
+                starts = record(starts, parsed, start);
+            }
+        }
+
+        // 复用剩下的旧语句，起始偏移按长度变化平移
+        for (int i = reuse; i < count; i++) {
+            starts = record(starts, statements.size(), oldStarts[i] + delta);
+            statements.add(oldStatements.get(i));
+        }
+
+        // 出错的语句会在下一条语句的第一个 token 处报错，因此起点上的诊断属于之前没有改动的部分（从头解析时除外），
+        // 旧的对齐点上的诊断属于被替换的部分
+        int head = first == 0 ? -1 : from;
+        int tail = reuse < count ? oldStarts[reuse] : Integer.MAX_VALUE; // 对齐点在旧源码中的位置
+        for (Diagnostic diagnostic : previous.getDiagnostics()) {
+            if (diagnostic.getOffset() <= head) {
+                diagnostics.add(diagnostic);
+            } else if (diagnostic.getOffset() > tail) {
+                diagnostics.add(new Diagnostic(diagnostic.getOffset() + delta, diagnostic.end + delta, diagnostic.getMessage()));
+            }
+        }
+        for (Diagnostic diagnostic : reparsed) {
+            // 向前读取的 token 可能越过对齐点，那里的词法错误已经在复用的部分中了
+            if (diagnostic.getOffset() <= end) {
+                diagnostics.add(diagnostic);
+            }
+        }
+        return result(source, statements, starts, diagnostics);
+    }
+
+    // 从 start 处开始按需读取 token 的错误恢复模式解析器
+    private static Parser parser(CharSequence source, int start, List<Diagnostic> diagnostics) {
+        Lexer lexer = new Lexer(source);
+        lexer.seek(start);
+        return new Parser(lexer.tokens(diagnostics), Parser.DEFAULT_MAX_DEPTH, diagnostics);
+    }
+
+    // 解析下一条顶层语句，返回 false 表示已经到达输入末尾
+    private static boolean next(Parser parser, List<Statement> statements) {
+        try {
+            return parser.parseNext(statements);
+        } catch (ParseError e) {
+            // 恢复模式下不会抛出
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // 第 index 条语句的起始偏移，数组不够时扩容
+    private static int[] record(int[] starts, int index, int start) {
+        if (index == starts.length) {
+            starts = Arrays.copyOf(starts, index + (index >> 1) + 16);
+        }
+        starts[index] = start;
+        return starts;
+    }
+
+    // 最后一条起点在 offset 之前的语句的下标，没有时为 -1
+    private static int lastBefore(int[] starts, int count, int offset) {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (starts[mid] < offset) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return high;
+    }
+
+    private static ParseResult result(CharSequence source, List<Statement> statements, int[] starts, List<Diagnostic> diagnostics) {
+        diagnostics.sort(Comparator.comparingInt(Diagnostic::getOffset));
+        return new ParseResult(source, statements, starts, diagnostics);
+    }
+}
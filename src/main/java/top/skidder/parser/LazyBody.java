@@ -0,0 +1,68 @@
+package top.skidder.parser;
+
+import java.util.AbstractList;
+import java.util.List;
+
+// 延迟解析的函数体：只保存函数体的 token 范围，第一次读取时才解析，之后不再引用 token。可以被多个线程同时读取
+final class LazyBody extends AbstractList<Statement> {
+    private TokenSource tokens;
+    private final int start;
+    private final int end;
+    private final int maxDepth;
+    private volatile List<Statement> statements;
+
+    LazyBody(TokenSource tokens, int start, int end, int maxDepth) {
+        this.tokens = tokens;
+        this.start = start;
+        this.end = end;
+        this.maxDepth = maxDepth;
+    }
+
+    private List<Statement> statements() {
+        List<Statement> result = statements;
+        if (result == null) {
+            synchronized (this) {
+                result = statements;
+                if (result == null) {
+                    Parser parser = new Parser(new BoundedTokens(tokens, end), maxDepth);
+                    parser.seek(start);
+                    parser.lazyFunctions();
+                    try {
+                        result = parser.parseAll();
+                    } catch (ParseError e) {
+                        // List 的方法不能抛出受检异常
+                        throw new IllegalStateException("Invalid function body: " + e.getMessage(), e);
+                    }
+                    statements = result;
+                    tokens = null; // 解析后不再引用 token
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Statement get(int index) {
+        return statements().get(index);
+    }
+
+    @Override
+    public int size() {
+        return statements().size();
+    }
+
+    @Override
+    public Statement set(int index, Statement element) {
+        return statements().set(index, element);
+    }
+
+    @Override
+    public void add(int index, Statement element) {
+        statements().add(index, element);
+    }
+
+    @Override
+    public Statement remove(int index) {
+        return statements().remove(index);
+    }
+}
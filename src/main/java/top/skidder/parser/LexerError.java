@@ -0,0 +1,23 @@
+package top.skidder.parser;
+
+// 词法错误，仍然是 IllegalArgumentException；错误恢复模式下不填充调用栈
+final class LexerError extends IllegalArgumentException {
+    private static final long serialVersionUID = 1L;
+
+    final int offset;
+    final int end; // 出错前扫描到的位置，增量解析据此判断修改是否会影响这个错误
+
+    LexerError(String message, int offset, int end, boolean stackless) {
+        super(message);
+        this.offset = offset;
+        this.end = end;
+        if (!stackless) {
+            super.fillInStackTrace();
+        }
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return this; // 是否需要调用栈由构造函数决定
+    }
+}
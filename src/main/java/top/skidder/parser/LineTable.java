@@ -0,0 +1,82 @@
+package top.skidder.parser;
+
+import java.util.Arrays;
+
+// 源码偏移到行号和列号的映射。第一次查询时才扫描一遍源码记录每行的起始偏移，之后按偏移二分查找，
+// 词法和语法分析时不维护任何行列信息。行号和列号都从 1 开始，列按字符计算；\n、\r 和 \r\n 都算一次换行
+public final class LineTable {
+    private final CharSequence source;
+    private volatile int[] lineStarts; // 每行第一个字符的偏移，第一行为 0
+
+    public LineTable(CharSequence source) {
+        this.source = source;
+    }
+
+    public CharSequence getSource() {
+        return source;
+    }
+
+    public int lineCount() {
+        return lineStarts().length;
+    }
+
+    // offset 所在的行，offset 可以等于源码长度（输入末尾）
+    public int line(int offset) {
+        return index(offset) + 1;
+    }
+
+    public int column(int offset) {
+        return offset - lineStarts()[index(offset)] + 1;
+    }
+
+    // 第 line 行第一个字符的偏移
+    public int lineStart(int line) {
+        int[] starts = lineStarts();
+        if (line < 1 || line > starts.length) {
+            throw new IndexOutOfBoundsException("line " + line + ", lines " + starts.length);
+        }
+        return starts[line - 1];
+    }
+
+    // "行:列" 形式的位置，用于错误信息
+    public String format(int offset) {
+        int index = index(offset);
+        return (index + 1) + ":" + (offset - lineStarts()[index] + 1);
+    }
+
+    private int index(int offset) {
+        if (offset < 0 || offset > source.length()) {
+            throw new IndexOutOfBoundsException("offset " + offset + ", length " + source.length());
+        }
+        int[] starts = lineStarts();
+        int index = Arrays.binarySearch(starts, offset);
+        return index >= 0 ? index : -index - 2;
+    }
+
+    private int[] lineStarts() {
+        int[] starts = lineStarts;
+        if (starts == null) {
+            // 并发时可能重复扫描，结果相同
+            lineStarts = starts = scan(source);
+        }
+        return starts;
+    }
+
+    private static int[] scan(CharSequence source) {
+        int[] starts = new int[16];
+        int count = 1;
+        for (int i = 0, length = source.length(); i < length; i++) {
+            char c = source.charAt(i);
+            if (c == '\n' || c == '\r') {
+                if (c == '\r' && i + 1 < length && source.charAt(i + 1) == '\n') {
+                    i++;
+                }
+                if (count == starts.length) {
+                    starts = Arrays.copyOf(starts, count * 2);
+                }
+                starts[count++] = i + 1;
+            }
+        }
+        return Arrays.copyOf(starts, count);
+    }
+}
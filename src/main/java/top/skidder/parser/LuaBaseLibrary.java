@@ -0,0 +1,151 @@
+package top.skidder.parser;
+
+// LuaScript.createGlobals 中的基础库：print、type、tostring、tonumber、pairs、ipairs、select、error、assert 和 raw 系列函数。
+// 语法中没有下标赋值，脚本修改表的字段要用 rawset
+final class LuaBaseLibrary {
+    private LuaBaseLibrary() {
+    }
+
+    static void install(LuaTable globals) {
+        globals.put("_G", globals);
+        globals.put("print", (LuaFunction) arguments -> {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < arguments.length; i++) {
+                if (i > 0) {
+                    sb.append('\t');
+                }
+                sb.append(LuaValues.toDisplayString(arguments[i]));
+            }
+            System.out.println(sb);
+            return LuaFunction.NONE;
+        });
+        globals.put("type", (LuaFunction) arguments -> {
+            if (arguments.length == 0) {
+                throw new LuaError("bad argument #1 to 'type' (value expected)", -1);
+            }
+            return new Object[]{LuaValues.type(arguments[0])};
+        });
+        globals.put("tostring", (LuaFunction) arguments -> new Object[]{LuaValues.toDisplayString(argument(arguments, 0))});
+        globals.put("tonumber", (LuaFunction) LuaBaseLibrary::tonumber);
+        globals.put("pairs", (LuaFunction) arguments -> {
+            LuaTable table = table(arguments, "pairs");
+            return new Object[]{new Pairs(table), table, null};
+        });
+        LuaFunction ipairs = arguments -> {
+            // 无状态的迭代函数：参数为表和上一个下标
+            LuaTable table = table(arguments, "ipairs");
+            Long previous = LuaValues.integer(ScriptCompiler.number(argument(arguments, 1)));
+            if (previous == null) {
+                throw new LuaError("bad argument #2 to 'ipairs' (number expected, got " + LuaValues.type(argument(arguments, 1)) + ")", -1);
+            }
+            long index = previous + 1;
+            Object value = table.get(index);
+            return value == null ? new Object[]{null} : new Object[]{index, value};
+        };
+        globals.put("ipairs", (LuaFunction) arguments -> new Object[]{ipairs, table(arguments, "ipairs"), 0L});
+        globals.put("select", (LuaFunction) arguments -> {
+            Object n = argument(arguments, 0);
+            int count = arguments.length - 1;
+            if ("#".equals(n)) {
+                return new Object[]{(long) count};
+            }
+            Long index = LuaValues.integer(ScriptCompiler.number(n));
+            if (index == null || index == 0 || index < -count) {
+                throw new LuaError("bad argument #1 to 'select' (index out of range)", -1);
+            }
+            int from = index < 0 ? (int) (count + index) : (int) Math.min(index - 1, count);
+            Object[] results = new Object[count - from];
+            System.arraycopy(arguments, 1 + from, results, 0, results.length);
+            return results;
+        });
+        globals.put("error", (LuaFunction) arguments -> {
+            throw new LuaError(argument(arguments, 0));
+        });
+        globals.put("assert", (LuaFunction) arguments -> {
+            if (!LuaValues.truthy(argument(arguments, 0))) {
+                throw new LuaError(arguments.length > 1 ? arguments[1] : "assertion failed!");
+            }
+            return arguments;
+        });
+        globals.put("rawget", (LuaFunction) arguments -> new Object[]{table(arguments, "rawget").get(argument(arguments, 1))});
+        globals.put("rawset", (LuaFunction) arguments -> {
+            LuaTable table = table(arguments, "rawset");
+            table.put(argument(arguments, 1), argument(arguments, 2));
+            return new Object[]{table};
+        });
+        globals.put("rawlen", (LuaFunction) arguments -> {
+            Object value = argument(arguments, 0);
+            if (value instanceof String) {
+                return new Object[]{LuaValues.length((String) value)};
+            }
+            return new Object[]{table(arguments, "rawlen").length()};
+        });
+        globals.put("rawequal", (LuaFunction) arguments -> new Object[]{LuaValues.equal(argument(arguments, 0), argument(arguments, 1))});
+    }
+
+    private static Object argument(Object[] arguments, int index) {
+        return index < arguments.length ? arguments[index] : null;
+    }
+
+    private static LuaTable table(Object[] arguments, String function) {
+        Object value = argument(arguments, 0);
+        if (!(value instanceof LuaTable)) {
+            throw new LuaError("bad argument #1 to '" + function + "' (table expected, got " + LuaValues.type(value) + ")", -1);
+        }
+        return (LuaTable) value;
+    }
+
+    private static Object[] tonumber(Object... arguments) {
+        Object value = argument(arguments, 0);
+        Object base = argument(arguments, 1);
+        if (base == null) {
+            return new Object[]{ScriptCompiler.number(value)};
+        }
+        Long radix = LuaValues.integer(ScriptCompiler.number(base));
+        if (radix == null || radix < 2 || radix > 36) {
+            throw new LuaError("bad argument #2 to 'tonumber' (base out of range)", -1);
+        }
+        if (!(value instanceof String)) {
+            throw new LuaError("bad argument #1 to 'tonumber' (string expected, got " + LuaValues.type(value) + ")", -1);
+        }
+        try {
+            return new Object[]{Long.parseLong(((String) value).trim().toLowerCase(), (int) (long) radix)};
+        } catch (NumberFormatException e) {
+            return new Object[]{null};
+        }
+    }
+
+    // pairs 的迭代函数：先按下标遍历数组部分，再遍历开始时 hash 部分的键；遍历中删除的键不会再出现
+    private static final class Pairs implements LuaFunction {
+        private final LuaTable table;
+        private final int arrayLength; // 开始时数组部分的容量，遍历中扩容移入的键是新加的键
+        private int index;
+        private Object[] keys;
+
+        Pairs(LuaTable table) {
+            this.table = table;
+            this.arrayLength = table.arrayCapacity();
+        }
+
+        @Override
+        public Object[] call(Object... arguments) {
+            while (index < arrayLength) {
+                Object value = table.arrayValue(index++);
+                if (value != null) {
+                    return new Object[]{(long) index, value};
+                }
+            }
+            if (keys == null) {
+                keys = table.hashKeys();
+            }
+            while (index - arrayLength < keys.length) {
+                Object key = keys[index++ - arrayLength];
+                Object value = table.get(key);
+                if (value != null) {
+                    return new Object[]{key, value};
+                }
+            }
+            return new Object[]{null};
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package top.skidder.parser;
+
+// 执行 Lua 脚本时的错误：运行时错误（调用 nil、对表以外的值取成员等）或者脚本调用 error 抛出的值
+public class LuaError extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final Object value;
+    private final int offset;
+
+    // error 抛出的值，可以是任意 Lua 值
+    public LuaError(Object value) {
+        super(LuaValues.toDisplayString(value));
+        this.value = value;
+        this.offset = -1;
+    }
+
+    LuaError(String message, int offset) {
+        super(message);
+        this.value = message;
+        this.offset = offset;
+    }
+
+    public Object getValue() {
+        return value;
+    }
+
+    // 出错的表达式在源码中的偏移，未知时为 -1
+    public int getOffset() {
+        return offset;
+    }
+}
@@ -0,0 +1,10 @@
+package top.skidder.parser;
+
+// Lua 函数。脚本中定义的函数和宿主放进全局表的 Java 函数都实现这个接口，参数和返回值都是 Lua 值（见 LuaScript）。
+// 少传的参数为 nil，多余的返回值被丢弃；返回 null 等同于没有返回值
+@FunctionalInterface
+public interface LuaFunction {
+    Object[] NONE = new Object[0];
+
+    Object[] call(Object... arguments);
+}
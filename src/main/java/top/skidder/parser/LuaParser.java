@@ -1,14 +1,145 @@
 package top.skidder.parser;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
 
 public class LuaParser {
     public static List<Statement> parse(String code) throws ParseError {
-        Lexer lexer = new Lexer(code);
-        List<Token> tokens = lexer.tokenize();
-        Parser parser = new Parser(tokens);
-        List<Statement> statements = null;
-        statements = parser.parseAll();
-        return statements;
+        return parse((CharSequence) code);
+    }
+
+    public static List<Statement> parse(CharSequence code) throws ParseError {
+        return parse(code, null);
+    }
+
+    // 使用共享的符号池解析，标识符和短字符串会被规范化，适合同时保留大量 AST 的场景
+    public static List<Statement> parse(CharSequence code, SymbolPool symbols) throws ParseError {
+        return parse(code, symbols, Parser.DEFAULT_MAX_DEPTH);
+    }
+
+    // maxDepth 限制语句块、括号和运算符等的嵌套层数，嵌套过深的输入会抛出 ParseError 而不是 StackOverflowError
+    // 复用当前线程的 ParseContext，解析小段代码时不会重复分配 Lexer、token 数组和 Parser。
+    // 字面量延迟解码，不是 String 的输入会先复制一份，之后修改 code 不会影响返回的 AST
+    public static List<Statement> parse(CharSequence code, SymbolPool symbols, int maxDepth) throws ParseError {
+        return ParseContext.local().parse(code, symbols, maxDepth);
+    }
+
+    // 延迟解析函数体：函数体在第一次访问 body 时才解析，只需要顶层结构时更快、占用内存更少。
+    // 源码和 token 会一直保留到所有函数体都被解析为止，函数体中的语法错误在访问时以 IllegalStateException 抛出。
+    // 不是 String 的输入会先复制一份
+    public static List<Statement> parseLazy(CharSequence code) throws ParseError {
+        return parseLazy(code, null);
+    }
+
+    public static List<Statement> parseLazy(CharSequence code, SymbolPool symbols) throws ParseError {
+        Parser parser = new Parser(new Lexer(snapshot(code), symbols).tokenize(), Parser.DEFAULT_MAX_DEPTH);
+        parser.lazyFunctions();
+        return parser.parseAll();
+    }
+
+    // 函数体要等到访问时才解析，需要一直保留源码，所以文件内容会复制到堆上，不会一直持有内存映射
+    public static List<Statement> parseLazy(Path path, SymbolPool symbols) throws IOException, ParseError {
+        return parseLazy(MappedSource.map(path), symbols);
+    }
+
+    // 并行解析单个大文件：在顶层语句的边界切分后交给 ForkJoinPool 解析，结果与 parse 相同
+    public static List<Statement> parseParallel(CharSequence code) throws ParseError {
+        return parseParallel(code, null);
+    }
+
+    public static List<Statement> parseParallel(CharSequence code, SymbolPool symbols) throws ParseError {
+        return parseParallel(code, symbols, ForkJoinPool.commonPool());
+    }
+
+    public static List<Statement> parseParallel(CharSequence code, SymbolPool symbols, ForkJoinPool pool) throws ParseError {
+        return ParallelParser.parse(snapshot(code), symbols, Parser.DEFAULT_MAX_DEPTH, pool);
+    }
+
+    // 解析为扁平的 AST，适合需要多次遍历整棵树的分析
+    public static FlatAst parseFlat(CharSequence code) throws ParseError {
+        return FlatAst.of(parse(code));
+    }
+
+    // 带错误恢复的解析：不会因为第一个错误而停止，返回部分 AST 和所有诊断信息。不是 String 的输入会先复制一份
+    public static ParseResult parseWithDiagnostics(CharSequence code) {
+        return IncrementalParser.parse(snapshot(code));
+    }
+
+    // 增量解析：previous 的源码在 offset 处删除 removed 个字符并插入 inserted，只重新解析与修改重叠的顶层语句，其余语句原样复用
+    public static ParseResult reparse(ParseResult previous, int offset, int removed, String inserted) {
+        return IncrementalParser.reparse(previous, offset, removed, inserted);
+    }
+
+    // 通过内存映射读取文件并解析，源码不会被完整复制到堆上。字面量在解析时立即解码，返回的 AST 不引用映射
+    public static List<Statement> parse(Path path) throws IOException, ParseError {
+        return parse(path, null);
+    }
+
+    public static List<Statement> parse(Path path, SymbolPool symbols) throws IOException, ParseError {
+        return parse(path, symbols, Parser.DEFAULT_MAX_DEPTH);
+    }
+
+    public static List<Statement> parse(Path path, SymbolPool symbols, int maxDepth) throws IOException, ParseError {
+        return ParseContext.local().parse(MappedSource.map(path), symbols, maxDepth, true);
+    }
+
+    // 逐条解析顶层语句：每条语句解析完就交给调用方，整个文件的 AST 不会同时留在内存中。
+    // 读取失败时抛出 UncheckedIOException，语法错误以 IllegalStateException 包装 ParseError 抛出
+    public static Iterator<Statement> statements(Reader reader) {
+        return statements(reader, null);
+    }
+
+    public static Iterator<Statement> statements(Reader reader, SymbolPool symbols) {
+        return new StatementIterator(new Parser(new TokenStream(new Lexer(reader, symbols))));
+    }
+
+    // 批量并发解析多个文件，每个文件完成后在调用线程上回调，全部完成后返回。
+    // Java 21 以上用虚拟线程读取和解析，否则使用 ForkJoinPool.commonPool()
+    public static void parseAll(Collection<Path> paths, Consumer<ParsedFile> callback) throws InterruptedException {
+        parseAll(paths, (SymbolPool) null, callback);
+    }
+
+    public static void parseAll(Collection<Path> paths, SymbolPool symbols, Consumer<ParsedFile> callback) throws InterruptedException {
+        BatchParser.parseAll(paths, symbols, callback);
+    }
+
+    public static void parseAll(Collection<Path> paths, Executor executor, Consumer<ParsedFile> callback) throws InterruptedException {
+        parseAll(paths, null, executor, BatchParser.DEFAULT_MAX_IN_FLIGHT, callback);
+    }
+
+    // maxInFlight 限制同时在内存中的源码和 AST 数量，回调处理完一个结果后才会开始下一个文件
+    public static void parseAll(Collection<Path> paths, SymbolPool symbols, Executor executor, int maxInFlight, Consumer<ParsedFile> callback) throws InterruptedException {
+        BatchParser.parseAll(paths, symbols, executor, maxInFlight, callback);
+    }
+
+    // 流式解析：从 Reader 中边读边解析，token 不会全部保存在内存中
+    public static List<Statement> parse(Reader reader) throws IOException, ParseError {
+        return parse(reader, null);
+    }
+
+    public static List<Statement> parse(Reader reader, SymbolPool symbols) throws IOException, ParseError {
+        return parse(reader, symbols, Parser.DEFAULT_MAX_DEPTH);
+    }
+
+    public static List<Statement> parse(Reader reader, SymbolPool symbols, int maxDepth) throws IOException, ParseError {
+        Parser parser = new Parser(new TokenStream(new Lexer(reader, symbols)), maxDepth);
+        try {
+            return parser.parseAll();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    // 延迟解码的字面量引用源码，调用方的可变 CharSequence 和内存映射的文件都要先复制成 String
+    private static CharSequence snapshot(CharSequence code) {
+        return code instanceof String ? code : code.toString();
     }
 }
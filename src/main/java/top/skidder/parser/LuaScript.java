@@ -0,0 +1,48 @@
+package top.skidder.parser;
+
+import java.util.List;
+
+// 编译好的 Lua 脚本：语法树只编译一次（见 ScriptCompiler），之后可以反复执行。脚本本身不可变，
+// 多个线程可以同时执行同一个脚本，只要它们使用不同的全局表。
+// Lua 值在 Java 中的表示：nil 为 null，布尔值为 Boolean，整数为 Long，浮点数为 Double，字符串为 String，
+// 表为 LuaTable，函数为 LuaFunction；宿主传入的数字必须是 Long 或 Double。
+// 编译和执行都在 Java 调用栈上递归，嵌套层数和函数递归深度受线程栈大小限制，超出时抛出 "stack overflow" 的 LuaError
+public final class LuaScript {
+    private final ScriptCompiler.Prototype main;
+
+    private LuaScript(ScriptCompiler.Prototype main) {
+        this.main = main;
+    }
+
+    public static LuaScript compile(CharSequence code) throws ParseError {
+        return compile(LuaParser.parse(code));
+    }
+
+    public static LuaScript compile(List<Statement> statements) {
+        try {
+            return new LuaScript(ScriptCompiler.compile(statements));
+        } catch (StackOverflowError e) {
+            throw new LuaError("stack overflow", -1);
+        }
+    }
+
+    // 带基础库的全局表
+    public static LuaTable createGlobals() {
+        LuaTable globals = new LuaTable();
+        LuaBaseLibrary.install(globals);
+        return globals;
+    }
+
+    public Object[] execute() {
+        return execute(createGlobals());
+    }
+
+    // 在 globals 中执行，返回主代码块 return 的值
+    public Object[] execute(LuaTable globals) {
+        try {
+            return new ScriptCompiler.Closure(main, new ScriptCompiler.Cell[0], globals).call();
+        } catch (StackOverflowError e) {
+            throw new LuaError("stack overflow", -1);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package top.skidder.parser;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+// Lua 表。键 1..n 的值放在数组部分，其余的键放在 HashMap 中；值恰好是整数的浮点数键按整数处理，存入 nil 等同于删除。
+// 不是线程安全的
+public final class LuaTable {
+    private static final Object[] EMPTY = new Object[0];
+
+    // 键不超过 array.length 的整数都在数组部分，不会出现在 hash 中
+    private Object[] array;
+    private int arraySize; // 数组部分中最后一个非 nil 值的键
+    private HashMap<Object, Object> hash;
+
+    public LuaTable() {
+        this(0, 0);
+    }
+
+    public LuaTable(int arrayCapacity, int hashCapacity) {
+        this.array = arrayCapacity > 0 ? new Object[arrayCapacity] : EMPTY;
+        this.hash = hashCapacity > 0 ? new HashMap<>(hashCapacity * 2) : null;
+    }
+
+    public Object get(Object key) {
+        if (key instanceof Long) {
+            return get((long) (Long) key);
+        }
+        if (key instanceof Double) {
+            Long index = LuaValues.integer(key);
+            if (index != null) {
+                return get((long) index);
+            }
+        }
+        return hash == null || key == null ? null : hash.get(key);
+    }
+
+    public Object get(long index) {
+        if (index >= 1 && index <= array.length) {
+            return array[(int) index - 1];
+        }
+        return hash == null ? null : hash.get(index);
+    }
+
+    public void put(Object key, Object value) {
+        if (key instanceof Long) {
+            put((long) (Long) key, value);
+            return;
+        }
+        if (key == null) {
+            throw new LuaError("table index is nil", -1);
+        }
+        if (key instanceof Double) {
+            if (((Double) key).isNaN()) {
+                throw new LuaError("table index is NaN", -1);
+            }
+            Long index = LuaValues.integer(key);
+            if (index != null) {
+                put((long) index, value);
+                return;
+            }
+        }
+        hashPut(key, value);
+    }
+
+    public void put(long index, Object value) {
+        if (index >= 1 && index <= array.length) {
+            array[(int) index - 1] = value;
+            if (value != null) {
+                arraySize = Math.max(arraySize, (int) index);
+            } else if (index == arraySize) {
+                while (arraySize > 0 && array[arraySize - 1] == null) {
+                    arraySize--;
+                }
+            }
+        } else if (index == array.length + 1 && value != null && index < Integer.MAX_VALUE / 2) {
+            // 紧接数组部分末尾追加时扩容，原来在 hash 中、落入新容量的键一起移过来
+            array = Arrays.copyOf(array, Math.max(4, array.length * 2));
+            array[(int) index - 1] = value;
+            arraySize = (int) index;
+            if (hash != null && !hash.isEmpty()) {
+                for (int i = (int) index + 1; i <= array.length; i++) {
+                    Object moved = hash.remove((long) i);
+                    if (moved != null) {
+                        array[i - 1] = moved;
+                        arraySize = i;
+                    }
+                }
+            }
+        } else {
+            hashPut(index, value);
+        }
+    }
+
+    private void hashPut(Object key, Object value) {
+        if (value == null) {
+            if (hash != null) {
+                hash.remove(key);
+            }
+            return;
+        }
+        if (hash == null) {
+            hash = new HashMap<>();
+        }
+        hash.put(key, value);
+    }
+
+    // "#" 运算符：一个边界 n，t[n] 不为 nil 而 t[n + 1] 为 nil；有空洞时与 Lua 一样可能是任意一个边界
+    public long length() {
+        if (arraySize < array.length || hash == null) {
+            return arraySize;
+        }
+        long n = arraySize;
+        while (hash.containsKey(n + 1)) {
+            n++;
+        }
+        return n;
+    }
+
+    // 遍历用：数组部分的容量和第 i 个（从 0 开始）值，以及 hash 部分的键的快照
+    int arrayCapacity() {
+        return array.length;
+    }
+
+    Object arrayValue(int i) {
+        return array[i];
+    }
+
+    Object[] hashKeys() {
+        return hash == null ? EMPTY : hash.keySet().toArray();
+    }
+
+    @Override
+    public String toString() {
+        return LuaValues.toDisplayString(this);
+    }
+}
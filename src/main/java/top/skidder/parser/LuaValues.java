@@ -0,0 +1,286 @@
+package top.skidder.parser;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+
+// Lua 5.3 值的运算规则，ConstantFolder 在编译期、LuaScript 在运行时共用。
+// 数字是 Long（整数）或 Double（浮点数），字符串是 String，布尔值是 Boolean。
+// 字符串按 UTF-16 处理而不是按字节：源码中的字符、\xNN 和 \ddd 转义的字节都是一个 char，无法还原出 Lua 的字节序列
+final class LuaValues {
+    private static final MathContext LUA_NUMBER_FORMAT = new MathContext(14, RoundingMode.HALF_EVEN); // "%.14g"
+
+    private LuaValues() {
+    }
+
+    static boolean isNumber(Object value) {
+        return value instanceof Long || value instanceof Double;
+    }
+
+    // 运行时的值：nil 为 null
+    static boolean truthy(Object value) {
+        return value != null && !Boolean.FALSE.equals(value);
+    }
+
+    static String type(Object value) {
+        if (value == null) {
+            return "nil";
+        }
+        if (value instanceof Boolean) {
+            return "boolean";
+        }
+        if (isNumber(value)) {
+            return "number";
+        }
+        if (value instanceof String) {
+            return "string";
+        }
+        if (value instanceof LuaTable) {
+            return "table";
+        }
+        return value instanceof LuaFunction ? "function" : "userdata";
+    }
+
+    // tostring 的结果
+    static String toDisplayString(Object value) {
+        if (value == null) {
+            return "nil";
+        }
+        if (value instanceof String || value instanceof Boolean) {
+            return value.toString();
+        }
+        if (isNumber(value)) {
+            return toString(value);
+        }
+        return String.format("%s: 0x%08x", type(value), System.identityHashCode(value));
+    }
+
+    // 两个数字的算术运算，整数除以零或对零取模时为 null
+    static Object arithmetic(String operator, Object a, Object b) {
+        if (a instanceof Long && b instanceof Long && !"/".equals(operator) && !"^".equals(operator)) {
+            long x = (Long) a;
+            long y = (Long) b;
+            switch (operator) {
+                case "+":
+                    return x + y;
+                case "-":
+                    return x - y;
+                case "*":
+                    return x * y;
+                case "//":
+                    return y == 0 ? null : (Object) Math.floorDiv(x, y);
+                default:
+                    return y == 0 ? null : (Object) Math.floorMod(x, y);
+            }
+        }
+        double x = ((Number) a).doubleValue();
+        double y = ((Number) b).doubleValue();
+        switch (operator) {
+            case "+":
+                return x + y;
+            case "-":
+                return x - y;
+            case "*":
+                return x * y;
+            case "/":
+                return x / y;
+            case "^":
+                return Math.pow(x, y);
+            case "//":
+                return Math.floor(x / y);
+            default:
+                return mod(x, y);
+        }
+    }
+
+    static double mod(double x, double y) {
+        double m = x % y;
+        if (m > 0 ? y < 0 : (m < 0 && y != m)) {
+            m += y;
+        }
+        return m;
+    }
+
+    static long bitwise(String operator, long x, long y) {
+        switch (operator) {
+            case "&":
+                return x & y;
+            case "|":
+                return x | y;
+            case "~":
+                return x ^ y;
+            case "<<":
+                return shiftLeft(x, y);
+            default:
+                return shiftLeft(x, -y);
+        }
+    }
+
+    // 逻辑移位，移动 64 位及以上时为 0，负数反向移动
+    static long shiftLeft(long x, long y) {
+        if (y <= -64 || y >= 64) {
+            return 0;
+        }
+        return y >= 0 ? x << y : x >>> -y;
+    }
+
+    // 位运算的操作数：整数，或者值恰好是整数的浮点数
+    static Long integer(Object value) {
+        if (value instanceof Long) {
+            return (Long) value;
+        }
+        if (value instanceof Double) {
+            double d = (Double) value;
+            if (d == Math.floor(d) && d >= -0x1p63 && d < 0x1p63) {
+                return (long) d;
+            }
+        }
+        return null;
+    }
+
+    // "#" 作用于字符串的结果：UTF-16 char 的个数
+    static long length(String string) {
+        return string.length();
+    }
+
+    // 字符串的大小关系：按 UTF-16 char 逐个比较
+    static int compare(String a, String b) {
+        return a.compareTo(b);
+    }
+
+    // 原始相等：数字按数值比较，其他值按 equals（表和函数即同一个对象）
+    static boolean equal(Object a, Object b) {
+        if (isNumber(a) && isNumber(b)) {
+            Integer order = order(a, b);
+            return order != null && order == 0;
+        }
+        return a == b || a != null && a.equals(b);
+    }
+
+    // 两个数字的精确大小关系，有 nan 时为 null
+    static Integer order(Object a, Object b) {
+        if (a instanceof Long && b instanceof Long) {
+            return Long.compare((Long) a, (Long) b);
+        }
+        double x = ((Number) a).doubleValue();
+        double y = ((Number) b).doubleValue();
+        if (Double.isNaN(x) || Double.isNaN(y)) {
+            return null;
+        }
+        if (Double.isInfinite(x) || Double.isInfinite(y)) {
+            return Double.compare(x, y);
+        }
+        // 整数和浮点数混合比较时不能先转成 double，大整数会丢失精度
+        return decimal(a).compareTo(decimal(b));
+    }
+
+    private static BigDecimal decimal(Object number) {
+        return number instanceof Long ? BigDecimal.valueOf((Long) number) : new BigDecimal((Double) number);
+    }
+
+    // 数字按 Lua 的 "%.14g" 转为字符串，整数值的浮点数加上 ".0"，inf 和 nan 写作 "inf"、"-inf" 和 "nan"
+    static String toString(Object number) {
+        if (number instanceof Long) {
+            return Long.toString((Long) number);
+        }
+        double d = (Double) number;
+        if (Double.isNaN(d)) {
+            return "nan";
+        }
+        if (Double.isInfinite(d)) {
+            return d > 0 ? "inf" : "-inf";
+        }
+        String text = formatG(d);
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c != '-' && (c < '0' || c > '9')) {
+                return text;
+            }
+        }
+        return text + ".0";
+    }
+
+    // C 的 "%.14g"：按 14 位有效数字舍入，指数小于 -4 或不小于 14 时用科学计数法，去掉末尾的 0
+    private static String formatG(double d) {
+        String sign = d < 0 || (d == 0 && 1 / d < 0) ? "-" : "";
+        if (d == 0) {
+            return sign + "0";
+        }
+        BigDecimal rounded = new BigDecimal(Math.abs(d)).round(LUA_NUMBER_FORMAT).stripTrailingZeros();
+        int exponent = rounded.precision() - rounded.scale() - 1;
+        if (exponent < -4 || exponent >= 14) {
+            String digits = rounded.unscaledValue().toString();
+            StringBuilder sb = new StringBuilder(sign).append(digits.charAt(0));
+            if (digits.length() > 1) {
+                sb.append('.').append(digits, 1, digits.length());
+            }
+            sb.append('e').append(exponent < 0 ? '-' : '+');
+            int magnitude = Math.abs(exponent);
+            if (magnitude < 10) {
+                sb.append('0');
+            }
+            return sb.append(magnitude).toString();
+        }
+        return sign + rounded.toPlainString();
+    }
+
+    // 字符串转数字，规则与数字字面量相同，允许前后空白和一个正负号；不是数字时为 null
+    static Object toNumber(String text) {
+        int start = 0;
+        int end = text.length();
+        while (start < end && Character.isWhitespace(text.charAt(start))) {
+            start++;
+        }
+        while (end > start && Character.isWhitespace(text.charAt(end - 1))) {
+            end--;
+        }
+        boolean negative = false;
+        if (start < end && (text.charAt(start) == '-' || text.charAt(start) == '+')) {
+            negative = text.charAt(start) == '-';
+            start++;
+        }
+        if (start == end || !numeral(text, start, end)) {
+            return null;
+        }
+        Expression.NumberLiteralExpression number = new Expression.NumberLiteralExpression(text, start, end);
+        if (number.isInteger()) {
+            return negative ? -number.longValue() : number.longValue();
+        }
+        return negative ? -number.doubleValue() : number.doubleValue();
+    }
+
+    // 十进制或十六进制数字，可以有小数部分和指数
+    private static boolean numeral(String text, int start, int end) {
+        boolean hex = end - start > 2 && text.charAt(start) == '0' && (text.charAt(start + 1) == 'x' || text.charAt(start + 1) == 'X');
+        int i = hex ? start + 2 : start;
+        int digits = 0;
+        boolean dot = false;
+        for (; i < end; i++) {
+            char c = text.charAt(i);
+            if (c == '.' && !dot) {
+                dot = true;
+            } else if (c >= '0' && c <= '9' || hex && (c | 0x20) >= 'a' && (c | 0x20) <= 'f') {
+                digits++;
+            } else {
+                break;
+            }
+        }
+        if (digits == 0) {
+            return false;
+        }
+        if (i < end && (hex ? text.charAt(i) == 'p' || text.charAt(i) == 'P' : text.charAt(i) == 'e' || text.charAt(i) == 'E')) {
+            i++;
+            if (i < end && (text.charAt(i) == '-' || text.charAt(i) == '+')) {
+                i++;
+            }
+            int exponent = i;
+            while (i < end && text.charAt(i) >= '0' && text.charAt(i) <= '9') {
+                i++;
+            }
+            if (i == exponent) {
+                return false;
+            }
+        }
+        return i == end;
+    }
+}
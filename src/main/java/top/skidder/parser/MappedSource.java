@@ -0,0 +1,132 @@
+package top.skidder.parser;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// 通过 FileChannel.map 把源码文件映射到内存，并以 CharSequence 的形式交给 Lexer，避免在堆上复制整份源码
+final class MappedSource {
+
+    private MappedSource() {
+    }
+
+    static CharSequence map(Path path) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("File too large to parse: " + path);
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+
+        int start = 0;
+        int length = buffer.limit();
+        // 跳过 UTF-8 BOM
+        if (length >= 3 && buffer.get(0) == (byte) 0xEF && buffer.get(1) == (byte) 0xBB && buffer.get(2) == (byte) 0xBF) {
+            start = 3;
+        }
+        if (isAscii(buffer, start, length)) {
+            // 纯 ASCII 时字节和字符一一对应，直接在映射的缓冲区上读取
+            return new AsciiView(buffer, start, length - start);
+        }
+        return decode(buffer, start, length);
+    }
+
+    private static boolean isAscii(ByteBuffer buffer, int start, int end) {
+        int i = start;
+        // 一次检查 8 个字节的最高位
+        for (; i + 8 <= end; i += 8) {
+            if ((buffer.getLong(i) & 0x8080808080808080L) != 0) {
+                return false;
+            }
+        }
+        for (; i < end; i++) {
+            if (buffer.get(i) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // 含有非 ASCII 字符时按 UTF-8 解码到堆外的 CharBuffer 中
+    private static CharSequence decode(ByteBuffer buffer, int start, int end) throws IOException {
+        ByteBuffer in = buffer.duplicate();
+        // 转成 Buffer 调用，保证在 Java 8 上也能找到对应的方法签名
+        ((Buffer) in).limit(end);
+        ((Buffer) in).position(start);
+        CharBuffer out = ByteBuffer.allocateDirect(decodedBytes(end - start)).asCharBuffer();
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        CoderResult result = decoder.decode(in, out, true);
+        if (result.isError()) {
+            result.throwException();
+        }
+        decoder.flush(out);
+        ((Buffer) out).flip();
+        return out;
+    }
+
+    // 解码结果占用的字节数：UTF-8 的每个字节最多解码出一个 char，每个 char 两个字节。
+    // 按 long 计算，超过一个直接缓冲区的容量（约 1 GiB 的非 ASCII 源码）时报错，不会溢出成负数
+    static int decodedBytes(long length) throws IOException {
+        long bytes = length * 2;
+        if (bytes > Integer.MAX_VALUE) {
+            throw new IOException("Non-ASCII source too large to decode: " + length + " bytes (limit " + Integer.MAX_VALUE / 2 + ")");
+        }
+        return (int) bytes;
+    }
+
+    // 只读的 ASCII 字节视图
+    static final class AsciiView implements CharSequence {
+        private final ByteBuffer buffer;
+        private final int offset;
+        private final int length;
+
+        AsciiView(ByteBuffer buffer, int offset, int length) {
+            this.buffer = buffer;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= length) {
+                throw new IndexOutOfBoundsException("index " + index + ", length " + length);
+            }
+            return (char) buffer.get(offset + index);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            if (start < 0 || end > length || start > end) {
+                throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", length " + length);
+            }
+            return new AsciiView(buffer, offset + start, end - start);
+        }
+
+        @Override
+        public String toString() {
+            byte[] bytes = new byte[length];
+            for (int i = 0; i < length; i++) {
+                bytes[i] = buffer.get(offset + i);
+            }
+            return new String(bytes, StandardCharsets.US_ASCII);
+        }
+    }
+}
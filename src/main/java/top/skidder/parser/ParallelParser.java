@@ -0,0 +1,151 @@
+package top.skidder.parser;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// 单个大文件的并行解析：先完整词法分析，再按语句块深度扫描 token，在顶层语句的边界把 token 切成若干段，
+// 每段作为 ForkJoin 任务独立解析，最后按顺序拼接。任何一段出错时退回顺序解析，保证报错与顺序解析完全一致
+final class ParallelParser {
+    // 每段至少这么多 token，太小的段调度开销比解析还大
+    private static final int MIN_CHUNK_TOKENS = 4096;
+
+    private ParallelParser() {
+    }
+
+    static List<Statement> parse(CharSequence code, SymbolPool symbols, int maxDepth, ForkJoinPool pool) throws ParseError {
+        TokenBuffer tokens = new Lexer(code, symbols).tokenize();
+        int[] bounds = split(tokens, Math.max(pool.getParallelism(), 1) * 4);
+        if (bounds.length <= 2) {
+            return new Parser(tokens, maxDepth).parseAll();
+        }
+        int chunks = bounds.length - 1;
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        List<Statement>[] results = new List[chunks];
+        ParseTask task = new ParseTask(tokens, bounds, maxDepth, results, 0, chunks);
+        pool.invoke(task);
+        if (task.failed) {
+            return new Parser(tokens, maxDepth).parseAll();
+        }
+        int total = 0;
+        for (List<Statement> result : results) {
+            total += result.size();
+        }
+        List<Statement> statements = new ArrayList<>(total);
+        for (List<Statement> result : results) {
+            statements.addAll(result);
+        }
+        return statements;
+    }
+
+    // 找出切分点，返回的数组以 0 开头、以 token 总数结尾。语句块深度不平衡时不切分
+    private static int[] split(TokenBuffer tokens, int target) {
+        int size = tokens.size();
+        int chunkTokens = Math.max(size / Math.max(target, 1), MIN_CHUNK_TOKENS);
+        int[] bounds = new int[size / chunkTokens + 2];
+        int count = 1;
+        int blocks = 0; // function/if/do/repeat 与 end/until 的嵌套深度
+        int brackets = 0; // 括号、方括号和花括号的嵌套深度
+        TokenKind previous = TokenKind.EOF;
+        for (int i = 0; i < size; i++) {
+            TokenKind kind = tokens.kind(i);
+            if (blocks == 0 && brackets == 0 && i - bounds[count - 1] >= chunkTokens && startsStatement(kind, previous)) {
+                bounds[count++] = i;
+            }
+            switch (kind) {
+                case FUNCTION:
+                case IF:
+                case DO:
+                case REPEAT:
+                    blocks++;
+                    break;
+                case END:
+                case UNTIL:
+                    blocks--;
+                    break;
+                case LPAREN:
+                case LBRACKET:
+                case LBRACE:
+                    brackets++;
+                    break;
+                case RPAREN:
+                case RBRACKET:
+                case RBRACE:
+                    brackets--;
+                    break;
+                default:
+                    break;
+            }
+            if (blocks < 0 || brackets < 0) {
+                return new int[]{0, size};
+            }
+            previous = kind;
+        }
+        if (blocks != 0 || brackets != 0) {
+            return new int[]{0, size};
+        }
+        bounds[count++] = size;
+        int[] result = new int[count];
+        System.arraycopy(bounds, 0, result, 0, count);
+        return result;
+    }
+
+    // 深度为 0 时这些 token 一定开始一条新语句；function 前面是 local、运算符、逗号或 return 等时是表达式的一部分
+    private static boolean startsStatement(TokenKind kind, TokenKind previous) {
+        switch (kind) {
+            case LOCAL:
+            case IF:
+            case WHILE:
+            case FOR:
+            case REPEAT:
+                return true;
+            case FUNCTION:
+                return previous != TokenKind.LOCAL && previous != TokenKind.RETURN && previous != TokenKind.COMMA
+                        && previous != TokenKind.IN && previous != TokenKind.AND && previous != TokenKind.OR
+                        && previous != TokenKind.NOT && !"OPERATOR".equals(previous.type);
+            default:
+                return false;
+        }
+    }
+
+    private static final class ParseTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final TokenBuffer tokens;
+        private final int[] bounds;
+        private final int maxDepth;
+        private final List<Statement>[] results;
+        private final int from;
+        private final int to;
+        volatile boolean failed;
+
+        ParseTask(TokenBuffer tokens, int[] bounds, int maxDepth, List<Statement>[] results, int from, int to) {
+            this.tokens = tokens;
+            this.bounds = bounds;
+            this.maxDepth = maxDepth;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                try {
+                    Parser parser = new Parser(new BoundedTokens(tokens, bounds[from + 1]), maxDepth);
+                    parser.seek(bounds[from]);
+                    results[from] = parser.parseAll();
+                } catch (ParseError e) {
+                    failed = true;
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            ParseTask left = new ParseTask(tokens, bounds, maxDepth, results, from, mid);
+            ParseTask right = new ParseTask(tokens, bounds, maxDepth, results, mid, to);
+            invokeAll(left, right);
+            failed = left.failed || right.failed;
+        }
+    }
+}
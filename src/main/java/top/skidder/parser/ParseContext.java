@@ -0,0 +1,62 @@
+package top.skidder.parser;
+
+import java.util.List;
+
+// 可重复使用的解析上下文：在多次解析之间保留 Lexer、token 数组和 Parser 的栈，反复解析小段代码时几乎只分配 AST 本身。
+// 一个 ParseContext 同一时间只能被一个线程使用，LuaParser.parse 使用当前线程的 ParseContext
+public final class ParseContext {
+    private static final ThreadLocal<ParseContext> LOCAL = ThreadLocal.withInitial(ParseContext::new);
+
+    private final Lexer lexer = new Lexer("");
+    private final TokenBuffer tokens = new TokenBuffer("", 64, null);
+    private final Parser parser = new Parser(tokens);
+    private boolean busy;
+
+    public ParseContext() {
+        // 数组在第一次解析时按需扩容
+    }
+
+    public List<Statement> parse(CharSequence code) throws ParseError {
+        return parse(code, null);
+    }
+
+    public List<Statement> parse(CharSequence code, SymbolPool symbols) throws ParseError {
+        return parse(code, symbols, Parser.DEFAULT_MAX_DEPTH);
+    }
+
+    // 字符串和数字字面量在第一次读取时才从源码解码，所以不是 String 的输入（StringBuilder 等）会先复制一份，
+    // 解析之后修改调用方的 CharSequence 不会影响返回的 AST
+    public List<Statement> parse(CharSequence code, SymbolPool symbols, int maxDepth) throws ParseError {
+        return parse(code instanceof String ? code : code.toString(), symbols, maxDepth, false);
+    }
+
+    // detach 为 true 时字面量立即解码，AST 不引用源码。用于内存映射的文件，AST 不会一直持有映射，文件之后被修改也不受影响
+    List<Statement> parse(CharSequence code, SymbolPool symbols, int maxDepth, boolean detach) throws ParseError {
+        if (busy) {
+            throw new IllegalStateException("ParseContext is already in use");
+        }
+        busy = true;
+        try {
+            lexer.reset(code, symbols);
+            tokens.reset(code, symbols);
+            lexer.tokenize(tokens);
+            parser.reset(tokens, maxDepth);
+            if (detach) {
+                parser.detachLiterals();
+            }
+            return parser.parseAll();
+        } finally {
+            // 不再引用这次的源码和 AST，线程本地的上下文不会让它们无法回收
+            lexer.reset("", null);
+            tokens.reset("", null);
+            parser.reset(tokens, maxDepth);
+            busy = false;
+        }
+    }
+
+    // 当前线程的上下文，正在使用时返回一个新的上下文
+    static ParseContext local() {
+        ParseContext context = LOCAL.get();
+        return context.busy ? new ParseContext() : context;
+    }
+}
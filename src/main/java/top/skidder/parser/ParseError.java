@@ -1,8 +1,21 @@
 package top.skidder.parser;
 
 public class ParseError extends Exception {
+    private final int offset;
 
     public ParseError(String message) {
         super(message);
+        this.offset = -1;
+    }
+
+    // 带源码偏移的错误，stackless 为 true 时不填充调用栈，用于错误恢复模式
+    ParseError(String message, int offset, boolean stackless) {
+        super(message, null, false, !stackless);
+        this.offset = offset;
+    }
+
+    // 出错位置在源码中的偏移，未知时为 -1
+    public int getOffset() {
+        return offset;
     }
 }
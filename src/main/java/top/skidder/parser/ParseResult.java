@@ -0,0 +1,62 @@
+package top.skidder.parser;
+
+import java.util.Collections;
+import java.util.List;
+
+// 带错误恢复的解析结果：尽可能完整的 AST 加上所有诊断信息。
+// 同时记录源码和每条顶层语句的起始偏移，可以交给 LuaParser.reparse 做增量解析
+public final class ParseResult {
+    private final CharSequence source;
+    private final List<Statement> statements;
+    final int[] starts; // 每条顶层语句第一个 token 的偏移，与 statements 一一对应
+    private final List<Diagnostic> diagnostics;
+    private volatile LineTable lineTable;
+
+    ParseResult(CharSequence source, List<Statement> statements, int[] starts, List<Diagnostic> diagnostics) {
+        this.source = source;
+        this.statements = statements;
+        this.starts = starts;
+        this.diagnostics = diagnostics;
+    }
+
+    public CharSequence getSource() {
+        return source;
+    }
+
+    public List<Statement> getStatements() {
+        return Collections.unmodifiableList(statements);
+    }
+
+    // 第 index 条顶层语句中的节点偏移加上这个值才是在当前源码中的位置。
+    // 增量解析原样复用的语句保留它们在旧版本源码中的偏移，其余语句为 0
+    public int getOffsetShift(int index) {
+        int offset = statements.get(index).getOffset();
+        return offset < 0 ? 0 : starts[index] - offset;
+    }
+
+    // 源码的行号表，第一次调用时才创建
+    public LineTable getLineTable() {
+        LineTable table = lineTable;
+        if (table == null) {
+            lineTable = table = new LineTable(source);
+        }
+        return table;
+    }
+
+    // 按偏移排序
+    public List<Diagnostic> getDiagnostics() {
+        return Collections.unmodifiableList(diagnostics);
+    }
+
+    public boolean hasErrors() {
+        return !diagnostics.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "ParseResult{" +
+                "statements=" + statements +
+                ", diagnostics=" + diagnostics +
+                '}';
+    }
+}
@@ -0,0 +1,43 @@
+package top.skidder.parser;
+
+import java.nio.file.Path;
+import java.util.List;
+
+// 批量解析中一个文件的结果：成功时有 AST，读取或解析失败时有异常
+public final class ParsedFile {
+    private final Path path;
+    private final List<Statement> statements;
+    private final Exception error;
+
+    ParsedFile(Path path, List<Statement> statements, Exception error) {
+        this.path = path;
+        this.statements = statements;
+        this.error = error;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    // 失败时为 null
+    public List<Statement> getStatements() {
+        return statements;
+    }
+
+    // IOException、ParseError 或词法错误，成功时为 null
+    public Exception getError() {
+        return error;
+    }
+
+    public boolean isSuccess() {
+        return error == null;
+    }
+
+    @Override
+    public String toString() {
+        return "ParsedFile{" +
+                "path=" + path +
+                (error == null ? ", statements=" + statements : ", error=" + error) +
+                '}';
+    }
+}
@@ -1,661 +1,1003 @@
 package top.skidder.parser;
 
 import java.util.*;
+import java.util.function.Function;
 
 public class Parser {
-    private final List<Token> tokens;
+    private TokenSource tokens;
     private int position;
-
-    private static final Map<String, Integer> PRECEDENCE = new HashMap<String, Integer>() {{
-        put("^", 8);
-        put("not", 7);
-        put("#", 7);
-        put("unm", 7);
-        put("*", 6);
-        put("/", 6);
-        put("%", 6);
-        put("+", 5);
-        put("-", 5);
-        put("..", 4);
-        put("<", 3);
-        put(">", 3);
-        put("<=", 3);
-        put(">=", 3);
-        put("~=", 3);
-        put("==", 3);
-        put("and", 2);
-        put("or", 1);
-    }};
-
-    Parser(List<Token> tokens) {
+    private final List<Diagnostic> diagnostics; // 错误恢复模式下收集诊断信息，否则为 null
+    private boolean detachLiterals; // 字面量立即解码，不再引用源码
+    private boolean lazyFunctions; // 函数体只记录 token 范围，第一次访问时才解析
+
+    static final int DEFAULT_MAX_DEPTH = 1 << 14;
+    // 匿名函数的函数体仍然在 Java 调用栈上递归解析，限制在 100 层，256k 的线程栈也不会溢出
+    private static final int MAX_FUNCTION_NESTING = 100;
+
+    private int maxDepth;
+    private final List<Frame> frames = new ArrayList<>(); // 还没有结束的复合语句
+    private int functions; // 当前嵌套的匿名函数层数
+
+    // 表达式的显式栈：二元运算符的编码是 TokenKind 的序号，值是左操作数；一元运算符为 UNARY + 序号
+    private static final int PAREN = -1;
+    private static final int CALL = -2;
+    private static final int TABLE = -3;
+    private static final int UNARY = TokenKind.VALUES.length;
+    private int[] pendingCodes = new int[16];
+    private Object[] pendingValues = new Object[16];
+    private int[] pendingOffsets = new int[16]; // 入栈时刚消费的 token 的偏移，即括号、一元运算符和表构造器的起点
+    private int pending;
+
+    // 二元运算符的左右绑定强度，按 TokenKind 的序号索引，0 表示不是二元运算符；右结合运算符的右侧强度更低
+    private static final int[] LEFT_PRIORITY = new int[TokenKind.VALUES.length];
+    private static final int[] RIGHT_PRIORITY = new int[TokenKind.VALUES.length];
+    private static final int UNARY_PRIORITY = 12;
+
+    static {
+        priority(TokenKind.OR, 1, 1);
+        priority(TokenKind.AND, 2, 2);
+        priority(TokenKind.LT, 3, 3);
+        priority(TokenKind.GT, 3, 3);
+        priority(TokenKind.LE, 3, 3);
+        priority(TokenKind.GE, 3, 3);
+        priority(TokenKind.NE, 3, 3);
+        priority(TokenKind.EQ, 3, 3);
+        priority(TokenKind.PIPE, 4, 4);
+        priority(TokenKind.TILDE, 5, 5);
+        priority(TokenKind.AMPERSAND, 6, 6);
+        priority(TokenKind.SHIFT_LEFT, 7, 7);
+        priority(TokenKind.SHIFT_RIGHT, 7, 7);
+        priority(TokenKind.CONCAT, 9, 8); // 右结合
+        priority(TokenKind.PLUS, 10, 10);
+        priority(TokenKind.MINUS, 10, 10);
+        priority(TokenKind.STAR, 11, 11);
+        priority(TokenKind.SLASH, 11, 11);
+        priority(TokenKind.DOUBLE_SLASH, 11, 11);
+        priority(TokenKind.PERCENT, 11, 11);
+        priority(TokenKind.CARET, 14, 13); // 右结合，且比一元运算符优先
+    }
+
+    private static void priority(TokenKind kind, int left, int right) {
+        LEFT_PRIORITY[kind.ordinal()] = left;
+        RIGHT_PRIORITY[kind.ordinal()] = right;
+    }
+
+    Parser(TokenSource tokens) {
+        this(tokens, DEFAULT_MAX_DEPTH);
+    }
+
+    // maxDepth 限制语句块、括号、运算符、参数列表和表构造器的总嵌套层数，超过时报错而不是栈溢出
+    Parser(TokenSource tokens, int maxDepth) {
+        this(tokens, maxDepth, null);
+    }
+
+    // diagnostics 不为 null 时为错误恢复模式：出错时记录诊断信息并跳到下一个语句，返回尽可能完整的 AST
+    Parser(TokenSource tokens, int maxDepth, List<Diagnostic> diagnostics) {
         this.tokens = tokens;
         this.position = 0;
-    }
-
-    // 解析主方法，支持多种语句
-    Statement parse() throws ParseError {
-
-        Token peek = peek();
-        if (match("KEYWORD")) {
-            if ("function".equals(peek.value)) {
-                return new Statement.ExpressionStatement(parseFunctionDefinition());
-            } else if ("local".equals(peek.value)) {
-                return parseLocalDeclaration();
-            } else if ("return".equals(peek.value)) {
-                return parseReturnStatement();
-            } else if ("if".equals(peek.value)) {
-                return parseIfStatement();
-            } else if ("for".equals(peek.value)) {
-                return parseForStatement();
-            } else if ("while".equals(peek.value)) {
-                return parseWhileStatement();
-            } else if ("repeat".equals(peek.value)) {
-                return parseRepeatStatement();
-            }
-        } else if (match("IDENTIFIER")) {
-            if (lookaheadIs("SYMBOL", "(")) {
-                return new Statement.ExpressionStatement(parseFunctionCall());
-            } else if (lookaheadIs("OPERATOR", ".")) {
-                return new Statement.ExpressionStatement(parseExpression());
-            } else if (lookaheadIs("SYMBOL", ":")) {
-                return new Statement.ExpressionStatement(parseExpression());
-            } else if (lookaheadIs("OPERATOR", "..")) {
-                return new Statement.ExpressionStatement(parseExpression());
-            } else if (lookaheadIs("OPERATOR", "=")) {
-                return parseAssignment();
-            }
-        }
-
-        throw new IllegalArgumentException("Unexpected token: " + peek.type + " " + peek.value + " at position " + position + " -> " + context());
+        this.maxDepth = maxDepth;
+        this.diagnostics = diagnostics;
     }
 
     public List<Statement> parseAll() throws ParseError {
         List<Statement> statements = new ArrayList<>();
-        while (position < tokens.size()) {
-            statements.add(parse());
+        while (parseNext(statements)) {
+            // 逐条解析顶层语句
         }
         return statements;
     }
 
-    // 解析赋值语句
-    private Statement parseAssignment() throws ParseError {
-        Token identifier = consume("IDENTIFIER");
-        consume("OPERATOR"); // Expect '='
-        Expression value = parseExpression();
-        return new Statement.AssignmentStatement(identifier.value, value);
-    }
-
-    // 解析函数定义
-    private Expression.FunctionDefinitionExpression parseFunctionDefinition() throws ParseError {
-        consume("KEYWORD"); // 消费 "function"
-        Token functionName = consume("IDENTIFIER"); // 函数名称
-        consume("SYMBOL"); // 消费 "("
-
-        // 解析参数列表
-        List<String> parameters = new ArrayList<>();
-        while (!match("SYMBOL") || !peek().value.equals(")")) {
-            if (match("IDENTIFIER")) {
-                parameters.add(consume("IDENTIFIER").value);
-            } else if (match("KEYWORD") && peek().value.equals("function")) {
-                // 匿名函数作为参数
-                parameters.add(parseAnonymousFunction().toString());
-            }
-            if (match("SYMBOL") && peek().value.equals(",")) {
-                consume("SYMBOL"); // 跳过 ","
-            }
+    // 解析一条顶层语句，包括它的整个语句块，返回 false 表示已经到达输入末尾。恢复模式下出错的语句不会加入 statements
+    boolean parseNext(List<Statement> statements) throws ParseError {
+        if (kind(0) == TokenKind.EOF) {
+            return false;
         }
-        consume("SYMBOL"); // 消费 ")"
-
-        // 解析函数体
-        List<Statement> body = parseBlock();
-        consume("KEYWORD"); // 消费 "end"
-
-        return new Expression.FunctionDefinitionExpression(functionName.value, parameters, body);
+        parseStatement(statements); // 顶层多余的 end/else/elseif/until 在这里报错
+        closeFrames(0);
+        return true;
     }
 
-    // 解析表达式语句
-    private Expression parseExpression() throws ParseError {
-        return parseExpression(0); // 初始优先级为 0
+    // 当前 token 在输入中的偏移
+    int offset() {
+        return tokens.offset(position);
     }
 
-    // 解析二元表达式，基于优先级
-    private Expression parseExpression(int minPrecedence) throws ParseError {
-        Deque<Expression> exprStack = new ArrayDeque<>();
-        exprStack.push(parsePrefix());
-
-        while (true) {
-            Token opToken = peek();
-            if (opToken == null) break;
-
-            Integer currPrec = PRECEDENCE.get(getOperatorKey(opToken));
-            if (currPrec == null || currPrec < minPrecedence) break;
+    // 增量解析时使用：新解析的语句会和旧版本源码的语句一起保留，字面量不能继续引用新版本的源码。
+    // 解析内存映射的文件时也使用，AST 不能持有映射
+    void detachLiterals() {
+        detachLiterals = true;
+    }
 
-            consumeCurrent();
-            exprStack.push(parseInfix(exprStack.pop(), opToken, currPrec));
+    // 换成新的 token 从头开始解析，保留已经分配的栈，ParseContext 用它复用同一个 Parser
+    void reset(TokenSource tokens, int maxDepth) {
+        this.tokens = tokens;
+        this.maxDepth = maxDepth;
+        this.position = 0;
+        this.functions = 0;
+        this.detachLiterals = false;
+        this.lazyFunctions = false;
+        frames.clear();
+        unwind(0);
+        if (pendingValues.length > 1024) {
+            pendingCodes = new int[16];
+            pendingValues = new Object[16];
+            pendingOffsets = new int[16];
         }
+    }
 
-        return exprStack.pop();
+    // 从第 position 个 token 开始解析，配合 BoundedTokens 解析一段 token
+    void seek(int position) {
+        this.position = position;
     }
 
-    // 解析前缀表达式
-    private Expression parsePrefix() throws ParseError {
-        Token token = consumeCurrent();
-        switch (token.type) {
-            case "NUMBER":
-                return new Expression.LiteralExpression("NUMBER", token.value);
-            case "STRING":
-                return new Expression.LiteralExpression("STRING", token.value);
-            case "BOOLEAN":
-                return new Expression.LiteralExpression("BOOLEAN", token.value);
-            case "NIL":
-                return new Expression.NilLiteralExpression();
-            case "IDENTIFIER":
-                return parseIdentifierExpression(token.value);
-            case "SYMBOL":
-                return handleSymbolPrefix(token.value);
-            case "OPERATOR":
-                return handleOperatorPrefix(token.value);
-            case "KEYWORD":
-                if (token.value.equals("function")) {
-                    // 解析匿名函数
-                    position--; // 回退一个
-                    return parseAnonymousFunction();
-                }
-            default:
-                throw new ParseError("Unexpected token type: " + token.type + " " + token.value + " at position " + position + " -> " + context());
-        }
+    // 延迟解析函数体，只能用于已经完整读取的 token，函数体中的语法错误推迟到访问函数体时才报告
+    void lazyFunctions() {
+        lazyFunctions = true;
     }
 
-    // 处理符号前缀（括号/表）
-    private Expression handleSymbolPrefix(String symbol) throws ParseError {
-        switch (symbol) {
-            case "(":
-                Expression expr = parseExpression(0);
-                consume("SYMBOL", ")");
-                return expr;
-            case "{":
-                position--; // 回退一个
-                return parseTable();
-            default:
-                throw new ParseError("Unexpected symbol: " + symbol);
+    // 解析语句直到当前层的语句块结束
+    private void parseBlock(List<Statement> statements) throws ParseError {
+        int base = frames.size();
+        while (!isBlockEnd(kind(0))) {
+            parseStatement(statements);
+            closeFrames(base);
         }
     }
 
-    // 处理运算符前缀（一元运算符）
-    private Expression handleOperatorPrefix(String operator) throws ParseError {
-        if ("-".equals(operator)) {
-            return new Expression.UnaryExpression("-", parseExpression(getPrecedence("unm")));
+    // 复合语句解析完头部后压入 frames，之后的语句加入栈顶 Frame 的语句块，遇到 end/else/elseif/until 时交给栈顶的 Frame 处理，
+    // 直到 base 以上的复合语句全部结束。嵌套的语句块不会占用 Java 调用栈
+    private void closeFrames(int base) throws ParseError {
+        while (frames.size() > base) {
+            Frame frame = frames.get(frames.size() - 1);
+            if (isBlockEnd(kind(0))) {
+                closeFrame(frame);
+            } else {
+                parseStatement(frame.body);
+            }
         }
-        throw new ParseError("Unsupported prefix operator: " + operator);
     }
 
-    // 解析中缀表达式
-    private Expression parseInfix(Expression left, Token opToken, int precedence) throws ParseError {
-        String operator = getOperatorKey(opToken);
-
-        // 处理右结合运算符（如指数）
-        int nextPrecedence = ("^".equals(operator)) ? precedence - 1 : precedence;
-
-        return new Expression.BinaryExpression(
-                left,
-                operator,
-                parseExpression(nextPrecedence)
-        );
+    // 解析一条语句；恢复模式下出错时跳到同步点
+    private void parseStatement(List<Statement> statements) throws ParseError {
+        if (diagnostics == null) {
+            parse(statements);
+            return;
+        }
+        int start = position;
+        int depth = pending;
+        try {
+            parse(statements);
+        } catch (ParseError e) {
+            diagnostics.add(new Diagnostic(e.getOffset(), e.getMessage()));
+            unwind(depth);
+            synchronize(start);
+        }
     }
 
-    // 处理标识符表达式（可能包含方法调用）
-    private Expression parseIdentifierExpression(String name) throws ParseError {
-        Expression expr = new Expression.VariableExpression(name);
-
-        while (true) {
-            Token nextToken = peek();
-            if (nextToken == null || !nextToken.type.equals("SYMBOL")) return expr;
-            if ("(".equals(nextToken.value)) {
-                expr = parseFunctionCall(expr);
-            } else if (".".equals(nextToken.value)) {
-                expr = parseMemberAccess(expr, false);
-            } else if (":".equals(nextToken.value)) {
-                expr = parseMemberAccess(expr, true);
-            } else {
-                return expr;
+    // 栈顶的复合语句遇到了 end/else/elseif/until；语句结束时出栈并加入外层语句块
+    private void closeFrame(Frame frame) throws ParseError {
+        if (diagnostics == null) {
+            Statement statement = frame.close();
+            if (statement != null) {
+                frames.remove(frames.size() - 1);
+                frame.parent.add(at(statement, frame.offset));
+            }
+            return;
+        }
+        int depth = pending;
+        try {
+            Statement statement = frame.close();
+            if (statement != null) {
+                frames.remove(frames.size() - 1);
+                frame.parent.add(at(statement, frame.offset));
             }
+        } catch (ParseError e) {
+            // 丢弃整个复合语句，交给外层继续处理
+            diagnostics.add(new Diagnostic(e.getOffset(), e.getMessage()));
+            frames.remove(frames.size() - 1);
+            unwind(depth);
+            synchronize(frame.start);
         }
     }
 
-    // 解析函数调用
-    private Expression parseFunctionCall(Expression function) throws ParseError {
-        consume("SYMBOL", "(");
-        List<Expression> args = new ArrayList<>();
-        while (!peek().value.equals(")")) {
-            args.add(parseExpression(0));
-            if (peek().value.equals(",")) {
-                consumeCurrent();
+    // 跳过出错的 token，直到下一个语句关键字或语句块结束处
+    private void synchronize(int start) {
+        if (position == start) {
+            position++; // 至少前进一个 token，避免死循环
+        }
+        while (true) {
+            switch (kind(0)) {
+                case LOCAL:
+                case FUNCTION:
+                case IF:
+                case FOR:
+                case WHILE:
+                case REPEAT:
+                case RETURN:
+                case DO:
+                case END:
+                case ELSE:
+                case ELSEIF:
+                case UNTIL:
+                case EOF:
+                    return;
+                default:
+                    position++;
             }
         }
-        consume("SYMBOL", ")");
-        return new Expression.FunctionCallExpression(((Expression.VariableExpression) function).getName(), args);
     }
 
-    // 辅助方法
-    private String getOperatorKey(Token token) {
-        if ("KEYWORD".equals(token.type) && ("and".equals(token.value) || "or".equals(token.value))) {
-            return token.value;
+    // 解析一条语句：简单语句直接加入 statements，复合语句只解析头部并压入 frames，语句块由 parseBlock 继续解析
+    private void parse(List<Statement> statements) throws ParseError {
+        int start = offset();
+        switch (kind(0)) {
+            case FUNCTION:
+                parseFunctionDefinition(statements, false);
+                return;
+            case LOCAL:
+                if (lookaheadIs(TokenKind.FUNCTION)) {
+                    parseFunctionDefinition(statements, true);
+                } else {
+                    statements.add(at(parseLocalDeclaration(), start));
+                }
+                return;
+            case RETURN:
+                statements.add(at(parseReturnStatement(), start));
+                return;
+            case IF:
+                parseIfStatement(statements);
+                return;
+            case FOR:
+                parseForStatement(statements);
+                return;
+            case WHILE:
+                parseWhileStatement(statements);
+                return;
+            case REPEAT:
+                parseRepeatStatement(statements);
+                return;
+            case IDENTIFIER:
+                switch (kind(1)) {
+                    case LPAREN:
+                        statements.add(at(new Statement.ExpressionStatement(parseFunctionCall()), start));
+                        return;
+                    case DOT:
+                    case COLON:
+                    case CONCAT:
+                        statements.add(at(new Statement.ExpressionStatement(parseExpression()), start));
+                        return;
+                    case ASSIGN:
+                        statements.add(at(parseAssignment(), start));
+                        return;
+                    default:
+                        break;
+                }
+                break;
+            default:
+                break;
         }
-        return token.value;
-    }
 
-    private int getPrecedence(String operator) {
-        return PRECEDENCE.getOrDefault(operator, -1);
+        throw error("Unexpected token: " + describe(position));
     }
 
-    private Expression parseMemberAccess(Expression obj, boolean isMethod) throws ParseError {
-        consume("SYMBOL", isMethod ? ":" : ".");
-        Token member = consume("IDENTIFIER");
-
-        // 如果后面有参数列表则解析方法调用
-        if (match("SYMBOL", "(")) {
-            List<Expression> args = parseArguments();
-            if (isMethod) {
-                args.add(0, obj); // 自动添加self参数
-            }
-            return new Expression.MethodCallExpression(obj, member.value, args, isMethod);
-        }
-
-        return new Expression.MemberAccessExpression(obj, member.value);
+    // 解析赋值语句
+    private Statement parseAssignment() throws ParseError {
+        String identifier = name();
+        consume(TokenKind.ASSIGN); // Expect '='
+        Expression value = parseExpression();
+        return new Statement.AssignmentStatement(identifier, value);
     }
 
-    private List<Expression> parseArguments() throws ParseError {
-        consume("SYMBOL"); // 消费 "("
-        List<Expression> arguments = new ArrayList<>();
-        while (!match("SYMBOL") || !peek().value.equals(")")) {
+    // 解析函数定义的头部，函数体由 parseBlock 继续解析；local 为 true 时是局部函数声明
+    private void parseFunctionDefinition(List<Statement> statements, boolean local) throws ParseError {
+        int start = position;
+        int offset = offset();
+        if (local) {
+            consume(TokenKind.LOCAL); // 消费 "local"
+        }
+        consume(TokenKind.FUNCTION); // 消费 "function"
+        String functionName = name(); // 函数名称
+        consume(TokenKind.LPAREN); // 消费 "("
 
-            if ((match("NUMBER") || match("STRING") || match("IDENTIFIER")) && (lookaheadIs("SYMBOL", ",") || lookaheadIs("SYMBOL", ")"))) {
-                arguments.add(parsePrimary()); // 解析基本的参数
-            } else {
-                arguments.add(parseExpression()); // 解析表达式参数
+        // 解析参数列表
+        List<String> parameters = new ArrayList<>();
+        while (!match(TokenKind.RPAREN)) {
+            if (match(TokenKind.IDENTIFIER)) {
+                parameters.add(name());
+            } else if (match(TokenKind.FUNCTION)) {
+                // 匿名函数作为参数
+                parameters.add(parseAnonymousFunction().toString());
+            } else if (!match(TokenKind.COMMA)) {
+                throw unexpected("parameter list");
             }
-            if (match("SYMBOL") && peek().value.equals(",")) {
-                consume("SYMBOL"); // 跳过 ","
+            if (match(TokenKind.COMMA)) {
+                consume(TokenKind.COMMA); // 跳过 ","
             }
         }
-        consume("SYMBOL"); // 消费 ")"
-        return arguments;
+        consume(TokenKind.RPAREN); // 消费 ")"
+
+        Function<List<Statement>, Statement> statement = body -> {
+            // 在 end 之后调用，函数定义的范围与整条语句相同
+            Expression function = at(new Expression.FunctionDefinitionExpression(functionName, parameters, body), offset);
+            return local
+                    ? new Statement.LocalDeclarationStatement(functionName, function) // 局部函数定义
+                    : new Statement.ExpressionStatement(function);
+        };
+        List<Statement> body = lazyBody();
+        if (body != null) {
+            statements.add(at(statement.apply(body), offset));
+        } else {
+            push(new Frame(statements, start, offset, statement));
+        }
     }
 
-    private Expression.FunctionCallExpression parseFunctionCall() throws ParseError {
-        String functionName = consume("IDENTIFIER").value;
-
-        // 解析参数列表
-        List<Expression> arguments = parseArguments();
-
-        return new Expression.FunctionCallExpression(functionName, arguments);
-    }
+    // 解析表达式语句
+    private Expression parseExpression() throws ParseError {
+        return parseExpression(null);
+    }
+
+    // 表达式使用显式栈 pending 解析：括号、一元/二元运算符、参数列表和表构造器都压在栈上，嵌套和运算符链再长也不占用 Java 调用栈。
+    // 运算符按优先级爬升的规则归约：栈顶运算符的右侧强度不小于新运算符的左侧强度时先归约栈顶。
+    // statementCall 不为 null 时从已经读完 "(" 的函数调用语句开始，调用结束后立即返回
+    private Expression parseExpression(Call statementCall) throws ParseError {
+        int base = pending;
+        Expression operand = null;
+        boolean chain = false; // 标识符开头的表达式后面可以继续接调用和成员访问
+        if (statementCall != null) {
+            push(CALL, statementCall);
+            operand = nextArgument(statementCall);
+            if (operand != null) {
+                return operand;
+            }
+        }
 
-    private Expression.TableExpression parseTable() throws ParseError {
-        consume("SYMBOL"); // 消费 "{"
+        while (true) {
+            if (operand == null) {
+                // 需要一个操作数
+                TokenKind kind = kind(0);
+                switch (kind) {
+                    case NOT:
+                    case MINUS:
+                    case HASH:
+                    case TILDE:
+                        // 一元运算符
+                        consumeCurrent();
+                        push(UNARY + kind.ordinal(), null);
+                        continue;
+                    case LPAREN:
+                        consumeCurrent();
+                        push(PAREN, null);
+                        continue;
+                    case LBRACE:
+                        consumeCurrent();
+                        Table table = new Table();
+                        push(TABLE, table);
+                        operand = nextTableEntry(table);
+                        chain = false;
+                        if (operand == null) {
+                            continue;
+                        }
+                        break;
+                    case IDENTIFIER:
+                        int start = offset();
+                        operand = at(new Expression.VariableExpression(name()), start);
+                        chain = true;
+                        break;
+                    default:
+                        operand = parsePrefix();
+                        chain = false;
+                        break;
+                }
+            }
 
-        List<Expression> arrayElements = new ArrayList<>();
-        Map<String, Expression> tableEntries = new HashMap<>();
+            TokenKind next = kind(0);
+            if (chain && (next == TokenKind.LPAREN || next == TokenKind.DOT || next == TokenKind.COLON)) {
+                consumeCurrent();
+                Call call;
+                if (next == TokenKind.LPAREN) {
+                    call = new Call(operand, null, false);
+                } else {
+                    String member = name();
+                    // 后面没有参数列表时是成员访问
+                    if (!match(TokenKind.LPAREN)) {
+                        operand = at(new Expression.MemberAccessExpression(operand, member), operand.offset);
+                        continue;
+                    }
+                    consumeCurrent(); // 消费 "("
+                    call = new Call(operand, member, next == TokenKind.COLON);
+                }
+                push(CALL, call);
+                operand = nextArgument(call);
+                continue;
+            }
 
-        while (!match("SYMBOL") || !peek().value.equals("}")) {
-            if (match("IDENTIFIER") && peek(1).type.equals("OPERATOR") && peek(1).value.equals("=")) {
-                // 解析键值对
-                String key = consume("IDENTIFIER").value;
-                consume("OPERATOR"); // 消费 "="
-                Expression value = parseExpression();
-                tableEntries.put(key, value);
-            } else {
-                // 解析数组元素
-                arrayElements.add(parseExpression());
+            int left = LEFT_PRIORITY[next.ordinal()];
+            if (left > 0) {
+                // 二元运算符：先归约栈上绑定更紧的运算符，再把左操作数和运算符一起入栈
+                operand = reduce(operand, base, left);
+                consumeCurrent();
+                push(next.ordinal(), operand);
+                operand = null;
+                continue;
             }
 
-            // 跳过逗号
-            if (match("SYMBOL") && peek().value.equals(",")) {
-                consume("SYMBOL");
+            operand = reduce(operand, base, 0);
+            if (pending == base) {
+                return operand;
+            }
+            // 栈顶是括号、参数列表或表构造器，operand 是其中的一项
+            Object value = pendingValues[pending - 1];
+            switch (pendingCodes[pending - 1]) {
+                case PAREN:
+                    consume(TokenKind.RPAREN);
+                    pop();
+                    chain = false;
+                    break;
+                case CALL:
+                    Call call = (Call) value;
+                    call.arguments.add(operand);
+                    if (match(TokenKind.COMMA)) {
+                        consumeCurrent(); // 跳过 ","
+                    }
+                    operand = nextArgument(call);
+                    chain = true;
+                    if (operand != null && call == statementCall) {
+                        return operand;
+                    }
+                    break;
+                default:
+                    Table table = (Table) value;
+                    if (table.key != null) {
+                        table.tableEntries.put(table.key, operand);
+                        table.key = null;
+                    } else {
+                        table.arrayElements.add(operand);
+                    }
+                    if (match(TokenKind.COMMA)) {
+                        consumeCurrent(); // 跳过 ","
+                    }
+                    operand = nextTableEntry(table);
+                    chain = false;
+                    break;
             }
         }
-        consume("SYMBOL"); // 消费 "}"
-
-        return new Expression.TableExpression(arrayElements, tableEntries);
-    }
-
-
-    // 解析基本表达式
-    private Expression parsePrimary() throws ParseError {
-        if (match("NUMBER")) {
-            Token token = consume("NUMBER");
-            return new Expression.LiteralExpression("NUMBER", token.value); // 数字字面量
-        } else if (match("BOOLEAN")) {
-            Token token = consume("BOOLEAN");
-            return new Expression.LiteralExpression("BOOLEAN", token.value); // true 或 false
-        } else if (match("NIL")) {
-            consume("NIL");
-            return new Expression.NilLiteralExpression(); // nil
-        } else if (match("SYMBOL") && peek().value.equals("{")) {
-            return parseTable(); // 表构造器
-        } else if (match("STRING")) {
-            Token token = consume("STRING");
-            return new Expression.LiteralExpression("STRING", token.value); // 字符串字面量
-        } else if (match("SYMBOL") && peek().value.equals("(")) {
-            // 处理括号表达式
-            consume("SYMBOL"); // 消费 "("
-            Expression inner = parseExpression(); // 递归解析括号内表达式
-            consume("SYMBOL"); // 消费 ")"
-            return inner;
-        } else if (match("IDENTIFIER")) {
-            // 解析标识符
-            if (lookaheadIs("SYMBOL", "(")) {
-                return parseFunctionCall();
-            } else {
-                String identifier = consume("IDENTIFIER").value;
-                Expression base = new Expression.VariableExpression(identifier);
-
-                // 处理点运算符和冒号运算符
-                base = parseMemberOrMethod(base);
+    }
 
-                return base;
+    // 归约栈顶右侧强度不小于 priority 的一元/二元运算符，遇到括号、参数列表或表构造器时停止
+    private Expression reduce(Expression operand, int base, int priority) {
+        while (pending > base) {
+            int code = pendingCodes[pending - 1];
+            if (code >= UNARY) {
+                if (UNARY_PRIORITY < priority) {
+                    break;
+                }
+                operand = at(new Expression.UnaryExpression(TokenKind.VALUES[code - UNARY].text, operand), pendingOffsets[pending - 1]);
+            } else if (code >= 0) {
+                if (RIGHT_PRIORITY[code] < priority) {
+                    break;
+                }
+                Expression left = (Expression) pendingValues[pending - 1];
+                operand = at(new Expression.BinaryExpression(left, TokenKind.VALUES[code].text, operand), left.offset);
+            } else {
+                break;
             }
+            pop();
         }
-
-        throw new IllegalArgumentException(
-                "Unexpected token: " + peek().type + " " + peek().value + " at position " + position + " -> " + context()
-        );
+        return operand;
     }
 
-    // 解析成员访问和方法调用
-    private Expression parseMemberOrMethod(Expression base) throws ParseError {
-        // 处理点运算符 "."
-        while (match("SYMBOL") && peek().value.equals(".")) {
-            consume("SYMBOL"); // 消费 "."
-            Token identifier = consume("IDENTIFIER"); // 消费字段名
-            // 判断是否为函数调用
-            if (match("SYMBOL") && peek().value.equals("(")) {
-                // 如果后面是 "(", 那么我们视为方法调用
-                List<Expression> arguments = parseArguments(); // 解析函数调用参数
-                base = new Expression.MethodCallExpression(base, identifier.value, arguments); // 生成方法调用
-            } else {
-                base = new Expression.MemberAccessExpression(base, identifier.value); // 否则是成员访问
+    // 参数列表中下一个参数的开始：遇到 ")" 时结束调用并返回调用表达式，否则返回 null 表示需要解析参数
+    private Expression nextArgument(Call call) throws ParseError {
+        if (!match(TokenKind.RPAREN)) {
+            return null;
+        }
+        consumeCurrent(); // 消费 ")"
+        pop();
+        if (call.member != null) {
+            if (call.method) {
+                call.arguments.add(0, call.target); // 自动添加self参数
             }
+            return at(new Expression.MethodCallExpression(call.target, call.member, call.arguments, call.method), call.target.offset);
+        }
+        if (!(call.target instanceof Expression.VariableExpression)) {
+            throw error("Unsupported call target: " + call.target);
+        }
+        return at(new Expression.FunctionCallExpression(((Expression.VariableExpression) call.target).getName(), call.arguments), call.target.offset);
+    }
+
+    // 表构造器中下一项的开始：遇到 "}" 时结束并返回整个表，否则记录键名（如果有）并返回 null 表示需要解析值
+    private Expression nextTableEntry(Table table) throws ParseError {
+        if (match(TokenKind.RBRACE)) {
+            consumeCurrent(); // 消费 "}"
+            int start = pendingOffsets[pending - 1];
+            pop();
+            return at(new Expression.TableExpression(table.arrayElements, table.tableEntries), start);
         }
+        if (match(TokenKind.IDENTIFIER) && lookaheadIs(TokenKind.ASSIGN)) {
+            // 键值对
+            table.key = name();
+            consume(TokenKind.ASSIGN); // 消费 "="
+        }
+        return null;
+    }
 
-        // 处理冒号运算符 ":"
-        while (match("SYMBOL") && peek().value.equals(":")) {
-            consume("SYMBOL"); // 消费 ":"
-            Token identifier = consume("IDENTIFIER"); // 消费方法名
-            List<Expression> arguments = parseArguments(); // 解析函数调用参数
-            // 对于冒号调用，自动将 base 作为第一个参数传递
-            arguments.add(0, base);
-            base = new Expression.MethodCallExpression(base, identifier.value, arguments, true); // 自动传递对象本身作为第一个参数
+    // 解析不含运算符和括号的前缀表达式
+    private Expression parsePrefix() throws ParseError {
+        TokenKind kind = kind(0);
+        switch (kind) {
+            case NUMBER:
+            case STRING:
+            case TRUE:
+            case FALSE:
+                return literal(consumeCurrent());
+            case NIL:
+                return at(new Expression.NilLiteralExpression(), tokens.offset(consumeCurrent()));
+            case FUNCTION:
+                // 解析匿名函数
+                return parseAnonymousFunction();
+            default:
+                throw error("Unexpected token type: " + describe(position));
         }
+    }
 
-        return base;
+    // 创建字面量，字符串和数字只记录源码范围，内容延迟解码
+    private Expression.LiteralExpression literal(int token) {
+        TokenKind kind = tokens.kind(token);
+        Expression.LiteralExpression literal;
+        switch (kind) {
+            case NUMBER:
+                literal = new Expression.NumberLiteralExpression(tokens.source(token), tokens.start(token), tokens.end(token));
+                break;
+            case STRING:
+                literal = new Expression.LiteralExpression(kind.type, tokens.source(token), tokens.start(token), tokens.end(token), tokens.symbols());
+                break;
+            default:
+                literal = new Expression.LiteralExpression(kind.type, kind.text);
+                break;
+        }
+        if (detachLiterals) {
+            literal.getValue();
+        }
+        literal.offset = tokens.offset(token);
+        literal.endOffset = tokens.endOffset(token);
+        return literal;
     }
 
+    // 解析函数调用语句，调用之后不再接成员访问或运算符
+    private Expression parseFunctionCall() throws ParseError {
+        int start = offset();
+        Expression function = at(new Expression.VariableExpression(name()), start);
+        consume(TokenKind.LPAREN); // 消费 "("
+        return parseExpression(new Call(function, null, false));
+    }
 
     // 解析局部声明语句
     private Statement parseLocalDeclaration() throws ParseError {
-        consume("KEYWORD"); // 消费 "local"
-
-        if (match("KEYWORD", "function")) {
-            // 局部函数声明
-            Token identifier = peek(1); // 变量名
-            // 局部函数定义
-            return new Statement.LocalDeclarationStatement(identifier.value, parseFunctionDefinition());
-        } else {
-            Token identifier = consume("IDENTIFIER"); // 变量名
+        consume(TokenKind.LOCAL); // 消费 "local"
 
-            Expression initializer = null;
+        String identifier = name(); // 变量名
 
-            if (match("OPERATOR") && peek().value.equals("=")) {
-                consume("OPERATOR"); // 消费 "="
-                initializer = parseExpression(); // 解析初始化表达式
-            }
+        Expression initializer = null;
 
-            return new Statement.LocalDeclarationStatement(identifier.value, initializer);
+        if (match(TokenKind.ASSIGN)) {
+            consume(TokenKind.ASSIGN); // 消费 "="
+            initializer = parseExpression(); // 解析初始化表达式
         }
+
+        return new Statement.LocalDeclarationStatement(identifier, initializer);
     }
 
     // 解析 return 语句
     private Statement.ReturnStatement parseReturnStatement() throws ParseError {
-        consume("KEYWORD"); // 消费 "return"
+        consume(TokenKind.RETURN); // 消费 "return"
 
         List<Expression> returnValues = new ArrayList<>();
 
         // 如果有表达式
-        if (!match("SYMBOL", ";")) {
+        if (!match(TokenKind.SEMICOLON)) {
             // 解析一个或多个返回值
-            do {
-                returnValues.add(parseExpression());
+            returnValues.add(parseExpression());
 
-                // 检查下一个符号是否为逗号，如果是则继续解析
-            } while (match("SYMBOL") && peek().value.equals(","));
+            // 检查下一个符号是否为逗号，如果是则继续解析
+            while (match(TokenKind.COMMA)) {
+                consume(TokenKind.COMMA);
+                returnValues.add(parseExpression());
+            }
         }
 
         return new Statement.ReturnStatement(returnValues);
     }
 
-    // 解析 if 语句
-    private Statement.IfStatement parseIfStatement() throws ParseError {
-        consume("KEYWORD"); // 消费 "if"
+    // 解析 if 语句的头部，elseif/else 和 end 由 IfFrame 处理
+    private void parseIfStatement(List<Statement> statements) throws ParseError {
+        int start = position;
+        int offset = offset();
+        consume(TokenKind.IF); // 消费 "if"
 
         Expression condition = parseExpression(); // 解析条件表达式
-        consume("KEYWORD"); // 消费 "then"
-
-        // 解析 if 部分的语句
-        List<Statement> ifStatements = parseBlock();
-
-        List<Statement> elseifStatements = new ArrayList<>();
-        List<Expression> elseifConditions = new ArrayList<>();
-
-        // 解析 elseif 部分（如果有的话）
-        while (match("KEYWORD") && "elseif".equals(peek().value)) {
-            consume("KEYWORD"); // 消费 "elseif"
-            Expression elseifCondition = parseExpression(); // 解析 elseif 条件
-            consume("KEYWORD"); // 消费 "then"
-            List<Statement> elseifBlock = parseBlock(); // 解析 elseif 语句块
-            elseifConditions.add(elseifCondition);
-            elseifStatements.addAll(elseifBlock);
-        }
-
-        // 解析 else 部分（如果有的话）
-        List<Statement> elseStatements = new ArrayList<>();
-        if (match("KEYWORD") && "else".equals(peek().value)) {
-            consume("KEYWORD"); // 消费 "else"
-            elseStatements.addAll(parseBlock()); // 解析 else 语句块
-        }
+        consume(TokenKind.THEN); // 消费 "then"
 
-        consume("KEYWORD"); // 消费 "end"
-
-        return new Statement.IfStatement(condition, ifStatements, elseifStatements, elseifConditions, elseStatements);
+        push(new IfFrame(statements, start, offset, condition));
     }
 
-    private Statement parseRepeatStatement() throws ParseError {
-        consume("KEYWORD", "repeat"); // 消费 "repeat"
-
-        // 解析循环体
-        List<Statement> body = parseBlock();
-
-        consume("KEYWORD", "until"); // 消费 "until"
+    private void parseRepeatStatement(List<Statement> statements) throws ParseError {
+        int start = position;
+        int offset = offset();
+        consume(TokenKind.REPEAT); // 消费 "repeat"
 
-        // 解析终止条件
-        Expression condition = parseExpression();
-
-        return new Statement.RepeatStatement(body, condition);
+        // 循环体由 parseBlock 解析，until 和终止条件由 RepeatFrame 处理
+        push(new RepeatFrame(statements, start, offset));
     }
 
-    private Statement parseWhileStatement() throws ParseError {
-        consume("KEYWORD", "while"); // 消费 "while"
+    private void parseWhileStatement(List<Statement> statements) throws ParseError {
+        int start = position;
+        int offset = offset();
+        consume(TokenKind.WHILE); // 消费 "while"
 
         // 解析条件表达式
         Expression condition = parseExpression();
 
-        consume("KEYWORD", "do"); // 消费 "do"
-
-        // 解析循环体
-        List<Statement> body = parseBlock();
+        consume(TokenKind.DO); // 消费 "do"
 
-        consume("KEYWORD", "end"); // 消费 "end"
-
-        return new Statement.WhileStatement(condition, body);
+        push(new Frame(statements, start, offset, body -> new Statement.WhileStatement(condition, body)));
     }
 
 
-    private Statement parseForStatement() throws ParseError {
-        consume("KEYWORD", "for"); // 消费 "for"
+    private void parseForStatement(List<Statement> statements) throws ParseError {
+        int start = position;
+        int offset = offset();
+        consume(TokenKind.FOR); // 消费 "for"
 
         // 判断是数值型还是泛型 for 循环
-        if (match("IDENTIFIER")) {
-            String firstVariable = consume("IDENTIFIER").value;
+        if (match(TokenKind.IDENTIFIER)) {
+            String firstVariable = name();
 
             // 数值型 for 循环：for var = start, end, step do
-            if (match("OPERATOR") && peek().value.equals("=")) {
-                consume("OPERATOR", "="); // 消费 "="
-                Expression start = parseExpression(); // 起始值
-                consume("SYMBOL", ","); // 消费 ","
+            if (match(TokenKind.ASSIGN)) {
+                consume(TokenKind.ASSIGN); // 消费 "="
+                Expression initial = parseExpression(); // 起始值
+                consume(TokenKind.COMMA); // 消费 ","
                 Expression end = parseExpression(); // 结束值
                 Expression step = null;
-                if (match("SYMBOL") && peek().value.equals(",")) {
-                    consume("SYMBOL", ","); // 消费 ","
+                if (match(TokenKind.COMMA)) {
+                    consume(TokenKind.COMMA); // 消费 ","
                     step = parseExpression(); // 步长
                 }
-                consume("KEYWORD", "do"); // 消费 "do"
-                List<Statement> body = parseBlock(); // 解析循环体
-                consume("KEYWORD", "end"); // 消费 "end"
-                return new Statement.ForStatement(firstVariable, start, end, step, body);
+                consume(TokenKind.DO); // 消费 "do"
+                Expression last = step;
+                push(new Frame(statements, start, offset, body -> new Statement.ForStatement(firstVariable, initial, end, last, body)));
+                return;
             }
 
             // 泛型 for 循环：for key, value in iterator do
-            else if (match("SYMBOL") && peek().value.equals(",")) {
-                consume("SYMBOL", ","); // 消费 ","
-                String secondVariable = consume("IDENTIFIER").value;
-                consume("KEYWORD", "in"); // 消费 "in"
+            else if (match(TokenKind.COMMA)) {
+                consume(TokenKind.COMMA); // 消费 ","
+                String secondVariable = name();
+                consume(TokenKind.IN); // 消费 "in"
                 Expression iterator = parseExpression(); // 解析迭代器
-                consume("KEYWORD", "do"); // 消费 "do"
-                List<Statement> body = parseBlock(); // 解析循环体
-                consume("KEYWORD", "end"); // 消费 "end"
-                return new Statement.ForInStatement(firstVariable, secondVariable, iterator, body);
+                consume(TokenKind.DO); // 消费 "do"
+                push(new Frame(statements, start, offset, body -> new Statement.ForInStatement(firstVariable, secondVariable, iterator, body)));
+                return;
             }
 
             // 支持单变量泛型 for：for key in iterator do
-            else if (match("KEYWORD") && peek().value.equals("in")) {
-                consume("KEYWORD", "in"); // 消费 "in"
+            else if (match(TokenKind.IN)) {
+                consume(TokenKind.IN); // 消费 "in"
                 Expression iterator = parseExpression(); // 解析迭代器
-                consume("KEYWORD", "do"); // 消费 "do"
-                List<Statement> body = parseBlock(); // 解析循环体
-                consume("KEYWORD", "end"); // 消费 "end"
-                return new Statement.ForInStatement(firstVariable, null, iterator, body);
+                consume(TokenKind.DO); // 消费 "do"
+                push(new Frame(statements, start, offset, body -> new Statement.ForInStatement(firstVariable, null, iterator, body)));
+                return;
             }
         }
 
-        throw new IllegalArgumentException("Unexpected token in for statement: " + peek().type);
+        throw unexpected("for statement");
     }
 
 
-    // 解析匿名函数
+    // 解析匿名函数。匿名函数出现在表达式中，函数体仍然递归解析，嵌套层数另外受 MAX_FUNCTION_NESTING 限制
     private Expression.AnonymousFunctionExpression parseAnonymousFunction() throws ParseError {
-        consume("KEYWORD"); // 消费 "function"
-        consume("SYMBOL"); // 消费 "("
-
-        // 解析匿名函数参数
-        List<String> parameters = new ArrayList<>();
-        while (!match("SYMBOL") || !peek().value.equals(")")) {
-            if (match("IDENTIFIER")) {
-                parameters.add(consume("IDENTIFIER").value);
+        int limit = Math.min(maxDepth, MAX_FUNCTION_NESTING);
+        if (functions >= limit) {
+            throw error("Too many nested functions (limit " + limit + ")");
+        }
+        functions++;
+        try {
+            int start = offset();
+            consume(TokenKind.FUNCTION); // 消费 "function"
+            consume(TokenKind.LPAREN); // 消费 "("
+
+            // 解析匿名函数参数
+            List<String> parameters = new ArrayList<>();
+            while (!match(TokenKind.RPAREN)) {
+                if (match(TokenKind.IDENTIFIER)) {
+                    parameters.add(name());
+                } else if (!match(TokenKind.COMMA)) {
+                    throw unexpected("parameter list");
+                }
+                if (match(TokenKind.COMMA)) {
+                    consume(TokenKind.COMMA); // 跳过 ","
+                }
             }
-            if (match("SYMBOL") && peek().value.equals(",")) {
-                consume("SYMBOL"); // 跳过 ","
+            consume(TokenKind.RPAREN); // 消费 ")"
+
+            // 解析函数体
+            List<Statement> body = lazyBody();
+            if (body == null) {
+                body = new ArrayList<>();
+                parseBlock(body);
+                consume(TokenKind.END); // 消费 "end"
             }
+
+            return at(new Expression.AnonymousFunctionExpression(parameters, body), start);
+        } finally {
+            functions--;
         }
-        consume("SYMBOL"); // 消费 ")"
+    }
 
-        // 解析函数体
-        List<Statement> body = parseBlock();
-        consume("KEYWORD"); // 消费 "end"
+    // 延迟解析模式下按 function/if/do/repeat 与 end/until 的嵌套找到函数体结尾的 end 并跳过整个函数体，
+    // 返回第一次访问时才解析的语句块。找不到匹配的 end 时返回 null，照常解析以便报告错误
+    private List<Statement> lazyBody() throws ParseError {
+        if (!lazyFunctions) {
+            return null;
+        }
+        int depth = 1;
+        for (int i = position; ; i++) {
+            switch (tokens.kind(i)) {
+                case FUNCTION:
+                case IF:
+                case DO:
+                case REPEAT:
+                    depth++;
+                    break;
+                case UNTIL:
+                    if (--depth == 0) {
+                        return null;
+                    }
+                    break;
+                case END:
+                    if (--depth == 0) {
+                        List<Statement> body = new LazyBody(tokens, position, i, maxDepth);
+                        position = i;
+                        consume(TokenKind.END); // 消费 "end"
+                        return body;
+                    }
+                    break;
+                case EOF:
+                    return null;
+                default:
+                    break;
+            }
+        }
+    }
 
-        return new Expression.AnonymousFunctionExpression(parameters, body);
+    // 语句块在 end/else/elseif/until 或输入结束处终止
+    private static boolean isBlockEnd(TokenKind kind) {
+        switch (kind) {
+            case END:
+            case ELSE:
+            case ELSEIF:
+            case UNTIL:
+            case EOF:
+                return true;
+            default:
+                return false;
+        }
     }
 
-    private List<Statement> parseBlock() throws ParseError {
-        List<Statement> statements = new ArrayList<>();
+    // 压入一个复合语句
+    private void push(Frame frame) throws ParseError {
+        checkDepth();
+        frames.add(frame);
+    }
 
-        while (!match("KEYWORD") ||
-                (!peek().value.equals("end") &&
-                        !peek().value.equals("else") &&
-                        !peek().value.equals("elseif") &&
-                        !peek().value.equals("until"))) {
-            statements.add(parse());
+    // 压入一个运算符、括号、参数列表或表构造器
+    private void push(int code, Object value) throws ParseError {
+        checkDepth();
+        if (pending == pendingCodes.length) {
+            pendingCodes = Arrays.copyOf(pendingCodes, pending * 2);
+            pendingValues = Arrays.copyOf(pendingValues, pending * 2);
+            pendingOffsets = Arrays.copyOf(pendingOffsets, pending * 2);
         }
+        pendingCodes[pending] = code;
+        pendingValues[pending] = value;
+        pendingOffsets[pending] = tokens.offset(position - 1);
+        pending++;
+    }
 
-        return statements;
+    private void pop() {
+        pendingValues[--pending] = null;
+    }
+
+    // 恢复模式下丢弃出错语句留在表达式栈上的内容
+    private void unwind(int depth) {
+        while (pending > depth) {
+            pop();
+        }
     }
 
-    private Token consumeCurrent() {
-        return tokens.get(position++);
+    private void checkDepth() throws ParseError {
+        if (frames.size() + pending + functions >= maxDepth) {
+            throw error("Too many nested levels (limit " + maxDepth + ")");
+        }
+    }
+
+    // 显式栈上以 end 结束的复合语句：头部已经解析完，body 收集语句块中的语句
+    private class Frame {
+        final List<Statement> parent; // 语句结束后加入的语句块
+        final int start; // 语句开始的 token 位置，用于错误恢复
+        final int offset; // 语句在源码中的起始偏移，流式读取时开头的 token 到语句结束时可能已经不在缓冲区中了
+        final Function<List<Statement>, Statement> statement;
+        List<Statement> body = new ArrayList<>();
+
+        Frame(List<Statement> parent, int start, int offset, Function<List<Statement>, Statement> statement) {
+            this.parent = parent;
+            this.start = start;
+            this.offset = offset;
+            this.statement = statement;
+        }
+
+        // 在 end/else/elseif/until 处调用，返回完成的语句；返回 null 表示语句还没有结束
+        Statement close() throws ParseError {
+            consume(TokenKind.END); // 消费 "end"
+            return statement.apply(body);
+        }
     }
 
-    // 消费token
-    private Token consume(String type) {
-        Token token = tokens.get(position++);
-        if (!token.type.equals(type)) {
-            StringBuilder context = new StringBuilder();
-            for (int i = Math.max(position - 3, 0); i < Math.min(tokens.size() - 1, position + 3); i++) {
-                context.append(tokens.get(i).value);
-                context.append(" ");
+    private final class IfFrame extends Frame {
+        private final Expression condition;
+        private final List<Statement> ifStatements;
+        private final List<Statement> elseifStatements = new ArrayList<>();
+        private final List<Expression> elseifConditions = new ArrayList<>();
+        private final List<Statement> elseStatements = new ArrayList<>();
+        private int[] elseifStarts = new int[0];
+
+        IfFrame(List<Statement> parent, int start, int offset, Expression condition) {
+            super(parent, start, offset, null);
+            this.condition = condition;
+            this.ifStatements = body;
+        }
+
+        @Override
+        Statement close() throws ParseError {
+            if (body != elseStatements) {
+                // 解析 elseif 部分，所有 elseif 的语句放在同一个列表中，分别记录起始下标
+                if (match(TokenKind.ELSEIF)) {
+                    consume(TokenKind.ELSEIF); // 消费 "elseif"
+                    Expression elseifCondition = parseExpression(); // 解析 elseif 条件
+                    consume(TokenKind.THEN); // 消费 "then"
+                    elseifConditions.add(elseifCondition);
+                    elseifStarts = Arrays.copyOf(elseifStarts, elseifStarts.length + 1);
+                    elseifStarts[elseifStarts.length - 1] = elseifStatements.size();
+                    body = elseifStatements;
+                    return null;
+                }
+                // 解析 else 部分
+                if (match(TokenKind.ELSE)) {
+                    consume(TokenKind.ELSE); // 消费 "else"
+                    body = elseStatements;
+                    return null;
+                }
             }
 
-            throw new IllegalArgumentException("Expected " + type + " but found " + token.type + " " + token.value + " at position " + position + " -> " + context);
+            consume(TokenKind.END); // 消费 "end"
+
+            return new Statement.IfStatement(condition, ifStatements, elseifStatements, elseifConditions, elseStatements,
+                    elseifStarts);
+        }
+    }
+
+    private final class RepeatFrame extends Frame {
+        RepeatFrame(List<Statement> parent, int start, int offset) {
+            super(parent, start, offset, null);
+        }
+
+        @Override
+        Statement close() throws ParseError {
+            consume(TokenKind.UNTIL); // 消费 "until"
+
+            // 解析终止条件
+            Expression condition = parseExpression();
+
+            return new Statement.RepeatStatement(body, condition);
         }
-        return token;
     }
 
-    // 消费token
-    private Token consume(String type, String value) throws ParseError {
-        Token token = tokens.get(position++);
-        if (!token.type.equals(type) || !token.value.equals(value)) {
-            throw new ParseError("Expected " + type + " but found " + token.type + " " + token.value + " at position " + position + " -> " + context());
+    // 正在收集参数的函数调用：member 为 null 时是普通调用，否则是 "." 或 ":" 方法调用
+    private static final class Call {
+        final Expression target;
+        final String member;
+        final boolean method;
+        final List<Expression> arguments = new ArrayList<>();
+
+        Call(Expression target, String member, boolean method) {
+            this.target = target;
+            this.member = member;
+            this.method = method;
+        }
+    }
+
+    // 正在解析的表构造器，key 为当前键值对的键名
+    private static final class Table {
+        final List<Expression> arrayElements = new ArrayList<>();
+        final Map<String, Expression> tableEntries = new HashMap<>();
+        String key;
+    }
+
+    // 记录节点在源码中的范围：从 start 到最后消费的 token 的结尾
+    private <T extends AstNode> T at(T node, int start) {
+        node.offset = start;
+        node.endOffset = tokens.endOffset(position - 1);
+        return node;
+    }
+
+    private int consumeCurrent() throws ParseError {
+        if (tokens.kind(position) == TokenKind.EOF) {
+            throw error("Unexpected end of input");
+        }
+        return position++;
+    }
+
+    // 消费token，返回它的下标
+    private int consume(TokenKind kind) throws ParseError {
+        int token = consumeCurrent();
+        if (tokens.kind(token) != kind) {
+            position = token;
+            throw error("Expected " + describe(kind) + " but found " + describe(token));
         }
         return token;
     }
 
+    // 消费一个标识符并返回它的名字
+    private String name() throws ParseError {
+        return tokens.value(consume(TokenKind.IDENTIFIER));
+    }
+
+    private ParseError unexpected(String where) {
+        return error("Unexpected token in " + where + ": " + describe(position));
+    }
+
+    // 恢复模式下的错误不填充调用栈，也不拼接上下文，位置由偏移给出
+    private ParseError error(String message) {
+        int offset = tokens.offset(position);
+        if (diagnostics != null) {
+            return new ParseError(message, offset, true);
+        }
+        return new ParseError(message + " at position " + position + " -> " + context(), offset, false);
+    }
+
+    private static String describe(TokenKind kind) {
+        return kind.text == null ? kind.type : kind.type + " " + kind.text;
+    }
+
+    private String describe(int index) {
+        TokenKind kind = tokens.kind(index);
+        return kind == TokenKind.EOF ? "end of input" : kind.type + " " + tokens.value(index);
+    }
 
     private String context() {
         StringBuilder context = new StringBuilder();
-        for (int i = Math.max(position - 3, 0); i < Math.min(tokens.size() - 1, position + 3); i++) {
+        for (int i = Math.max(position - 3, 0); i < position + 3 && tokens.kind(i) != TokenKind.EOF; i++) {
             if (i == position)
                 context.append("=> ");
-            context.append(tokens.get(i).value);
+            context.append(tokens.value(i));
             context.append(" ");
         }
         return context.toString();
     }
 
-    // 检查当前 token 是否匹配
-    private boolean match(String type) {
-        return position < tokens.size() && tokens.get(position).type.equals(type);
-    }
-
-    // 检查当前 token 和值是否匹配
-    private boolean match(String type, String value) {
-        return match(type) && tokens.get(position).value.equals(value);
-    }
-
-    // 查看下一个 token
-    private Token peek() {
-        return peek(0);
+    // 当前位置偏移 offset 处的 token 种类，超出范围时为 EOF
+    private TokenKind kind(int offset) {
+        return tokens.kind(position + offset);
     }
 
-    // 查看当前位置的 offset 个 Token，不移动 position
-    private Token peek(int offset) {
-        int index = position + offset;
-        if (index >= tokens.size()) {
-            return null; // 如果超出范围，返回 null
-        }
-        return tokens.get(index);
+    // 检查当前 token 是否匹配
+    private boolean match(TokenKind kind) {
+        return kind(0) == kind;
     }
 
-    // 检查后续 token 是否满足指定类型和值
-    private boolean lookaheadIs(String type, String value) {
-        return position + 1 < tokens.size() && tokens.get(position + 1).type.equals(type) && tokens.get(position + 1).value.equals(value);
+    // 检查后续 token 是否满足指定种类
+    private boolean lookaheadIs(TokenKind kind) {
+        return kind(1) == kind;
     }
 
 }
@@ -0,0 +1,79 @@
+package top.skidder.parser;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+
+// 流式 Lexer 使用的可回填字符窗口：按绝对偏移访问，只保留当前 token 起点之后的字符
+final class ReaderWindow implements CharSequence {
+    private static final int DEFAULT_CAPACITY = 8192;
+
+    private final Reader reader;
+    private char[] buffer;
+    private int base; // buffer[0] 对应的绝对偏移
+    private int end;  // 已读入字符的绝对上界
+    private boolean eof;
+
+    ReaderWindow(Reader reader) {
+        this(reader, DEFAULT_CAPACITY);
+    }
+
+    ReaderWindow(Reader reader, int capacity) {
+        this.reader = reader;
+        this.buffer = new char[capacity];
+    }
+
+    // 读取直到 index 可用或输入结束，keepFrom 之前的字符会被丢弃；返回新的上界
+    int fill(int index, int keepFrom) {
+        while (index >= end && !eof) {
+            int keep = Math.min(keepFrom, end) - base;
+            if (keep > 0) {
+                System.arraycopy(buffer, keep, buffer, 0, end - base - keep);
+                base += keep;
+            }
+            if (end - base == buffer.length) {
+                // 单个 token 比窗口还大时才扩容
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+            try {
+                int read = reader.read(buffer, end - base, buffer.length - (end - base));
+                if (read < 0) {
+                    eof = true;
+                } else {
+                    end += read;
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return end;
+    }
+
+    // 目前已读入的字符数，base 之前的字符已经被丢弃，不能再访问
+    @Override
+    public int length() {
+        return end;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < base || index >= end) {
+            throw new IndexOutOfBoundsException("index " + index + " outside window [" + base + ", " + end + ")");
+        }
+        return buffer[index - base];
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (start < base || end > this.end || start > end) {
+            throw new IndexOutOfBoundsException("range [" + start + ", " + end + ") outside window [" + base + ", " + this.end + ")");
+        }
+        return new String(buffer, start - base, end - start);
+    }
+
+    @Override
+    public String toString() {
+        return new String(buffer, 0, end - base);
+    }
+}
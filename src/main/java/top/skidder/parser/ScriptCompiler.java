@@ -0,0 +1,924 @@
+package top.skidder.parser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+// 把语法树编译成一棵预先解析好的 Java 闭包树，LuaScript 执行的就是这棵树。
+// 作用域在编译时解析完：局部变量和参数是帧中的数组槽位，外层函数的局部变量是 upvalue 下标，其余的名字是全局表的键；
+// 运算符在编译时选好对应的闭包，执行时不再查找名字、比较运算符字符串或者分派节点类型。
+// 被内层函数捕获的局部变量放在 Cell 中，每次执行声明都创建新的 Cell，循环中创建的闭包各自持有自己的变量
+final class ScriptCompiler implements AstVisitor<Object, ScriptCompiler.FunctionState> {
+    static final int NORMAL = 0;
+    static final int RETURN = 1; // 执行了 return，返回值在 Frame.returned 中
+
+    // 表达式：返回一个值
+    interface Eval {
+        Object eval(Frame frame);
+    }
+
+    // 函数调用：可以返回多个值，在参数列表、return 和表构造器的末尾全部展开，其他地方只取第一个
+    abstract static class MultiEval implements Eval {
+        abstract Object[] evalAll(Frame frame);
+
+        @Override
+        public final Object eval(Frame frame) {
+            Object[] values = evalAll(frame);
+            return values.length == 0 ? null : values[0];
+        }
+    }
+
+    // 语句：返回 NORMAL 或 RETURN
+    interface Exec {
+        int exec(Frame frame);
+    }
+
+    // 一次函数调用的局部变量
+    static final class Frame {
+        final Object[] slots;
+        final Cell[] upvalues;
+        final LuaTable globals;
+        Object[] returned = LuaFunction.NONE;
+
+        Frame(int slotCount, Cell[] upvalues, LuaTable globals) {
+            this.slots = new Object[slotCount];
+            this.upvalues = upvalues;
+            this.globals = globals;
+        }
+    }
+
+    static final class Cell {
+        Object value;
+
+        Cell(Object value) {
+            this.value = value;
+        }
+    }
+
+    // 局部变量的槽位。captured 在编译完外层函数之后就不再变化，执行时据此决定槽位中是值还是 Cell
+    static final class Local {
+        final String name;
+        final int slot;
+        boolean captured;
+
+        Local(String name, int slot) {
+            this.name = name;
+            this.slot = slot;
+        }
+    }
+
+    // 编译好的函数
+    static final class Prototype {
+        final String name;
+        final Local[] parameters; // 槽位依次为 0..n-1
+        final int slotCount;
+        final Exec body;
+        // 每个 upvalue 的来源：非负数为外层函数的槽位，负数 -(i + 1) 为外层函数的第 i 个 upvalue
+        final int[] upvalueSources;
+
+        Prototype(String name, Local[] parameters, int slotCount, Exec body, int[] upvalueSources) {
+            this.name = name;
+            this.parameters = parameters;
+            this.slotCount = slotCount;
+            this.body = body;
+            this.upvalueSources = upvalueSources;
+        }
+    }
+
+    static final class Closure implements LuaFunction {
+        final Prototype prototype;
+        final Cell[] upvalues;
+        final LuaTable globals;
+
+        Closure(Prototype prototype, Cell[] upvalues, LuaTable globals) {
+            this.prototype = prototype;
+            this.upvalues = upvalues;
+            this.globals = globals;
+        }
+
+        @Override
+        public Object[] call(Object... arguments) {
+            Prototype prototype = this.prototype;
+            Frame frame = new Frame(prototype.slotCount, upvalues, globals);
+            Local[] parameters = prototype.parameters;
+            for (int i = 0; i < parameters.length; i++) {
+                Object value = i < arguments.length ? arguments[i] : null;
+                frame.slots[i] = parameters[i].captured ? new Cell(value) : value;
+            }
+            return prototype.body.exec(frame) == RETURN ? frame.returned : LuaFunction.NONE;
+        }
+
+        @Override
+        public String toString() {
+            return LuaValues.toDisplayString(this);
+        }
+    }
+
+    // 编译期每个函数的作用域
+    static final class FunctionState {
+        final FunctionState parent;
+        final List<Local> locals = new ArrayList<>(); // 当前可见的局部变量，后声明的在后面
+        final List<String> upvalueNames = new ArrayList<>();
+        final List<Integer> upvalueSources = new ArrayList<>();
+        int slotCount;
+
+        FunctionState(FunctionState parent) {
+            this.parent = parent;
+        }
+    }
+
+    // 主代码块编译为没有参数的函数，其中的自由名字都是全局变量
+    static Prototype compile(List<Statement> statements) {
+        return new ScriptCompiler().function(null, "main chunk", new ArrayList<>(), statements);
+    }
+
+    private Prototype function(FunctionState parent, String name, List<String> parameters, List<Statement> body) {
+        FunctionState function = new FunctionState(parent);
+        Local[] locals = new Local[parameters.size()];
+        for (int i = 0; i < locals.length; i++) {
+            locals[i] = declare(function, parameters.get(i));
+        }
+        Exec exec = sequence(statements(body, function));
+        int[] sources = new int[function.upvalueSources.size()];
+        for (int i = 0; i < sources.length; i++) {
+            sources[i] = function.upvalueSources.get(i);
+        }
+        return new Prototype(name, locals, function.slotCount, exec, sources);
+    }
+
+    // 执行时创建闭包，从当前帧取出它用到的外层变量
+    private static Eval closure(Prototype prototype) {
+        int[] sources = prototype.upvalueSources;
+        return frame -> {
+            Cell[] cells = new Cell[sources.length];
+            for (int i = 0; i < sources.length; i++) {
+                int source = sources[i];
+                cells[i] = source >= 0 ? (Cell) frame.slots[source] : frame.upvalues[-source - 1];
+            }
+            return new Closure(prototype, cells, frame.globals);
+        };
+    }
+
+    // ---- 作用域 ----
+
+    private static Local declare(FunctionState function, String name) {
+        Local local = new Local(name, function.slotCount++);
+        function.locals.add(local);
+        return local;
+    }
+
+    private static void close(FunctionState function, int mark) {
+        function.locals.subList(mark, function.locals.size()).clear();
+    }
+
+    private static Local local(FunctionState function, String name) {
+        for (int i = function.locals.size() - 1; i >= 0; i--) {
+            Local local = function.locals.get(i);
+            if (local.name.equals(name)) {
+                return local;
+            }
+        }
+        return null;
+    }
+
+    // 外层函数中的变量：返回 upvalue 下标，不是任何外层函数的局部变量时为 -1。
+    // 编译一个函数时外层的作用域不会变化，所以同一个名字在一个函数中总是对应同一个 upvalue
+    private static int upvalue(FunctionState function, String name) {
+        if (function.parent == null) {
+            return -1;
+        }
+        int index = function.upvalueNames.indexOf(name);
+        if (index >= 0) {
+            return index;
+        }
+        Local local = local(function.parent, name);
+        int source;
+        if (local != null) {
+            local.captured = true;
+            source = local.slot;
+        } else {
+            int outer = upvalue(function.parent, name);
+            if (outer < 0) {
+                return -1;
+            }
+            source = -outer - 1;
+        }
+        function.upvalueNames.add(name);
+        function.upvalueSources.add(source);
+        return function.upvalueNames.size() - 1;
+    }
+
+    private static Eval load(FunctionState function, String name) {
+        Local local = local(function, name);
+        if (local != null) {
+            int slot = local.slot;
+            return frame -> {
+                Object value = frame.slots[slot];
+                return local.captured ? ((Cell) value).value : value;
+            };
+        }
+        int upvalue = upvalue(function, name);
+        if (upvalue >= 0) {
+            return frame -> frame.upvalues[upvalue].value;
+        }
+        return frame -> frame.globals.get(name);
+    }
+
+    private interface Store {
+        void store(Frame frame, Object value);
+    }
+
+    private static Store store(FunctionState function, String name) {
+        Local local = local(function, name);
+        if (local != null) {
+            int slot = local.slot;
+            return (frame, value) -> {
+                if (local.captured) {
+                    ((Cell) frame.slots[slot]).value = value;
+                } else {
+                    frame.slots[slot] = value;
+                }
+            };
+        }
+        int upvalue = upvalue(function, name);
+        if (upvalue >= 0) {
+            return (frame, value) -> frame.upvalues[upvalue].value = value;
+        }
+        return (frame, value) -> frame.globals.put(name, value);
+    }
+
+    // 执行声明：捕获的变量每次都创建新的 Cell
+    private static void define(Frame frame, Local local, Object value) {
+        frame.slots[local.slot] = local.captured ? new Cell(value) : value;
+    }
+
+    // 错误信息中对名字的说明，如 " (global 'print')"
+    private static String describe(FunctionState function, String name) {
+        if (local(function, name) != null) {
+            return " (local '" + name + "')";
+        }
+        return function.parent != null && upvalue(function, name) >= 0 ? " (upvalue '" + name + "')" : " (global '" + name + "')";
+    }
+
+    private static String describe(FunctionState function, Expression expression) {
+        if (expression instanceof Expression.VariableExpression) {
+            return describe(function, ((Expression.VariableExpression) expression).getName());
+        }
+        if (expression instanceof Expression.MemberAccessExpression) {
+            return " (field '" + ((Expression.MemberAccessExpression) expression).getMember() + "')";
+        }
+        return "";
+    }
+
+    // ---- 语句 ----
+
+    private Exec statement(Statement statement, FunctionState function) {
+        return (Exec) statement.accept(this, function);
+    }
+
+    private Exec[] statements(List<Statement> statements, FunctionState function) {
+        Exec[] execs = new Exec[statements.size()];
+        for (int i = 0; i < execs.length; i++) {
+            execs[i] = statement(statements.get(i), function);
+        }
+        return execs;
+    }
+
+    // 语句块有自己的作用域
+    private Exec block(List<Statement> statements, FunctionState function) {
+        int mark = function.locals.size();
+        Exec exec = sequence(statements(statements, function));
+        close(function, mark);
+        return exec;
+    }
+
+    private static Exec sequence(Exec[] execs) {
+        switch (execs.length) {
+            case 0:
+                return frame -> NORMAL;
+            case 1:
+                return execs[0];
+            default:
+                return frame -> {
+                    for (Exec exec : execs) {
+                        if (exec.exec(frame) != NORMAL) {
+                            return RETURN;
+                        }
+                    }
+                    return NORMAL;
+                };
+        }
+    }
+
+    @Override
+    public Object visitNode(AstNode node, FunctionState function) {
+        throw new LuaError("cannot compile " + node.getClass().getSimpleName(), node.offset);
+    }
+
+    @Override
+    public Object visitExpressionStatement(Statement.ExpressionStatement node, FunctionState function) {
+        Expression expression = node.getExpression();
+        if (expression instanceof Expression.FunctionDefinitionExpression) {
+            // function f() ... end：f 是可见的局部变量时赋给它，否则是全局变量
+            Expression.FunctionDefinitionExpression definition = (Expression.FunctionDefinitionExpression) expression;
+            Eval closure = closure(function(function, definition.name, definition.parameters, definition.body));
+            Store store = store(function, definition.name);
+            return (Exec) frame -> {
+                store.store(frame, closure.eval(frame));
+                return NORMAL;
+            };
+        }
+        Eval eval = expression(expression, function);
+        return (Exec) frame -> {
+            eval.eval(frame);
+            return NORMAL;
+        };
+    }
+
+    @Override
+    public Object visitAssignment(Statement.AssignmentStatement node, FunctionState function) {
+        Eval value = expression(node.value, function);
+        Store store = store(function, node.variable);
+        return (Exec) frame -> {
+            store.store(frame, value.eval(frame));
+            return NORMAL;
+        };
+    }
+
+    @Override
+    public Object visitLocalDeclaration(Statement.LocalDeclarationStatement node, FunctionState function) {
+        if (node.initializer instanceof Expression.FunctionDefinitionExpression) {
+            // local function f：f 在函数体中已经可见，可以递归调用
+            Expression.FunctionDefinitionExpression definition = (Expression.FunctionDefinitionExpression) node.initializer;
+            Local local = declare(function, node.variableName);
+            Eval closure = closure(function(function, definition.name, definition.parameters, definition.body));
+            return (Exec) frame -> {
+                define(frame, local, null);
+                Object value = closure.eval(frame);
+                if (local.captured) {
+                    ((Cell) frame.slots[local.slot]).value = value;
+                } else {
+                    frame.slots[local.slot] = value;
+                }
+                return NORMAL;
+            };
+        }
+        // 初始值中的同名变量还是外层的
+        Eval initializer = node.initializer == null ? null : expression(node.initializer, function);
+        Local local = declare(function, node.variableName);
+        return (Exec) frame -> {
+            define(frame, local, initializer == null ? null : initializer.eval(frame));
+            return NORMAL;
+        };
+    }
+
+    @Override
+    public Object visitReturn(Statement.ReturnStatement node, FunctionState function) {
+        Arguments values = arguments(node.getReturnValues(), function);
+        return (Exec) frame -> {
+            frame.returned = values.eval(frame, 0);
+            return RETURN;
+        };
+    }
+
+    @Override
+    public Object visitIf(Statement.IfStatement node, FunctionState function) {
+        int count = node.getElseifConditions().size() + 1;
+        Eval[] conditions = new Eval[count];
+        Exec[] bodies = new Exec[count];
+        conditions[0] = expression(node.getCondition(), function);
+        bodies[0] = block(node.getIfStatements(), function);
+        for (int i = 1; i < count; i++) {
+            conditions[i] = expression(node.getElseifConditions().get(i - 1), function);
+            bodies[i] = block(node.getElseifBody(i - 1), function);
+        }
+        Exec otherwise = block(node.getElseStatements(), function);
+        if (count == 1) {
+            Eval condition = conditions[0];
+            Exec body = bodies[0];
+            return (Exec) frame -> LuaValues.truthy(condition.eval(frame)) ? body.exec(frame) : otherwise.exec(frame);
+        }
+        return (Exec) frame -> {
+            for (int i = 0; i < conditions.length; i++) {
+                if (LuaValues.truthy(conditions[i].eval(frame))) {
+                    return bodies[i].exec(frame);
+                }
+            }
+            return otherwise.exec(frame);
+        };
+    }
+
+    @Override
+    public Object visitWhile(Statement.WhileStatement node, FunctionState function) {
+        Eval condition = expression(node.getCondition(), function);
+        Exec body = block(node.getBody(), function);
+        return (Exec) frame -> {
+            while (LuaValues.truthy(condition.eval(frame))) {
+                if (body.exec(frame) != NORMAL) {
+                    return RETURN;
+                }
+            }
+            return NORMAL;
+        };
+    }
+
+    @Override
+    public Object visitRepeat(Statement.RepeatStatement node, FunctionState function) {
+        // until 的条件可以使用循环体中声明的局部变量
+        int mark = function.locals.size();
+        Exec body = sequence(statements(node.getBody(), function));
+        Eval condition = expression(node.getCondition(), function);
+        close(function, mark);
+        return (Exec) frame -> {
+            do {
+                if (body.exec(frame) != NORMAL) {
+                    return RETURN;
+                }
+            } while (!LuaValues.truthy(condition.eval(frame)));
+            return NORMAL;
+        };
+    }
+
+    @Override
+    public Object visitFor(Statement.ForStatement node, FunctionState function) {
+        Eval start = expression(node.getStart(), function);
+        Eval end = expression(node.getEnd(), function);
+        Eval step = node.getStep() == null ? null : expression(node.getStep(), function);
+        int mark = function.locals.size();
+        Local variable = declare(function, node.getVarName());
+        Exec body = block(node.getBody(), function);
+        close(function, mark);
+        int offset = node.offset;
+        return (Exec) frame -> {
+            Object initial = forValue(start.eval(frame), "initial", offset);
+            Object limit = forValue(end.eval(frame), "limit", offset);
+            Object increment = step == null ? (Object) 1L : forValue(step.eval(frame), "step", offset);
+            if (initial instanceof Long && increment instanceof Long) {
+                return integerLoop(frame, variable, body, (Long) initial, limit, (Long) increment, offset);
+            }
+            double i = ((Number) initial).doubleValue();
+            double last = ((Number) limit).doubleValue();
+            double by = ((Number) increment).doubleValue();
+            if (by == 0) {
+                throw new LuaError("'for' step is zero", offset);
+            }
+            for (; by > 0 ? i <= last : i >= last; i += by) {
+                define(frame, variable, i);
+                if (body.exec(frame) != NORMAL) {
+                    return RETURN;
+                }
+            }
+            return NORMAL;
+        };
+    }
+
+    // 整数循环：浮点数的终值向循环方向取整，超出整数范围时截断；按无符号数比较剩余距离，循环变量不会溢出
+    private static int integerLoop(Frame frame, Local variable, Exec body, long i, Object limit, long step, int offset) {
+        if (step == 0) {
+            throw new LuaError("'for' step is zero", offset);
+        }
+        long last;
+        if (limit instanceof Long) {
+            last = (Long) limit;
+        } else {
+            double d = (Double) limit;
+            if (Double.isNaN(d)) {
+                return NORMAL;
+            }
+            d = step > 0 ? Math.floor(d) : Math.ceil(d);
+            last = d >= 0x1p63 ? Long.MAX_VALUE : d < -0x1p63 ? Long.MIN_VALUE : (long) d;
+        }
+        if (step > 0 ? i > last : i < last) {
+            return NORMAL;
+        }
+        while (true) {
+            define(frame, variable, i);
+            if (body.exec(frame) != NORMAL) {
+                return RETURN;
+            }
+            if (step > 0 ? Long.compareUnsigned(last - i, step) < 0 : Long.compareUnsigned(i - last, -step) < 0) {
+                return NORMAL;
+            }
+            i += step;
+        }
+    }
+
+    private static Object forValue(Object value, String what, int offset) {
+        Object number = number(value);
+        if (number == null) {
+            throw new LuaError("'for' " + what + " value must be a number", offset);
+        }
+        return number;
+    }
+
+    @Override
+    public Object visitForIn(Statement.ForInStatement node, FunctionState function) {
+        Eval iterator = expression(node.getIterator(), function);
+        int mark = function.locals.size();
+        Local key = declare(function, node.getKey());
+        Local value = node.getValue() == null ? null : declare(function, node.getValue());
+        Exec body = block(node.getBody(), function);
+        close(function, mark);
+        int offset = node.offset;
+        return (Exec) frame -> {
+            // 迭代表达式给出迭代函数、状态和控制变量的初始值
+            Object[] initial = iterator instanceof MultiEval ? ((MultiEval) iterator).evalAll(frame) : new Object[]{iterator.eval(frame)};
+            Object next = initial.length > 0 ? initial[0] : null;
+            Object state = initial.length > 1 ? initial[1] : null;
+            Object control = initial.length > 2 ? initial[2] : null;
+            while (true) {
+                Object[] results = call(next, new Object[]{state, control}, " (for iterator)", offset);
+                control = results.length > 0 ? results[0] : null;
+                if (control == null) {
+                    return NORMAL;
+                }
+                define(frame, key, control);
+                if (value != null) {
+                    define(frame, value, results.length > 1 ? results[1] : null);
+                }
+                if (body.exec(frame) != NORMAL) {
+                    return RETURN;
+                }
+            }
+        };
+    }
+
+    // ---- 表达式 ----
+
+    private Eval expression(Expression expression, FunctionState function) {
+        return (Eval) expression.accept(this, function);
+    }
+
+    private static Eval constant(Object value) {
+        return frame -> value;
+    }
+
+    @Override
+    public Object visitLiteral(Expression.LiteralExpression node, FunctionState function) {
+        if (TokenKind.TRUE.type.equals(node.type)) {
+            return constant(TokenKind.TRUE.text.equals(node.getValue()));
+        }
+        if ("NUMBER".equals(node.type)) {
+            Object number = LuaValues.toNumber(node.getValue());
+            if (number == null) {
+                throw new LuaError("malformed number '" + node.getValue() + "'", node.offset);
+            }
+            return constant(number);
+        }
+        return constant(node.getValue());
+    }
+
+    @Override
+    public Object visitNumberLiteral(Expression.NumberLiteralExpression node, FunctionState function) {
+        return constant(node.isInteger() ? (Object) node.longValue() : (Object) node.doubleValue());
+    }
+
+    @Override
+    public Object visitBooleanLiteral(Expression.BooleanLiteralExpression node, FunctionState function) {
+        return constant(node.getValue());
+    }
+
+    @Override
+    public Object visitNilLiteral(Expression.NilLiteralExpression node, FunctionState function) {
+        return constant(null);
+    }
+
+    @Override
+    public Object visitVariable(Expression.VariableExpression node, FunctionState function) {
+        return load(function, node.getName());
+    }
+
+    @Override
+    public Object visitFunctionDefinition(Expression.FunctionDefinitionExpression node, FunctionState function) {
+        // 语句中的函数定义在 visitExpressionStatement 和 visitLocalDeclaration 中处理，这里只是创建函数值
+        return closure(function(function, node.name, node.parameters, node.body));
+    }
+
+    @Override
+    public Object visitAnonymousFunction(Expression.AnonymousFunctionExpression node, FunctionState function) {
+        return closure(function(function, "anonymous function", node.parameters, node.body));
+    }
+
+    @Override
+    public Object visitMemberAccess(Expression.MemberAccessExpression node, FunctionState function) {
+        Eval object = expression(node.getObject(), function);
+        String member = node.getMember();
+        String description = describe(function, node.getObject());
+        int offset = node.offset;
+        return (Eval) frame -> index(object.eval(frame), member, description, offset);
+    }
+
+    private static Object index(Object object, String key, String description, int offset) {
+        if (object instanceof LuaTable) {
+            return ((LuaTable) object).get(key);
+        }
+        throw new LuaError("attempt to index a " + LuaValues.type(object) + " value" + description, offset);
+    }
+
+    @Override
+    public Object visitTable(Expression.TableExpression node, FunctionState function) {
+        Arguments elements = arguments(node.getArrayElements(), function);
+        Map<String, Expression> entries = node.getTableEntries();
+        String[] keys = new String[entries.size()];
+        Eval[] values = new Eval[entries.size()];
+        int i = 0;
+        for (Map.Entry<String, Expression> entry : entries.entrySet()) {
+            keys[i] = entry.getKey();
+            values[i++] = expression(entry.getValue(), function);
+        }
+        return (Eval) frame -> {
+            Object[] array = elements.eval(frame, 0);
+            LuaTable table = new LuaTable(array.length, keys.length);
+            for (int j = 0; j < array.length; j++) {
+                table.put(j + 1, array[j]);
+            }
+            for (int j = 0; j < keys.length; j++) {
+                table.put(keys[j], values[j].eval(frame));
+            }
+            return table;
+        };
+    }
+
+    @Override
+    public Object visitFunctionCall(Expression.FunctionCallExpression node, FunctionState function) {
+        Eval callee = load(function, node.name);
+        String description = describe(function, node.name);
+        Arguments arguments = arguments(node.arguments, function);
+        int offset = node.offset;
+        return new MultiEval() {
+            @Override
+            Object[] evalAll(Frame frame) {
+                return call(callee.eval(frame), arguments.eval(frame, 0), description, offset);
+            }
+        };
+    }
+
+    @Override
+    public Object visitMethodCall(Expression.MethodCallExpression node, FunctionState function) {
+        Eval object = expression(node.getObject(), function);
+        String method = node.getMethod();
+        String objectDescription = describe(function, node.getObject());
+        List<Expression> arguments = node.getArguments();
+        // ":" 调用时 Parser 已经把对象放在参数的第一个，这里只求值一次
+        Arguments rest = arguments(arguments.subList(node.selfArguments(), arguments.size()), function);
+        boolean self = node.isColonCall;
+        String description = (self ? " (method '" : " (field '") + method + "')";
+        int offset = node.offset;
+        return new MultiEval() {
+            @Override
+            Object[] evalAll(Frame frame) {
+                Object target = object.eval(frame);
+                Object callee = index(target, method, objectDescription, offset);
+                Object[] values = rest.eval(frame, self ? 1 : 0);
+                if (self) {
+                    values[0] = target;
+                }
+                return call(callee, values, description, offset);
+            }
+        };
+    }
+
+    static Object[] call(Object function, Object[] arguments, String description, int offset) {
+        if (function instanceof LuaFunction) {
+            Object[] results = ((LuaFunction) function).call(arguments);
+            return results == null ? LuaFunction.NONE : results;
+        }
+        throw new LuaError("attempt to call a " + LuaValues.type(function) + " value" + description, offset);
+    }
+
+    // 参数列表、返回值列表和表构造器的数组部分：最后一项是函数调用时展开它的所有返回值
+    private static final class Arguments {
+        final Eval[] values;
+        final MultiEval last;
+
+        Arguments(Eval[] values) {
+            MultiEval last = values.length > 0 && values[values.length - 1] instanceof MultiEval
+                    ? (MultiEval) values[values.length - 1] : null;
+            this.values = last == null ? values : Arrays.copyOf(values, values.length - 1);
+            this.last = last;
+        }
+
+        // 结果数组前面留出 reserved 个空位（给 self 用），每次返回新的数组
+        Object[] eval(Frame frame, int reserved) {
+            Eval[] values = this.values;
+            if (last == null) {
+                if (values.length + reserved == 0) {
+                    return LuaFunction.NONE;
+                }
+                Object[] result = new Object[reserved + values.length];
+                for (int i = 0; i < values.length; i++) {
+                    result[reserved + i] = values[i].eval(frame);
+                }
+                return result;
+            }
+            Object[] head = new Object[values.length];
+            for (int i = 0; i < values.length; i++) {
+                head[i] = values[i].eval(frame);
+            }
+            Object[] tail = last.evalAll(frame);
+            if (reserved == 0 && head.length == 0) {
+                return tail;
+            }
+            Object[] result = new Object[reserved + head.length + tail.length];
+            System.arraycopy(head, 0, result, reserved, head.length);
+            System.arraycopy(tail, 0, result, reserved + head.length, tail.length);
+            return result;
+        }
+    }
+
+    private Arguments arguments(List<Expression> expressions, FunctionState function) {
+        Eval[] values = new Eval[expressions.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = expression(expressions.get(i), function);
+        }
+        return new Arguments(values);
+    }
+
+    // ---- 运算符 ----
+
+    @Override
+    public Object visitBinary(Expression.BinaryExpression node, FunctionState function) {
+        Eval left = expression(node.left, function);
+        Eval right = expression(node.right, function);
+        String operator = node.operator;
+        int offset = node.offset;
+        switch (operator) {
+            case "and":
+                return (Eval) frame -> {
+                    Object a = left.eval(frame);
+                    return LuaValues.truthy(a) ? right.eval(frame) : a;
+                };
+            case "or":
+                return (Eval) frame -> {
+                    Object a = left.eval(frame);
+                    return LuaValues.truthy(a) ? a : right.eval(frame);
+                };
+            case "+":
+                return (Eval) frame -> {
+                    Object a = left.eval(frame);
+                    Object b = right.eval(frame);
+                    if (a instanceof Long && b instanceof Long) {
+                        return (Long) a + (Long) b;
+                    }
+                    if (a instanceof Double && b instanceof Double) {
+                        return (Double) a + (Double) b;
+                    }
+                    return arithmetic(operator, a, b, offset);
+                };
+            case "-":
+                return (Eval) frame -> {
+                    Object a = left.eval(frame);
+                    Object b = right.eval(frame);
+                    if (a instanceof Long && b instanceof Long) {
+                        return (Long) a - (Long) b;
+                    }
+                    if (a instanceof Double && b instanceof Double) {
+                        return (Double) a - (Double) b;
+                    }
+                    return arithmetic(operator, a, b, offset);
+                };
+            case "*":
+                return (Eval) frame -> {
+                    Object a = left.eval(frame);
+                    Object b = right.eval(frame);
+                    if (a instanceof Long && b instanceof Long) {
+                        return (Long) a * (Long) b;
+                    }
+                    if (a instanceof Double && b instanceof Double) {
+                        return (Double) a * (Double) b;
+                    }
+                    return arithmetic(operator, a, b, offset);
+                };
+            case "/":
+            case "//":
+            case "%":
+            case "^":
+                return (Eval) frame -> arithmetic(operator, left.eval(frame), right.eval(frame), offset);
+            case "&":
+            case "|":
+            case "~":
+            case "<<":
+            case ">>":
+                return (Eval) frame -> LuaValues.bitwise(operator, integer(left.eval(frame), offset), integer(right.eval(frame), offset));
+            case "..":
+                return (Eval) frame -> concat(left.eval(frame), right.eval(frame), offset);
+            case "==":
+                return (Eval) frame -> LuaValues.equal(left.eval(frame), right.eval(frame));
+            case "~=":
+                return (Eval) frame -> !LuaValues.equal(left.eval(frame), right.eval(frame));
+            case "<":
+                return (Eval) frame -> less(left.eval(frame), right.eval(frame), false, offset);
+            case "<=":
+                return (Eval) frame -> less(left.eval(frame), right.eval(frame), true, offset);
+            case ">":
+                return (Eval) frame -> {
+                    Object a = left.eval(frame);
+                    return less(right.eval(frame), a, false, offset);
+                };
+            case ">=":
+                return (Eval) frame -> {
+                    Object a = left.eval(frame);
+                    return less(right.eval(frame), a, true, offset);
+                };
+            default:
+                throw new LuaError("unsupported operator '" + operator + "'", offset);
+        }
+    }
+
+    @Override
+    public Object visitUnary(Expression.UnaryExpression node, FunctionState function) {
+        Eval operand = expression(node.expression, function);
+        int offset = node.offset;
+        switch (node.operator) {
+            case "not":
+                return (Eval) frame -> !LuaValues.truthy(operand.eval(frame));
+            case "-":
+                return (Eval) frame -> {
+                    Object value = operand.eval(frame);
+                    if (value instanceof Long) {
+                        return -(Long) value;
+                    }
+                    if (value instanceof Double) {
+                        return -(Double) value;
+                    }
+                    return arithmetic("-", 0L, value, offset);
+                };
+            case "~":
+                return (Eval) frame -> ~integer(operand.eval(frame), offset);
+            case "#":
+                return (Eval) frame -> {
+                    Object value = operand.eval(frame);
+                    if (value instanceof String) {
+                        return LuaValues.length((String) value);
+                    }
+                    if (value instanceof LuaTable) {
+                        return ((LuaTable) value).length();
+                    }
+                    throw new LuaError("attempt to get length of a " + LuaValues.type(value) + " value", offset);
+                };
+            default:
+                throw new LuaError("unsupported operator '" + node.operator + "'", offset);
+        }
+    }
+
+    // 数字，或者可以转为数字的字符串；都不是时为 null
+    static Object number(Object value) {
+        if (value instanceof Long || value instanceof Double) {
+            return value;
+        }
+        return value instanceof String ? LuaValues.toNumber((String) value) : null;
+    }
+
+    private static Object arithmetic(String operator, Object a, Object b, int offset) {
+        Object x = number(a);
+        Object y = number(b);
+        if (x == null || y == null) {
+            Object bad = x == null ? a : b;
+            throw new LuaError("attempt to perform arithmetic on a " + LuaValues.type(bad) + " value", offset);
+        }
+        Object result = LuaValues.arithmetic(operator, x, y);
+        if (result == null) {
+            throw new LuaError("attempt to perform 'n" + operator + "0'", offset);
+        }
+        return result;
+    }
+
+    private static long integer(Object value, int offset) {
+        Object number = number(value);
+        if (number == null) {
+            throw new LuaError("attempt to perform bitwise operation on a " + LuaValues.type(value) + " value", offset);
+        }
+        Long integer = LuaValues.integer(number);
+        if (integer == null) {
+            throw new LuaError("number has no integer representation", offset);
+        }
+        return integer;
+    }
+
+    private static Object concat(Object a, Object b, int offset) {
+        if ((a instanceof String || LuaValues.isNumber(a)) && (b instanceof String || LuaValues.isNumber(b))) {
+            return LuaValues.toDisplayString(a) + LuaValues.toDisplayString(b);
+        }
+        Object bad = a instanceof String || LuaValues.isNumber(a) ? b : a;
+        throw new LuaError("attempt to concatenate a " + LuaValues.type(bad) + " value", offset);
+    }
+
+    private static boolean less(Object a, Object b, boolean orEqual, int offset) {
+        if (a instanceof Long && b instanceof Long) {
+            return orEqual ? (Long) a <= (Long) b : (Long) a < (Long) b;
+        }
+        if (LuaValues.isNumber(a) && LuaValues.isNumber(b)) {
+            Integer order = LuaValues.order(a, b);
+            return order != null && (orEqual ? order <= 0 : order < 0);
+        }
+        if (a instanceof String && b instanceof String) {
+            int order = LuaValues.compare((String) a, (String) b);
+            return orEqual ? order <= 0 : order < 0;
+        }
+        String left = LuaValues.type(a);
+        String right = LuaValues.type(b);
+        throw new LuaError(left.equals(right) ? "attempt to compare two " + left + " values"
+                : "attempt to compare " + left + " with " + right, offset);
+    }
+}
@@ -1,8 +1,9 @@
 package top.skidder.parser;
 
+import java.util.Arrays;
 import java.util.List;
 
-public abstract class Statement {
+public abstract class Statement extends AstNode {
     public static class ExpressionStatement extends Statement {
         private final Expression expression;
 
@@ -20,6 +21,24 @@ public abstract class Statement {
                     "expression=" + expression.toString() +
                     '}';
         }
+
+        @Override
+        public <R, C> R accept(AstVisitor<R, C> visitor, C context) {
+            return visitor.visitExpressionStatement(this, context);
+        }
+
+        @Override
+        public int childCount() {
+            return 1;
+        }
+
+        @Override
+        public AstNode child(int index) {
+            if (index != 0) {
+                return super.child(index);
+            }
+            return expression;
+        }
     }
 
     public static class AssignmentStatement extends Statement {
@@ -38,6 +57,24 @@ public abstract class Statement {
                     ", value=" + value +
                     '}';
         }
+
+        @Override
+        public <R, C> R accept(AstVisitor<R, C> visitor, C context) {
+            return visitor.visitAssignment(this, context);
+        }
+
+        @Override
+        public int childCount() {
+            return 1;
+        }
+
+        @Override
+        public AstNode child(int index) {
+            if (index != 0) {
+                return super.child(index);
+            }
+            return value;
+        }
     }
 
     public static class IfStatement extends Statement {
@@ -46,15 +83,35 @@ public abstract class Statement {
         private final List<Statement> elseifStatements;
         private final List<Expression> elseifConditions;
         private final List<Statement> elseStatements;
+        // 每个 elseif 的语句在 elseifStatements 中的起始下标
+        final int[] elseifStarts;
 
+        // 不知道 elseif 之间的分界，所有 elseif 的语句都算作第一个 elseif 的
         public IfStatement(Expression condition, List<Statement> ifStatements,
                            List<Statement> elseifStatements, List<Expression> elseifConditions,
                            List<Statement> elseStatements) {
+            this(condition, ifStatements, elseifStatements, elseifConditions, elseStatements,
+                    firstElseifStarts(elseifConditions.size(), elseifStatements.size()));
+        }
+
+        IfStatement(Expression condition, List<Statement> ifStatements,
+                    List<Statement> elseifStatements, List<Expression> elseifConditions,
+                    List<Statement> elseStatements, int[] elseifStarts) {
             this.condition = condition;
             this.ifStatements = ifStatements;
             this.elseifStatements = elseifStatements;
             this.elseifConditions = elseifConditions;
             this.elseStatements = elseStatements;
+            this.elseifStarts = elseifStarts;
+        }
+
+        private static int[] firstElseifStarts(int count, int size) {
+            int[] starts = new int[count];
+            Arrays.fill(starts, size);
+            if (count > 0) {
+                starts[0] = 0;
+            }
+            return starts;
         }
 
         public Expression getCondition() {
@@ -73,6 +130,12 @@ public abstract class Statement {
             return elseifConditions;
         }
 
+        // 第 index 个 elseif 的语句，getElseifStatements 中所有 elseif 的语句是连在一起的
+        public List<Statement> getElseifBody(int index) {
+            int end = index + 1 < elseifStarts.length ? elseifStarts[index + 1] : elseifStatements.size();
+            return elseifStatements.subList(elseifStarts[index], end);
+        }
+
         public List<Statement> getElseStatements() {
             return elseStatements;
         }
@@ -87,6 +150,53 @@ public abstract class Statement {
                     "elseStatements=" + elseStatements.toString() +
                     "}";
         }
+
+        @Override
+        public <R, C> R accept(AstVisitor<R, C> visitor, C context) {
+            return visitor.visitIf(this, context);
+        }
+
+        @Override
+        public int childCount() {
+            return 1 + ifStatements.size() + elseifConditions.size() + elseifStatements.size() + elseStatements.size();
+        }
+
+        @Override
+        public AstNode child(int index) {
+            // 条件、if 的语句、每个 elseif 的条件和它的语句、else 的语句
+            if (index == 0) {
+                return condition;
+            }
+            int i = index - 1;
+            if (i < ifStatements.size()) {
+                return ifStatements.get(i);
+            }
+            i -= ifStatements.size();
+            int conditions = elseifConditions.size();
+            if (i < conditions + elseifStatements.size()) {
+                if (conditions == 0) {
+                    return elseifStatements.get(i);
+                }
+                // 第 k 个 elseif 的条件在 elseifStarts[k] + k 处，二分查找 i 所在的 elseif
+                int low = 0;
+                int high = conditions - 1;
+                while (low < high) {
+                    int mid = (low + high + 1) >>> 1;
+                    if (elseifStarts[mid] + mid <= i) {
+                        low = mid;
+                    } else {
+                        high = mid - 1;
+                    }
+                }
+                int j = i - elseifStarts[low] - low;
+                return j == 0 ? elseifConditions.get(low) : elseifStatements.get(elseifStarts[low] + j - 1);
+            }
+            i -= conditions + elseifStatements.size();
+            if (i >= 0 && i < elseStatements.size()) {
+                return elseStatements.get(i);
+            }
+            return super.child(index);
+        }
     }
 
 
@@ -114,6 +224,27 @@ public abstract class Statement {
                     ", body=" + body +
                     '}';
         }
+
+        @Override
+        public <R, C> R accept(AstVisitor<R, C> visitor, C context) {
+            return visitor.visitWhile(this, context);
+        }
+
+        @Override
+        public int childCount() {
+            return 1 + body.size();
+        }
+
+        @Override
+        public AstNode child(int index) {
+            if (index == 0) {
+                return condition;
+            }
+            if (index < 0 || index > body.size()) {
+                return super.child(index);
+            }
+            return body.get(index - 1);
+        }
     }
 
 
@@ -141,6 +272,27 @@ public abstract class Statement {
                     ", condition=" + condition +
                     '}';
         }
+
+        @Override
+        public <R, C> R accept(AstVisitor<R, C> visitor, C context) {
+            return visitor.visitRepeat(this, context);
+        }
+
+        @Override
+        public int childCount() {
+            return body.size() + 1;
+        }
+
+        @Override
+        public AstNode child(int index) {
+            if (index == body.size()) {
+                return condition;
+            }
+            if (index < 0 || index > body.size()) {
+                return super.child(index);
+            }
+            return body.get(index);
+        }
     }
 
 
@@ -159,6 +311,27 @@ public abstract class Statement {
             this.body = body;
         }
 
+        public String getVarName() {
+            return varName;
+        }
+
+        public Expression getStart() {
+            return start;
+        }
+
+        public Expression getEnd() {
+            return end;
+        }
+
+        // 没有步长时为 null
+        public Expression getStep() {
+            return step;
+        }
+
+        public List<Statement> getBody() {
+            return body;
+        }
+
         @Override
         public String toString() {
             return "ForStatement{" +
@@ -169,6 +342,39 @@ public abstract class Statement {
                     ", body=" + body.toString() +
                     '}';
         }
+
+        @Override
+        public <R, C> R accept(AstVisitor<R, C> visitor, C context) {
+            return visitor.visitFor(this, context);
+        }
+
+        @Override
+        public int childCount() {
+            return (step == null ? 2 : 3) + body.size();
+        }
+
+        @Override
+        public AstNode child(int index) {
+            // 起始值、结束值、步长（如果有）、循环体
+            switch (index) {
+                case 0:
+                    return start;
+                case 1:
+                    return end;
+                default:
+                    int i = index - 2;
+                    if (step != null) {
+                        if (i == 0) {
+                            return step;
+                        }
+                        i--;
+                    }
+                    if (i < 0 || i >= body.size()) {
+                        return super.child(index);
+                    }
+                    return body.get(i);
+            }
+        }
     }
 
 
@@ -185,6 +391,23 @@ public abstract class Statement {
             this.body = body;
         }
 
+        public String getKey() {
+            return key;
+        }
+
+        // 只有一个循环变量时为 null
+        public String getValue() {
+            return value;
+        }
+
+        public Expression getIterator() {
+            return iterator;
+        }
+
+        public List<Statement> getBody() {
+            return body;
+        }
+
         @Override
         public String toString() {
             return "ForInStatement{" +
@@ -194,6 +417,27 @@ public abstract class Statement {
                     ", body=" + body.toString() +
                     '}';
         }
+
+        @Override
+        public <R, C> R accept(AstVisitor<R, C> visitor, C context) {
+            return visitor.visitForIn(this, context);
+        }
+
+        @Override
+        public int childCount() {
+            return 1 + body.size();
+        }
+
+        @Override
+        public AstNode child(int index) {
+            if (index == 0) {
+                return iterator;
+            }
+            if (index < 0 || index > body.size()) {
+                return super.child(index);
+            }
+            return body.get(index - 1);
+        }
     }
 
 
@@ -213,6 +457,24 @@ public abstract class Statement {
                     ", initializer=" + initializer +
                     '}';
         }
+
+        @Override
+        public <R, C> R accept(AstVisitor<R, C> visitor, C context) {
+            return visitor.visitLocalDeclaration(this, context);
+        }
+
+        @Override
+        public int childCount() {
+            return initializer == null ? 0 : 1;
+        }
+
+        @Override
+        public AstNode child(int index) {
+            if (index != 0 || initializer == null) {
+                return super.child(index);
+            }
+            return initializer;
+        }
     }
 
     public static class ReturnStatement extends Statement {
@@ -225,6 +487,24 @@ public abstract class Statement {
         public List<Expression> getReturnValues() {
             return returnValues;
         }
+
+        @Override
+        public <R, C> R accept(AstVisitor<R, C> visitor, C context) {
+            return visitor.visitReturn(this, context);
+        }
+
+        @Override
+        public int childCount() {
+            return returnValues.size();
+        }
+
+        @Override
+        public AstNode child(int index) {
+            if (index < 0 || index >= returnValues.size()) {
+                return super.child(index);
+            }
+            return returnValues.get(index);
+        }
     }
 
 }
@@ -0,0 +1,44 @@
+package top.skidder.parser;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+// 逐条产生顶层语句的迭代器，每次只解析下一条语句，已经返回的语句不再被引用。
+// 读取失败时抛出 UncheckedIOException，语法错误以 IllegalStateException 包装 ParseError 抛出
+final class StatementIterator implements Iterator<Statement> {
+    private final Parser parser;
+    private final List<Statement> parsed = new ArrayList<>(1);
+    private int index;
+    private boolean done;
+
+    StatementIterator(Parser parser) {
+        this.parser = parser;
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (index == parsed.size() && !done) {
+            parsed.clear();
+            index = 0;
+            try {
+                done = !parser.parseNext(parsed);
+            } catch (ParseError e) {
+                done = true;
+                throw new IllegalStateException(e.getMessage(), e);
+            }
+        }
+        return index < parsed.size();
+    }
+
+    @Override
+    public Statement next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Statement statement = parsed.get(index);
+        parsed.set(index++, null);
+        return statement;
+    }
+}
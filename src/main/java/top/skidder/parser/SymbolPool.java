@@ -0,0 +1,102 @@
+package top.skidder.parser;
+
+// 标识符和短字符串的规范化池，可以在多个并行解析的线程之间共享。
+// 按哈希分段加锁，每段是一个 4 路组相联的缓存，组内按 LRU 淘汰，总容量固定，池本身不会无限增长。
+public final class SymbolPool {
+    // 超过这个长度的字符串字面量不进入池
+    static final int MAX_STRING_LENGTH = 32;
+
+    private static final int WAYS = 4;
+
+    private final Segment[] segments;
+    private final int segmentMask;
+
+    public SymbolPool() {
+        this(16, 1 << 16);
+    }
+
+    // concurrency 为分段数，capacity 为最多缓存的字符串数量，都会向上取整到 2 的幂
+    public SymbolPool(int concurrency, int capacity) {
+        int segmentCount = ceilPowerOfTwo(Math.max(concurrency, 1));
+        int setsPerSegment = ceilPowerOfTwo(Math.max(capacity / segmentCount / WAYS, 1));
+        this.segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment(setsPerSegment);
+        }
+        this.segmentMask = segmentCount - 1;
+    }
+
+    // 返回与 [start, end) 内容相同的规范化字符串，命中时不分配新对象
+    public String intern(CharSequence text, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + text.charAt(i);
+        }
+        return segment(hash).intern(hash, text, start, end, null);
+    }
+
+    public String intern(String text) {
+        int hash = text.hashCode();
+        return segment(hash).intern(hash, text, 0, text.length(), text);
+    }
+
+    private Segment segment(int hash) {
+        int spread = hash ^ (hash >>> 16);
+        return segments[spread & segmentMask];
+    }
+
+    private static int ceilPowerOfTwo(int value) {
+        return value <= 1 ? 1 : Integer.highestOneBit(value - 1) << 1;
+    }
+
+    private static final class Segment {
+        private final String[] entries;
+        private final int[] hashes;
+        private final int setMask;
+
+        Segment(int sets) {
+            this.entries = new String[sets * WAYS];
+            this.hashes = new int[sets * WAYS];
+            this.setMask = sets - 1;
+        }
+
+        synchronized String intern(int hash, CharSequence text, int start, int end, String existing) {
+            int base = (((hash * 0x9E3779B9) >>> 8) & setMask) * WAYS;
+            for (int way = 0; way < WAYS; way++) {
+                String entry = entries[base + way];
+                if (entry == null) {
+                    break;
+                }
+                if (hashes[base + way] == hash && matches(entry, text, start, end)) {
+                    moveToFront(base, way, entry, hash);
+                    return entry;
+                }
+            }
+            // 未命中：放到组的最前面，挤掉最久未使用的一项
+            String value = existing != null ? existing : text.subSequence(start, end).toString();
+            moveToFront(base, WAYS - 1, value, hash);
+            return value;
+        }
+
+        private void moveToFront(int base, int way, String entry, int hash) {
+            for (int i = way; i > 0; i--) {
+                entries[base + i] = entries[base + i - 1];
+                hashes[base + i] = hashes[base + i - 1];
+            }
+            entries[base] = entry;
+            hashes[base] = hash;
+        }
+
+        private static boolean matches(String entry, CharSequence text, int start, int end) {
+            if (entry.length() != end - start) {
+                return false;
+            }
+            for (int i = 0; i < entry.length(); i++) {
+                if (entry.charAt(i) != text.charAt(start + i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
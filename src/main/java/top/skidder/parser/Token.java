@@ -1,243 +1,636 @@
 package top.skidder.parser;
 
-import java.util.ArrayList;
+import java.io.Reader;
 import java.util.List;
-import java.util.function.Predicate;
 
 class Token {
-    String type; //定义每个token的类型，比如：  "IDENTIFIER"（标识符）, "STRING"（字符串）, "NUMBER"(数字), "OPERATOR"(运算符)
+    TokenKind kind; //定义每个token的种类，比如：  IDENTIFIER（标识符）, STRING（字符串）, NUMBER(数字), PLUS(运算符 "+")
+    String type; //兼容旧的字符串类型，比如：  "IDENTIFIER"（标识符）, "STRING"（字符串）, "NUMBER"(数字), "OPERATOR"(运算符)
     String value; //定义每个token的值，比如：  "abc"（标识符）, "hello world"（字符串）, "3.14"（数字), "+"（运算符）
+    int start = -1; // 在源码中的起始偏移，未知时为 -1
+    int end = -1; // 在源码中的结束偏移（不含）
 
-    Token(String type, String value) {
-        this.type = type;
+    Token(TokenKind kind, String value) {
+        this.kind = kind;
+        this.type = kind.type;
         this.value = value;
     }
 
+    Token(TokenKind kind) {
+        this(kind, kind.text);
+    }
+
     @Override
     public String toString() {
         return type + " " + value;
     }
 
-    public boolean match(String type) {
-        return this.type.equals(type);
-    }
-
-    public boolean match(String type, String value) {
-        return this.type.equals(type) && this.value.equals(value);
+    public boolean match(TokenKind kind) {
+        return this.kind == kind;
     }
 }
 
 class Lexer {
-    private final String input;
+    // ASCII 字符分类表，非 ASCII 字符走 Character 的通用判断
+    private static final int WHITESPACE = 1;
+    private static final int IDENT_START = 2;
+    private static final int DIGIT = 4;
+    private static final int HEX_DIGIT = 8;
+    private static final byte[] CHAR_CLASS = new byte[128];
+    // 单字符运算符和符号表，null 表示不是单字符 token 或者需要看下一个字符
+    private static final TokenKind[] SINGLE = new TokenKind[128];
+
+    static {
+        for (char c : " \t\n\r\f\u000B".toCharArray()) CHAR_CLASS[c] |= WHITESPACE;
+        for (char c = 'a'; c <= 'z'; c++) CHAR_CLASS[c] |= IDENT_START;
+        for (char c = 'A'; c <= 'Z'; c++) CHAR_CLASS[c] |= IDENT_START;
+        CHAR_CLASS['_'] |= IDENT_START;
+        for (char c = '0'; c <= '9'; c++) CHAR_CLASS[c] |= DIGIT | HEX_DIGIT;
+        for (char c = 'a'; c <= 'f'; c++) CHAR_CLASS[c] |= HEX_DIGIT;
+        for (char c = 'A'; c <= 'F'; c++) CHAR_CLASS[c] |= HEX_DIGIT;
+        for (TokenKind kind : TokenKind.VALUES) {
+            if (kind.text != null && kind.text.length() == 1 && CHAR_CLASS[kind.text.charAt(0)] == 0) {
+                SINGLE[kind.text.charAt(0)] = kind;
+            }
+        }
+    }
+
+    private CharSequence input;
+    private String string; // 输入是 String 时用于 indexOf 批量查找，否则为 null
+    private final ReaderWindow window; // 流式模式下的可回填缓冲区，普通模式为 null
+    private SymbolPool symbols; // 可选的符号池，用于规范化标识符和短字符串
+    private List<Diagnostic> diagnostics; // 错误恢复模式下收集词法错误，否则为 null
+    private int limit;     // 当前已知可读的字符上界
     private int position;  // 当前解析到的位置
+    private int tokenStart; // 当前 token 的起始位置，流式模式下它之前的字符可以被丢弃
+
+    // 构造函数，初始化输入字符序列和解析位置，可以是 String 也可以是内存映射文件的视图
+    Lexer(CharSequence input) {
+        this(input, null);
+    }
+
+    Lexer(CharSequence input, SymbolPool symbols) {
+        this.input = input;
+        this.string = input instanceof String ? (String) input : null;
+        this.window = null;
+        this.symbols = symbols;
+        this.limit = input.length();
+        this.position = 0;
+    }
+
+    // 流式模式：从 Reader 中按需读取，只保留当前 token 附近的字符
+    Lexer(Reader reader) {
+        this(reader, null);
+    }
+
+    Lexer(Reader reader, SymbolPool symbols) {
+        this(new ReaderWindow(reader), symbols);
+    }
+
+    private Lexer(ReaderWindow window, SymbolPool symbols) {
+        this.input = window;
+        this.string = null;
+        this.window = window;
+        this.symbols = symbols;
+        this.limit = 0;
+        this.position = 0;
+    }
 
-    // 构造函数，初始化输入字符串和解析位置
-    Lexer(String input) {
+    // 换成新的输入从头开始读取，ParseContext 用它复用同一个 Lexer，只能用于非流式模式
+    void reset(CharSequence input, SymbolPool symbols) {
         this.input = input;
+        this.string = input instanceof String ? (String) input : null;
+        this.symbols = symbols;
+        this.diagnostics = null;
+        this.limit = input.length();
         this.position = 0;
+        this.tokenStart = 0;
+    }
+
+    // 将输入字符串解析为 TokenBuffer，只记录种类和偏移，不创建 Token 对象
+    TokenBuffer tokenize() {
+        return tokenize(new TokenBuffer(input, limit / 4, symbols));
     }
 
-    // 将输入字符串解析为Token列表
-    List<Token> tokenize() {
-        List<Token> tokens = new ArrayList<>();
-        while (position < input.length()) {
+    // 追加到已有的 TokenBuffer 中
+    TokenBuffer tokenize(TokenBuffer tokens) {
+        for (TokenKind kind = next(); kind != TokenKind.EOF; kind = next()) {
+            tokens.add(kind, tokenStart, position);
+        }
+        return tokens;
+    }
+
+    // 按需读取的 TokenBuffer，Parser 访问到哪里才读到哪里；diagnostics 不为 null 时为错误恢复模式
+    TokenBuffer tokens(List<Diagnostic> diagnostics) {
+        return new TokenBuffer(input, symbols, this, diagnostics);
+    }
+
+    // 从 offset 处继续读取，offset 必须位于两个 token 之间，增量解析时用于跳过没有改动的部分
+    void seek(int offset) {
+        position = offset;
+        tokenStart = offset;
+    }
+
+    // 读取下一个 token，返回它的种类，范围为 [tokenStart(), tokenEnd())
+    TokenKind next() {
+        while (has(position)) {
+            tokenStart = position;
             char current = input.charAt(position);
-            if (Character.isWhitespace(current)) { // 跳过空白
+            if (isWhitespace(current)) { // 跳过空白
                 position++;
             } else if (current == '-' && lookaheadIs('-')) {
                 // 跳过注释
                 skipComment();
-            } else if (Character.isLetter(current) || current == '_') {
-                String identifier = readWhile(c -> Character.isLetterOrDigit(c) || c == '_');
-                switch (identifier) {
-                    case "local":
-                        tokens.add(new Token("KEYWORD", "local"));
-                        break;
-                    case "function":
-                        tokens.add(new Token("KEYWORD", "function"));
-                        break;
-                    case "end":
-                        tokens.add(new Token("KEYWORD", "end"));
-                        break;
-                    case "return":
-                        tokens.add(new Token("KEYWORD", "return"));
-                        break;
-                    case "true":
-                        tokens.add(new Token("BOOLEAN", "true"));
-                        break;
-                    case "false":
-                        tokens.add(new Token("BOOLEAN", "false"));
-                        break;
-                    case "nil":
-                        tokens.add(new Token("NIL", "nil"));
-                        break;
-                    case "if":
-                        tokens.add(new Token("KEYWORD", "if"));
-                        break;
-                    case "then":
-                        tokens.add(new Token("KEYWORD", "then"));
-                        break;
-                    case "elseif":
-                        tokens.add(new Token("KEYWORD", "elseif"));
-                        break;
-                    case "else":
-                        tokens.add(new Token("KEYWORD", "else"));
-                        break;
-                    case "until":
-                        tokens.add(new Token("KEYWORD", "until"));
-                        break;
-                    case "while":
-                        tokens.add(new Token("KEYWORD", "while"));
-                        break;
-                    case "for":
-                        tokens.add(new Token("KEYWORD", "for"));
-                        break;
-                    case "in":
-                        tokens.add(new Token("KEYWORD", "in"));
-                        break;
-                    case "do":
-                        tokens.add(new Token("KEYWORD", "do"));
-                        break;
-                    case "repeat":
-                        tokens.add(new Token("KEYWORD", "repeat"));
-                        break;
-                    default:
-                        tokens.add(new Token("IDENTIFIER", identifier));
-                        break;
-                }
-            } else if (Character.isDigit(current)) {
-                String number = readWhile(t -> Character.isDigit(t) || t == '.' || t == 'e' || t == 'E' || t == '+' || t == '-'); // 读取数字，直到遇到非数字为止
-                // 合法性检查
-                if (number.contains(".") && number.endsWith(".")) {
-                    throw new IllegalArgumentException("Invalid number: " + number);
+            } else if (isIdentifierStart(current)) {
+                position++;
+                while (has(position) && isIdentifierPart(input.charAt(position))) {
+                    position++;
                 }
-                if (number.contains("e") || number.contains("E")) {
-                    if (number.endsWith("e") || number.endsWith("E")) {
-                        throw new IllegalArgumentException("Invalid number: " + number);
-                    }
-                    String[] parts = number.split("[eE]");
-                    if (parts.length != 2) {
-                        throw new IllegalArgumentException("Invalid number: " + number);
-                    }
-                    if (!parts[1].matches("[+-]?\\d+")) {
-                        throw new IllegalArgumentException("Invalid number: " + number);
-                    }
+                // 通过完美哈希识别关键字
+                return TokenKind.keyword(input, tokenStart, position);
+            } else if (isDigit(current) || (current == '.' && has(position + 1) && isDigit(input.charAt(position + 1)))) {
+                scanNumber();
+                return TokenKind.NUMBER;
+            } else if (current == '"' || current == '\'') {
+                // 读取字符串，只记录范围，内容在需要时再解码
+                scanQuotedString(current);
+                return TokenKind.STRING;
+            } else if (current == '[' && (lookaheadIs('[') || lookaheadIs('='))) {
+                scanLongString();
+                return TokenKind.STRING;
+            } else {
+                TokenKind kind = readOperator(current);
+                if (kind == null) {
+                    throw error("Unexpected character: " + current + where(""));
                 }
+                return kind;
+            }
+        }
+        tokenStart = position;
+        return TokenKind.EOF;
+    }
 
+    // 错误恢复模式下读取下一个 token：出错时记录诊断信息并跳过出错的部分
+    TokenKind next(List<Diagnostic> diagnostics) {
+        this.diagnostics = diagnostics;
+        while (true) {
+            try {
+                return next();
+            } catch (LexerError e) {
+                diagnostics.add(new Diagnostic(e.offset, e.end, e.getMessage()));
+                position = Math.max(position, tokenStart + 1);
+            }
+        }
+    }
 
-                tokens.add(new Token("NUMBER", number));
-            } else if (current == '"' || (current == '[' && lookaheadIs('['))) {
-                // 读取字符串
-                tokens.add(new Token("STRING", readString()));
-            } else if (current == '=' && input.charAt(position + 1) == '=') {
-                tokens.add(new Token("OPERATOR", "=="));
-                position += 2;
-            } else if (current == '<' && input.charAt(position + 1) == '=') {
-                tokens.add(new Token("OPERATOR", "<="));
-                position += 2;
-            } else if (current == '>' && input.charAt(position + 1) == '=') {
-                tokens.add(new Token("OPERATOR", ">="));
-                position += 2;
-            } else if (current == '.' && input.charAt(position + 1) == '.') {
-                tokens.add(new Token("OPERATOR", ".."));
-                position += 2;
-            } else if (current == '+' || current == '-' || current == '*' || current == '/' || current == '%' || current == '^' || current == '#' || current == '&' || current == '|' || current == '~' || current == '>' || current == '<' || current == '=' || current == '?' || current == '!') {
-                tokens.add(new Token("OPERATOR", String.valueOf(current)));
+    int tokenStart() {
+        return tokenStart;
+    }
+
+    int tokenEnd() {
+        return position;
+    }
+
+    // 当前 token 的原始文本，字符串包含引号；只在 next() 之后、下一次 next() 之前有效
+    String tokenText(TokenKind kind) {
+        if (symbols != null && kind == TokenKind.IDENTIFIER) {
+            return symbols.intern(input, tokenStart, position);
+        }
+        return input.subSequence(tokenStart, position).toString();
+    }
+
+    SymbolPool symbols() {
+        return symbols;
+    }
+
+    // 检查 index 处是否还有字符，流式模式下会按需从 Reader 中补充
+    private boolean has(int index) {
+        if (index < limit) {
+            return true;
+        }
+        if (window == null) {
+            return false;
+        }
+        limit = window.fill(index, tokenStart);
+        return index < limit;
+    }
+
+    // 快速失败模式下把当前位置拼接到错误信息中；错误恢复模式下位置由 Diagnostic 的偏移给出，增量解析时会随修改平移
+    private String where(String separator) {
+        return diagnostics != null ? "" : separator + position;
+    }
+
+    private LexerError error(String message) {
+        return error(message, position);
+    }
+
+    // end 为出错前扫描到的位置，未闭合的长括号会一直扫描到输入末尾
+    private LexerError error(String message, int end) {
+        return new LexerError(message, tokenStart, end, diagnostics != null);
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c < 128 ? (CHAR_CLASS[c] & WHITESPACE) != 0 : Character.isWhitespace(c);
+    }
+
+    private static boolean isIdentifierStart(char c) {
+        return c < 128 ? (CHAR_CLASS[c] & IDENT_START) != 0 : Character.isLetter(c);
+    }
+
+    private static boolean isIdentifierPart(char c) {
+        return c < 128 ? (CHAR_CLASS[c] & (IDENT_START | DIGIT)) != 0 : Character.isLetterOrDigit(c);
+    }
+
+    private static boolean isDigit(char c) {
+        return c < 128 && (CHAR_CLASS[c] & DIGIT) != 0;
+    }
+
+    private static boolean isHexDigit(char c) {
+        return c < 128 && (CHAR_CLASS[c] & HEX_DIGIT) != 0;
+    }
+
+    // 数字的状态机：十进制 123 / 1.5 / .5 / 1e10 / 1.5E-3，十六进制 0xFF / 0x1.8p3
+    private void scanNumber() {
+        boolean hex = input.charAt(position) == '0' && has(position + 1) && (input.charAt(position + 1) == 'x' || input.charAt(position + 1) == 'X');
+        char exponent = 'e';
+        if (hex) {
+            position += 2;
+            exponent = 'p';
+        }
+        int digits = scanDigits(hex);
+        if (has(position) && input.charAt(position) == '.') {
+            position++;
+            digits += scanDigits(hex);
+        }
+        if (digits == 0) {
+            throw invalidNumber();
+        }
+        if (has(position) && (input.charAt(position) | 0x20) == exponent) {
+            position++;
+            if (has(position) && (input.charAt(position) == '+' || input.charAt(position) == '-')) {
+                position++;
+            }
+            if (scanDigits(false) == 0) {
+                throw invalidNumber();
+            }
+        }
+        // 数字后面紧跟标识符字符或点号时是非法数字，比如 3x、1..2
+        if (has(position) && (isIdentifierPart(input.charAt(position)) || input.charAt(position) == '.')) {
+            throw invalidNumber();
+        }
+    }
+
+    private int scanDigits(boolean hex) {
+        int start = position;
+        while (has(position) && (hex ? isHexDigit(input.charAt(position)) : isDigit(input.charAt(position)))) {
+            position++;
+        }
+        return position - start;
+    }
+
+    private LexerError invalidNumber() {
+        int end = position;
+        while (has(end) && (isIdentifierPart(input.charAt(end)) || input.charAt(end) == '.')) {
+            end++;
+        }
+        return error("Invalid number: " + input.subSequence(tokenStart, end), end);
+    }
+
+    // 扫描单引号或双引号字符串，同时检查转义是否合法
+    private void scanQuotedString(char quote) {
+        position++; // 跳过开头的引号
+        while (true) {
+            if (!has(position)) {
+                throw error("Unterminated string");
+            }
+            char current = input.charAt(position);
+            if (current == quote) {
                 position++;
-            } else if (".:{}(),".indexOf(current) != -1) {
-                tokens.add(new Token("SYMBOL", String.valueOf(current)));
+                return;
+            } else if (current == '\\') {
                 position++;
+                if (!has(position)) {
+                    throw error("Unterminated escape sequence in string");
+                }
+                scanEscape(input.charAt(position));
+            } else if (current == '\n' || current == '\r') {
+                throw error("Unterminated string");
             } else {
-                throw new IllegalArgumentException("Unexpected character: " + current + position);
+                position++;
             }
         }
-        return tokens;
     }
 
+    // position 指向反斜杠后面的字符，扫描完整个转义序列
+    private void scanEscape(char escaped) {
+        switch (escaped) {
+            case 'a': case 'b': case 'f': case 'n': case 'r': case 't': case 'v':
+            case '\\': case '"': case '\'':
+                position++;
+                return;
+            case '\n': case '\r':
+                // 反斜杠加换行，\r\n 和 \n\r 算作一个换行
+                position++;
+                if (has(position) && (input.charAt(position) == '\n' || input.charAt(position) == '\r') && input.charAt(position) != escaped) {
+                    position++;
+                }
+                return;
+            case 'x':
+                position++;
+                for (int i = 0; i < 2; i++, position++) {
+                    if (!has(position) || !isHexDigit(input.charAt(position))) {
+                        throw error("Invalid hexadecimal escape sequence in string");
+                    }
+                }
+                return;
+            case 'z':
+                // \z 跳过后面的空白
+                position++;
+                while (has(position) && isWhitespace(input.charAt(position))) {
+                    position++;
+                }
+                return;
+            case 'u':
+                position++;
+                if (!has(position) || input.charAt(position) != '{') {
+                    throw error("Missing '{' in \\u{xxxx} escape sequence");
+                }
+                position++;
+                // 边扫描边累加，超出 Unicode 范围时立即报错，前导 0 不限个数
+                int codePoint = 0;
+                int digits = 0;
+                for (; has(position) && isHexDigit(input.charAt(position)); position++, digits++) {
+                    codePoint = codePoint * 16 + Character.digit(input.charAt(position), 16);
+                    if (codePoint > Character.MAX_CODE_POINT) {
+                        throw error("UTF-8 value too large in \\u{xxxx} escape sequence");
+                    }
+                }
+                if (digits == 0 || !has(position) || input.charAt(position) != '}') {
+                    throw error("Invalid \\u{xxxx} escape sequence in string");
+                }
+                position++;
+                return;
+            default:
+                if (isDigit(escaped)) {
+                    // \ddd，最多三位十进制数字，不能超过 255
+                    int value = 0;
+                    for (int i = 0; i < 3 && has(position) && isDigit(input.charAt(position)); i++, position++) {
+                        value = value * 10 + (input.charAt(position) - '0');
+                    }
+                    if (value > 255) {
+                        throw error("Decimal escape too large: \\" + value);
+                    }
+                    return;
+                }
+                throw error("Unknown escape sequence: \\" + escaped);
+        }
+    }
+
+    // 读取运算符或符号，单字符查表，按最长匹配处理 "..."、"==" 之类的多字符运算符
+    private TokenKind readOperator(char current) {
+        TokenKind kind;
+        int length = 1;
+        switch (current) {
+            case '/':
+                if (lookaheadIs('/')) { kind = TokenKind.DOUBLE_SLASH; length = 2; } else { kind = TokenKind.SLASH; }
+                break;
+            case '~':
+                if (lookaheadIs('=')) { kind = TokenKind.NE; length = 2; } else { kind = TokenKind.TILDE; }
+                break;
+            case '=':
+                if (lookaheadIs('=')) { kind = TokenKind.EQ; length = 2; } else { kind = TokenKind.ASSIGN; }
+                break;
+            case '<':
+                if (lookaheadIs('=')) { kind = TokenKind.LE; length = 2; }
+                else if (lookaheadIs('<')) { kind = TokenKind.SHIFT_LEFT; length = 2; }
+                else { kind = TokenKind.LT; }
+                break;
+            case '>':
+                if (lookaheadIs('=')) { kind = TokenKind.GE; length = 2; }
+                else if (lookaheadIs('>')) { kind = TokenKind.SHIFT_RIGHT; length = 2; }
+                else { kind = TokenKind.GT; }
+                break;
+            case ':':
+                if (lookaheadIs(':')) { kind = TokenKind.DOUBLE_COLON; length = 2; } else { kind = TokenKind.COLON; }
+                break;
+            case '.':
+                if (lookaheadIs('.')) {
+                    if (lookaheadIs('.', position + 2)) { kind = TokenKind.DOTS; length = 3; } else { kind = TokenKind.CONCAT; length = 2; }
+                } else {
+                    kind = TokenKind.DOT;
+                }
+                break;
+            default:
+                kind = current < 128 ? SINGLE[current] : null;
+                if (kind == null) {
+                    return null;
+                }
+                break;
+        }
+        position += length;
+        return kind;
+    }
     private boolean lookaheadIs(char expected) {
-        return position + 1 < input.length() && input.charAt(position + 1) == expected;
+        return has(position + 1) && input.charAt(position + 1) == expected;
     }
 
     private boolean lookaheadIs(char expected, int index) {
-        return index < input.length() && input.charAt(index) == expected;
+        return has(index) && input.charAt(index) == expected;
     }
 
     private void skipComment() {
         position += 2; // 跳过 "--"
-        if (lookaheadIs('[') && lookaheadIs('[', position + 1)) {
-            // 多行注释
-            position += 3; // 跳过 "[["
-            while (position < input.length() && !(lookaheadIs(']') && lookaheadIs(']', position + 1))) {
-                position++;
-            }
-            if (position < input.length()) {
-                position += 3; // 跳过 "]]"
-            } else {
-                throw new IllegalArgumentException("Unterminated multi-line comment");
+        int level = longBracketLevel(position);
+        if (level >= 0) {
+            // 多行注释 --[[ ]] / --[==[ ]==]
+            position = findLongBracketEnd(position + level + 2, level, false);
+            if (position < 0) {
+                throw error("Unterminated multi-line comment", limit);
             }
         } else {
             // 单行注释
-            while (position < input.length() && input.charAt(position) != '\n') {
-                position++;
+            int newline = lineEnd(position);
+            position = newline < 0 ? limit : newline;
+        }
+        tokenStart = position;
+    }
+
+    // 扫描 [[ ]] / [==[ ]==] 长字符串，内容不处理转义
+    private void scanLongString() {
+        int level = longBracketLevel(position);
+        if (level < 0) {
+            throw error("Invalid long string delimiter" + where(" at "));
+        }
+        int end = findLongBracketEnd(position + level + 2, level, true);
+        if (end < 0) {
+            throw error("Unterminated long string", limit);
+        }
+        position = end;
+    }
+
+    // index 处是 "[" 加若干个 "=" 再加 "[" 时返回 "=" 的个数，否则返回 -1
+    private int longBracketLevel(int index) {
+        if (!lookaheadIs('[', index)) {
+            return -1;
+        }
+        int level = 0;
+        while (lookaheadIs('=', index + 1 + level)) {
+            level++;
+        }
+        return lookaheadIs('[', index + 1 + level) ? level : -1;
+    }
+
+    // 从 from 开始查找 level 级的右长括号，返回右长括号之后的位置，找不到返回 -1
+    private int findLongBracketEnd(int from, int level, boolean retain) {
+        while (true) {
+            int close = indexOf(']', from, retain);
+            if (close < 0) {
+                return -1;
+            }
+            int index = close + 1;
+            for (int i = 0; i < level && lookaheadIs('=', index); i++) {
+                index++;
             }
+            if (index - close - 1 == level && lookaheadIs(']', index)) {
+                return index + 1;
+            }
+            from = close + 1;
         }
     }
 
-    private String readString() {
-        StringBuilder stringLiteral = new StringBuilder();
-        char marker = input.charAt(position);
-        if (marker == '[') {
-            position++;
+    // 批量查找字符：String 输入直接使用 String.indexOf；retain 为 false 时流式模式下可以丢弃已扫描过的内容
+    private int indexOf(char c, int from, boolean retain) {
+        if (string != null) {
+            return string.indexOf(c, from);
         }
-        position++; // 跳过开头的双引号
-        while (position < input.length()) {
-            char current = input.charAt(position);
-            if (current == '\\') {
-                // 处理转义字符
-                position++;
-                if (position >= input.length()) {
-                    throw new IllegalArgumentException("Unterminated escape sequence in string");
-                }
-                char escaped = input.charAt(position);
-                switch (escaped) {
-                    case 'n':
-                        stringLiteral.append('\n');
-                        break;
-                    case 't':
-                        stringLiteral.append('\t');
-                        break;
-                    case '"':
-                        stringLiteral.append('"');
-                        break;
-                    case '\\':
-                        stringLiteral.append('\\');
-                        break;
-                    default:
-                        throw new IllegalArgumentException("Unknown escape sequence: \\" + escaped);
+        for (int i = from; has(i); i++) {
+            if (input.charAt(i) == c) {
+                return i;
+            }
+            if (!retain) {
+                tokenStart = i;
+            }
+        }
+        return -1;
+    }
+
+    // 从 from 开始的第一个 '\n' 或 '\r'，与 LineTable 一样单独的 '\r' 也算换行；没有时为 -1
+    private int lineEnd(int from) {
+        if (string != null) {
+            int newline = string.indexOf('\n', from);
+            int end = newline < 0 ? string.length() : newline;
+            for (int i = from; i < end; i++) {
+                if (string.charAt(i) == '\r') {
+                    return i;
                 }
-            } else if (current == '\"' || (marker == '[' && current == ']')) {
-                // 结束字符串
-                if (marker == '[')
-                    position++;
-                position++;
-                break;
-            } else {
+            }
+            return newline;
+        }
+        for (int i = from; has(i); i++) {
+            char c = input.charAt(i);
+            if (c == '\n' || c == '\r') {
+                return i;
+            }
+            tokenStart = i;
+        }
+        return -1;
+    }
+
+    // 解码 [start, end) 范围内的字符串字面量（包含引号），处理转义字符
+    static String decodeString(CharSequence input, int start, int end) {
+        if (input.charAt(start) == '[') {
+            return decodeLongString(input, start, end);
+        }
+        int position = start + 1;
+        int contentEnd = end - 1;
+        StringBuilder stringLiteral = new StringBuilder(Math.max(contentEnd - position, 0));
+        while (position < contentEnd) {
+            char current = input.charAt(position++);
+            if (current != '\\') {
                 // 普通字符
                 stringLiteral.append(current);
+                continue;
+            }
+            // 处理转义字符
+            char escaped = input.charAt(position++);
+            switch (escaped) {
+                case 'a': stringLiteral.append('\u0007'); break;
+                case 'b': stringLiteral.append('\b'); break;
+                case 'f': stringLiteral.append('\f'); break;
+                case 'n': stringLiteral.append('\n'); break;
+                case 'r': stringLiteral.append('\r'); break;
+                case 't': stringLiteral.append('\t'); break;
+                case 'v': stringLiteral.append('\u000B'); break;
+                case '\n':
+                case '\r':
+                    // 反斜杠加换行表示字符串中的换行，\r\n 和 \n\r 算作一个换行
+                    if (position < contentEnd && (input.charAt(position) == '\n' || input.charAt(position) == '\r') && input.charAt(position) != escaped) {
+                        position++;
+                    }
+                    stringLiteral.append('\n');
+                    break;
+                case 'x':
+                    stringLiteral.append((char) (Character.digit(input.charAt(position), 16) * 16 + Character.digit(input.charAt(position + 1), 16)));
+                    position += 2;
+                    break;
+                case 'z':
+                    while (position < contentEnd && isWhitespace(input.charAt(position))) {
+                        position++;
+                    }
+                    break;
+                case 'u': {
+                    // Lexer 已经检查过位数和范围
+                    int codePoint = 0;
+                    for (position++; input.charAt(position) != '}'; position++) {
+                        codePoint = codePoint * 16 + Character.digit(input.charAt(position), 16);
+                    }
+                    stringLiteral.appendCodePoint(codePoint);
+                    position++;
+                    break;
+                }
+                default:
+                    if (isDigit(escaped)) {
+                        int value = escaped - '0';
+                        for (int i = 1; i < 3 && position < contentEnd && isDigit(input.charAt(position)); i++) {
+                            value = value * 10 + (input.charAt(position++) - '0');
+                        }
+                        stringLiteral.append((char) value);
+                    } else {
+                        // \\、\"、\'
+                        stringLiteral.append(escaped);
+                    }
+                    break;
             }
-            position++;
         }
         return stringLiteral.toString();
     }
 
-
-    // 根据条件读取字符，直到条件不满足为止，这里用了Predicate接口
-    private String readWhile(Predicate<Character> condition) {
-        StringBuilder result = new StringBuilder();
-        while (position < input.length() && condition.test(input.charAt(position))) {
-            result.append(input.charAt(position++));
+    // 解码长字符串：去掉两侧的长括号和紧跟在开头的换行，换行统一为 \n
+    private static String decodeLongString(CharSequence input, int start, int end) {
+        int level = 0;
+        while (input.charAt(start + 1 + level) == '=') {
+            level++;
         }
-        return result.toString();
+        int position = start + level + 2;
+        int contentEnd = end - level - 2;
+        if (position < contentEnd && (input.charAt(position) == '\r' || input.charAt(position) == '\n')) {
+            char first = input.charAt(position++);
+            if (position < contentEnd && (input.charAt(position) == '\r' || input.charAt(position) == '\n') && input.charAt(position) != first) {
+                position++;
+            }
+        }
+        StringBuilder stringLiteral = new StringBuilder(Math.max(contentEnd - position, 0));
+        while (position < contentEnd) {
+            char current = input.charAt(position++);
+            if (current == '\r' || current == '\n') {
+                if (position < contentEnd && (input.charAt(position) == '\r' || input.charAt(position) == '\n') && input.charAt(position) != current) {
+                    position++;
+                }
+                stringLiteral.append('\n');
+            } else {
+                stringLiteral.append(current);
+            }
+        }
+        return stringLiteral.toString();
     }
 }
-
@@ -0,0 +1,162 @@
+package top.skidder.parser;
+
+import java.util.Arrays;
+import java.util.List;
+
+// 以结构数组形式保存 token：种类、起始偏移、结束偏移分别存放在 int 数组中，文本只在需要时才从源码中截取
+class TokenBuffer implements TokenSource {
+    // reset 时超过这个容量的数组会被换成小数组，复用的 TokenBuffer 不会一直占着大文件的 token 数组
+    private static final int MAX_RETAINED_CAPACITY = 1 << 16;
+
+    private CharSequence source;
+    private SymbolPool symbols;
+    private Lexer lexer; // 按需读取时的来源，读到输入末尾后为 null
+    private final List<Diagnostic> diagnostics;
+    private int[] kinds;
+    private int[] starts;
+    private int[] ends;
+    private int size;
+
+    TokenBuffer(CharSequence source, int initialCapacity, SymbolPool symbols) {
+        this(source, initialCapacity, symbols, null, null);
+    }
+
+    // 按需从 lexer 读取 token，diagnostics 不为 null 时词法错误被记录而不是抛出
+    TokenBuffer(CharSequence source, SymbolPool symbols, Lexer lexer, List<Diagnostic> diagnostics) {
+        this(source, 64, symbols, lexer, diagnostics);
+    }
+
+    private TokenBuffer(CharSequence source, int initialCapacity, SymbolPool symbols, Lexer lexer, List<Diagnostic> diagnostics) {
+        this.source = source;
+        this.symbols = symbols;
+        this.lexer = lexer;
+        this.diagnostics = diagnostics;
+        int capacity = Math.max(initialCapacity, 16);
+        this.kinds = new int[capacity];
+        this.starts = new int[capacity];
+        this.ends = new int[capacity];
+    }
+
+    // 清空后用于新的输入，保留已经分配的数组
+    void reset(CharSequence source, SymbolPool symbols) {
+        this.source = source;
+        this.symbols = symbols;
+        this.lexer = null;
+        this.size = 0;
+        if (kinds.length > MAX_RETAINED_CAPACITY) {
+            kinds = new int[64];
+            starts = new int[64];
+            ends = new int[64];
+        }
+    }
+
+    void add(TokenKind kind, int start, int end) {
+        if (size == kinds.length) {
+            int capacity = size + (size >> 1);
+            kinds = Arrays.copyOf(kinds, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+        }
+        kinds[size] = kind.ordinal();
+        starts[size] = start;
+        ends[size] = end;
+        size++;
+    }
+
+    int size() {
+        return size;
+    }
+
+    CharSequence source() {
+        return source;
+    }
+
+    @Override
+    public SymbolPool symbols() {
+        return symbols;
+    }
+
+    @Override
+    public CharSequence source(int index) {
+        return source;
+    }
+
+    // 超出范围时返回 EOF，方便 Parser 做前瞻
+    @Override
+    public TokenKind kind(int index) {
+        return index < size || fill(index) ? TokenKind.VALUES[kinds[index]] : TokenKind.EOF;
+    }
+
+    // 按需读取时补充 token 直到 index 可用，返回 false 表示输入已经结束
+    private boolean fill(int index) {
+        while (index >= size && lexer != null) {
+            TokenKind kind = diagnostics != null ? lexer.next(diagnostics) : lexer.next();
+            if (kind == TokenKind.EOF) {
+                lexer = null;
+            } else {
+                add(kind, lexer.tokenStart(), lexer.tokenEnd());
+            }
+        }
+        return index < size;
+    }
+
+    @Override
+    public int start(int index) {
+        return starts[index];
+    }
+
+    @Override
+    public int offset(int index) {
+        return index < size || fill(index) ? starts[index] : source.length();
+    }
+
+    @Override
+    public int end(int index) {
+        return ends[index];
+    }
+
+    @Override
+    public int endOffset(int index) {
+        return index < size || fill(index) ? ends[index] : source.length();
+    }
+
+    // token 在源码中的原始文本，字符串包含引号
+    String text(int index) {
+        return source.subSequence(starts[index], ends[index]).toString();
+    }
+
+    // token 的值：关键字和运算符直接用固定文本，字符串会处理转义
+    @Override
+    public String value(int index) {
+        TokenKind kind = kind(index);
+        if (kind.text != null) {
+            return kind.text;
+        }
+        if (kind == TokenKind.STRING) {
+            return Lexer.decodeString(source, starts[index], ends[index]);
+        }
+        if (kind == TokenKind.IDENTIFIER && symbols != null) {
+            return symbols.intern(source, starts[index], ends[index]);
+        }
+        return text(index);
+    }
+
+    Token get(int index) {
+        Token token = new Token(kind(index), value(index));
+        if (index < size) {
+            token.start = starts[index];
+            token.end = ends[index];
+        }
+        return token;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < size; i++) {
+            if (i > 0) sb.append(", ");
+            sb.append(get(i));
+        }
+        return sb.append(']').toString();
+    }
+}
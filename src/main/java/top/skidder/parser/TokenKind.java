@@ -0,0 +1,123 @@
+package top.skidder.parser;
+
+// Token 的种类，Lexer 和 Parser 都按种类比较，避免在热路径上做字符串比较
+enum TokenKind {
+    // 字面量
+    IDENTIFIER("IDENTIFIER", null),
+    NUMBER("NUMBER", null),
+    STRING("STRING", null),
+    TRUE("BOOLEAN", "true"),
+    FALSE("BOOLEAN", "false"),
+    NIL("NIL", "nil"),
+
+    // 关键字
+    AND("KEYWORD", "and"),
+    BREAK("KEYWORD", "break"),
+    DO("KEYWORD", "do"),
+    ELSE("KEYWORD", "else"),
+    ELSEIF("KEYWORD", "elseif"),
+    END("KEYWORD", "end"),
+    FOR("KEYWORD", "for"),
+    FUNCTION("KEYWORD", "function"),
+    GOTO("KEYWORD", "goto"),
+    IF("KEYWORD", "if"),
+    IN("KEYWORD", "in"),
+    LOCAL("KEYWORD", "local"),
+    NOT("KEYWORD", "not"),
+    OR("KEYWORD", "or"),
+    REPEAT("KEYWORD", "repeat"),
+    RETURN("KEYWORD", "return"),
+    THEN("KEYWORD", "then"),
+    UNTIL("KEYWORD", "until"),
+    WHILE("KEYWORD", "while"),
+
+    // 运算符
+    PLUS("OPERATOR", "+"),
+    MINUS("OPERATOR", "-"),
+    STAR("OPERATOR", "*"),
+    SLASH("OPERATOR", "/"),
+    DOUBLE_SLASH("OPERATOR", "//"),
+    PERCENT("OPERATOR", "%"),
+    CARET("OPERATOR", "^"),
+    HASH("OPERATOR", "#"),
+    AMPERSAND("OPERATOR", "&"),
+    PIPE("OPERATOR", "|"),
+    TILDE("OPERATOR", "~"),
+    SHIFT_LEFT("OPERATOR", "<<"),
+    SHIFT_RIGHT("OPERATOR", ">>"),
+    EQ("OPERATOR", "=="),
+    NE("OPERATOR", "~="),
+    LE("OPERATOR", "<="),
+    GE("OPERATOR", ">="),
+    LT("OPERATOR", "<"),
+    GT("OPERATOR", ">"),
+    ASSIGN("OPERATOR", "="),
+    CONCAT("OPERATOR", ".."),
+    DOTS("OPERATOR", "..."),
+    QUESTION("OPERATOR", "?"),
+    BANG("OPERATOR", "!"),
+
+    // 符号
+    DOT("SYMBOL", "."),
+    COLON("SYMBOL", ":"),
+    DOUBLE_COLON("SYMBOL", "::"),
+    SEMICOLON("SYMBOL", ";"),
+    COMMA("SYMBOL", ","),
+    LPAREN("SYMBOL", "("),
+    RPAREN("SYMBOL", ")"),
+    LBRACE("SYMBOL", "{"),
+    RBRACE("SYMBOL", "}"),
+    LBRACKET("SYMBOL", "["),
+    RBRACKET("SYMBOL", "]"),
+
+    EOF("EOF", null);
+
+    static final TokenKind[] VALUES = values();
+
+    final String type; // 兼容旧的字符串类型，只用于错误信息和 toString
+    final String text; // 固定文本，IDENTIFIER/NUMBER/STRING/EOF 为 null
+
+    TokenKind(String type, String text) {
+        this.type = type;
+        this.text = text;
+    }
+
+    // 关键字完美哈希表：h = (首字符 * 3 + 尾字符 * 13 + 长度) & 63，对 22 个关键字没有冲突
+    private static final TokenKind[] KEYWORDS = new TokenKind[64];
+
+    static {
+        for (TokenKind kind : VALUES) {
+            if (kind.text != null && Character.isLetter(kind.text.charAt(0))) {
+                String word = kind.text;
+                int h = keywordHash(word.charAt(0), word.charAt(word.length() - 1), word.length());
+                if (KEYWORDS[h] != null) {
+                    throw new IllegalStateException("Keyword hash collision: " + word + " / " + KEYWORDS[h].text);
+                }
+                KEYWORDS[h] = kind;
+            }
+        }
+    }
+
+    private static int keywordHash(char first, char last, int length) {
+        return (first * 3 + last * 13 + length) & 63;
+    }
+
+    // 查找 [start, end) 范围内的标识符是否是关键字，不是则返回 IDENTIFIER
+    static TokenKind keyword(CharSequence input, int start, int end) {
+        int length = end - start;
+        if (length < 2 || length > 8) {
+            return IDENTIFIER;
+        }
+        TokenKind kind = KEYWORDS[keywordHash(input.charAt(start), input.charAt(end - 1), length)];
+        if (kind == null || kind.text.length() != length) {
+            return IDENTIFIER;
+        }
+        String word = kind.text;
+        for (int i = 0; i < length; i++) {
+            if (word.charAt(i) != input.charAt(start + i)) {
+                return IDENTIFIER;
+            }
+        }
+        return kind;
+    }
+}
@@ -0,0 +1,24 @@
+package top.skidder.parser;
+
+// Parser 读取 token 的来源，下标为绝对下标，超出输入时返回 EOF
+interface TokenSource {
+    TokenKind kind(int index);
+
+    String value(int index);
+
+    // token 所在的字符序列及其中的范围，字面量据此延迟解码
+    CharSequence source(int index);
+
+    int start(int index);
+
+    int end(int index);
+
+    // token 在整个输入中的起始偏移，EOF 时为输入的长度
+    int offset(int index);
+
+    // token 在整个输入中的结束偏移（不含），EOF 时为输入的长度
+    int endOffset(int index);
+
+    // 规范化标识符和短字符串用的符号池，没有时为 null
+    SymbolPool symbols();
+}
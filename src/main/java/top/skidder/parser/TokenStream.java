@@ -0,0 +1,88 @@
+package top.skidder.parser;
+
+// 流式 token 来源：按需从 Lexer 拉取 token，只用一个小环形缓冲区保存前瞻和最近消费过的 token
+final class TokenStream implements TokenSource {
+    private static final int CAPACITY = 16; // 必须是 2 的幂
+    private static final int MASK = CAPACITY - 1;
+
+    private final Lexer lexer;
+    private final TokenKind[] kinds = new TokenKind[CAPACITY];
+    private final String[] texts = new String[CAPACITY]; // 原始文本，字符串包含引号
+    private final int[] offsets = new int[CAPACITY];
+    private int count; // 已经读取的 token 数量
+    private boolean eof;
+
+    TokenStream(Lexer lexer) {
+        this.lexer = lexer;
+    }
+
+    @Override
+    public TokenKind kind(int index) {
+        if (!fill(index)) {
+            return TokenKind.EOF;
+        }
+        return kinds[index & MASK];
+    }
+
+    @Override
+    public String value(int index) {
+        if (!fill(index)) {
+            return null;
+        }
+        TokenKind kind = kinds[index & MASK];
+        if (kind.text != null) {
+            return kind.text;
+        }
+        String text = texts[index & MASK];
+        return kind == TokenKind.STRING ? Lexer.decodeString(text, 0, text.length()) : text;
+    }
+
+    @Override
+    public CharSequence source(int index) {
+        return fill(index) ? texts[index & MASK] : null;
+    }
+
+    @Override
+    public SymbolPool symbols() {
+        return lexer.symbols();
+    }
+
+    @Override
+    public int offset(int index) {
+        return fill(index) ? offsets[index & MASK] : lexer.tokenEnd();
+    }
+
+    @Override
+    public int endOffset(int index) {
+        return fill(index) ? offsets[index & MASK] + texts[index & MASK].length() : lexer.tokenEnd();
+    }
+
+    @Override
+    public int start(int index) {
+        return 0;
+    }
+
+    @Override
+    public int end(int index) {
+        return fill(index) ? texts[index & MASK].length() : 0;
+    }
+
+    // 保证 index 处的 token 已经读入，返回它是否存在
+    private boolean fill(int index) {
+        if (index < count - CAPACITY) {
+            throw new IllegalStateException("Token " + index + " is no longer buffered");
+        }
+        while (index >= count && !eof) {
+            TokenKind kind = lexer.next();
+            if (kind == TokenKind.EOF) {
+                eof = true;
+                break;
+            }
+            kinds[count & MASK] = kind;
+            texts[count & MASK] = kind.text != null ? kind.text : lexer.tokenText(kind);
+            offsets[count & MASK] = lexer.tokenStart();
+            count++;
+        }
+        return index < count;
+    }
+}
@@ -0,0 +1,106 @@
+package top.skidder.parser;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class AnalysisTest {
+    // 按遍历顺序收集函数调用的名字
+    private static final class Calls implements AnalysisPass<List<String>> {
+        @Override
+        public Collection<Class<? extends AstNode>> nodeTypes() {
+            return Collections.singletonList(Expression.FunctionCallExpression.class);
+        }
+
+        @Override
+        public List<String> begin() {
+            return new ArrayList<>();
+        }
+
+        @Override
+        public void enter(AstNode node, List<String> state) {
+            state.add(((Expression.FunctionCallExpression) node).name);
+        }
+
+        @Override
+        public List<String> merge(List<String> left, List<String> right) {
+            left.addAll(right);
+            return left;
+        }
+    }
+
+    // 语句块的最大嵌套深度，用 enter/exit 维护当前深度
+    private static final class Nesting implements AnalysisPass<int[]> {
+        @Override
+        public Collection<Class<? extends AstNode>> nodeTypes() {
+            List<Class<? extends AstNode>> types = new ArrayList<>();
+            types.add(Statement.IfStatement.class);
+            types.add(Statement.WhileStatement.class);
+            return types;
+        }
+
+        @Override
+        public int[] begin() {
+            return new int[2]; // 当前深度，最大深度
+        }
+
+        @Override
+        public void enter(AstNode node, int[] state) {
+            state[1] = Math.max(state[1], ++state[0]);
+        }
+
+        @Override
+        public void exit(AstNode node, int[] state) {
+            state[0]--;
+        }
+
+        @Override
+        public int[] merge(int[] left, int[] right) {
+            left[1] = Math.max(left[1], right[1]);
+            return left;
+        }
+    }
+
+    @Test
+    void passesShareOneTraversal() throws ParseError {
+        Calls calls = new Calls();
+        Nesting nesting = new Nesting();
+        Analysis.Results results = new Analysis(calls, nesting)
+                .run(LuaParser.parse("a()\nif x then while y do b(c()) end end\nd()"));
+        assertEquals(List.of("a", "b", "c", "d"), results.get(calls));
+        assertEquals(2, results.get(nesting)[1]);
+        assertEquals(0, results.get(nesting)[0]);
+    }
+
+    @Test
+    void filesAreMergedInOrder() throws ParseError {
+        List<List<Statement>> files = new ArrayList<>();
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            files.add(LuaParser.parse("f" + i + "()\nif x then g" + i + "() end"));
+            expected.add("f" + i);
+            expected.add("g" + i);
+        }
+        Calls calls = new Calls();
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            assertEquals(expected, new Analysis(calls).runAll(files, pool).get(calls));
+        } finally {
+            pool.shutdown();
+        }
+        assertEquals(List.of(), new Analysis(calls).runAll(new ArrayList<>()).get(calls));
+    }
+
+    @Test
+    void unknownPassIsRejected() throws ParseError {
+        Analysis.Results results = new Analysis(new Calls()).run(LuaParser.parse("a()"));
+        assertThrows(IllegalArgumentException.class, () -> results.get(new Nesting()));
+    }
+}
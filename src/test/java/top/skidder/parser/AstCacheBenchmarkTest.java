@@ -0,0 +1,49 @@
+package top.skidder.parser;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+// 冷启动时重新解析所有文件与从磁盘缓存读取的耗时对比
+@Tag(Benchmarks.TAG)
+class AstCacheBenchmarkTest {
+    private static final int FILES = 500;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void coldParseVersusCacheLoad() throws Exception {
+        List<String> sources = new ArrayList<>();
+        for (int i = 0; i < FILES; i++) {
+            sources.add("local function f" + i + "(a, b) if a > b then return a - b else return { a, b, n = " + i + " } end end\n"
+                    + Trees.assignments(100));
+        }
+        for (String source : sources) {
+            new AstCache(dir).parse(source);
+        }
+
+        double parse = Benchmarks.millis(10, 20, () -> {
+            for (String source : sources) {
+                LuaParser.parse(source);
+            }
+        });
+        // 每轮都用新的 AstCache，模拟进程重启后只有磁盘上的缓存
+        double load = Benchmarks.millis(10, 20, () -> {
+            AstCache cache = new AstCache(dir);
+            for (String source : sources) {
+                cache.parse(source);
+            }
+        });
+        Benchmarks.report(FILES + " files", "parse", parse, "cache load", load);
+
+        AstCache cache = new AstCache(dir);
+        for (String source : sources) {
+            Trees.assertSameTree(LuaParser.parse(source), cache.parse(source));
+        }
+    }
+}
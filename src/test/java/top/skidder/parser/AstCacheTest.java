@@ -0,0 +1,122 @@
+package top.skidder.parser;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AstCacheTest {
+    private static final String CODE = "local t = { x = 1, 'a', \"b\\n\" }\n" +
+            "function f(a, b) if a then return -a ^ 2 elseif not a then return #t else return nil end end\n" +
+            "for i = 1, 10, 2 do while i < 5 do i = i + 1 end end\n" +
+            "repeat g = function(x) return x .. 0x1F end until true\n" +
+            "print(f(3), t.x, [[long]], t:m(2))\n";
+
+    @TempDir
+    Path dir;
+
+    private List<Path> entries() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(path -> path.toString().endsWith(".ast")).collect(Collectors.toList());
+        }
+    }
+
+    @Test
+    void serializationRoundTrips() throws ParseError {
+        List<Statement> statements = LuaParser.parse(CODE);
+        List<Statement> read = AstSerializer.read(ByteBuffer.wrap(AstSerializer.write(statements)), null);
+        Trees.assertSameTree(statements, read);
+    }
+
+    @Test
+    void colonCallsKeepTheirImplicitSelf() throws ParseError {
+        String code = "t = { m = function(self, x) return x end }\nreturn t:m(5)";
+        List<Statement> read = AstSerializer.read(ByteBuffer.wrap(AstSerializer.write(LuaParser.parse(code))), null);
+        Statement.ReturnStatement ret = (Statement.ReturnStatement) read.get(1);
+        Expression.MethodCallExpression call = (Expression.MethodCallExpression) ret.getReturnValues().get(0);
+        assertEquals(1, call.selfArguments());
+        assertEquals(2, call.childCount());
+        assertEquals(5L, LuaScript.compile(read).execute()[0]);
+    }
+
+    @Test
+    void loneSurrogatesSurviveTheCache() throws Exception {
+        String code = "x = \"a\\u{D800}b\"";
+        String value = ((Expression.LiteralExpression) ((Statement.AssignmentStatement) LuaParser.parse(code).get(0)).value).getValue();
+        assertEquals("a\uD800b", value);
+        List<Statement> read = AstSerializer.read(ByteBuffer.wrap(AstSerializer.write(LuaParser.parse(code))), null);
+        assertEquals(value, ((Expression.LiteralExpression) ((Statement.AssignmentStatement) read.get(0)).value).getValue());
+
+        new AstCache(dir).parse(code);
+        List<Statement> cached = new AstCache(dir).parse(code);
+        assertEquals(value, ((Expression.LiteralExpression) ((Statement.AssignmentStatement) cached.get(0)).value).getValue());
+    }
+
+    @Test
+    void corruptDataIsRejected() throws ParseError {
+        byte[] bytes = AstSerializer.write(LuaParser.parse(CODE));
+        bytes[0] ^= 1;
+        assertThrows(IllegalArgumentException.class, () -> AstSerializer.read(ByteBuffer.wrap(bytes), null));
+    }
+
+    @Test
+    void secondParseLoadsFromDisk() throws Exception {
+        List<Statement> parsed = new AstCache(dir).parse(CODE);
+        assertEquals(1, entries().size());
+        List<Statement> loaded = new AstCache(dir).parse(CODE);
+        Trees.assertSameTree(parsed, loaded);
+        Trees.assertSameTree(LuaParser.parse(CODE), loaded);
+    }
+
+    @Test
+    void corruptEntryIsRewritten() throws Exception {
+        new AstCache(dir).parse(CODE);
+        Path entry = entries().get(0);
+        Files.write(entry, "garbage".getBytes(StandardCharsets.US_ASCII));
+        Trees.assertSameTree(LuaParser.parse(CODE), new AstCache(dir).parse(CODE));
+        assertTrue(Files.size(entry) > "garbage".length());
+    }
+
+    @Test
+    void deepTreesAreCachedOnSmallStacks() throws Exception {
+        StringBuilder code = new StringBuilder("x = y");
+        for (int i = 0; i < 100000; i++) {
+            code.append(" + y");
+        }
+        String source = code.toString();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread thread = new Thread(null, () -> {
+            try {
+                List<Statement> parsed = new AstCache(dir).parse(source);
+                List<Statement> loaded = new AstCache(dir).parse(source);
+                assertEquals(1, entries().size());
+                Trees.assertSameTree(parsed, loaded);
+                Trees.assertSameTree(parsed, AstSerializer.read(ByteBuffer.wrap(AstSerializer.write(parsed)), null));
+            } catch (Throwable t) {
+                failure.set(t);
+            }
+        }, "small-stack", 256 * 1024);
+        thread.start();
+        thread.join();
+        assertNull(failure.get());
+    }
+
+    @Test
+    void parseErrorsAreNotCached() throws Exception {
+        assertThrows(ParseError.class, () -> new AstCache(dir).parse("x = = 1"));
+        assertTrue(entries().isEmpty());
+    }
+}
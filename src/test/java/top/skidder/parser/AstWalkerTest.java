@@ -0,0 +1,135 @@
+package top.skidder.parser;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AstWalkerTest {
+    // 记录进入和退出的节点类型
+    private static final class Recorder extends AstWalker {
+        final List<String> events = new ArrayList<>();
+
+        @Override
+        protected boolean enter(AstNode node) {
+            events.add("+" + node.getClass().getSimpleName());
+            return !(node instanceof Expression.AnonymousFunctionExpression);
+        }
+
+        @Override
+        protected void exit(AstNode node) {
+            events.add("-" + node.getClass().getSimpleName());
+        }
+    }
+
+    @Test
+    void visitsInPreAndPostOrder() throws ParseError {
+        Recorder recorder = new Recorder();
+        recorder.walk(LuaParser.parse("x = a + 1\nf = function() y = 2 end"));
+        assertEquals(List.of(
+                "+AssignmentStatement", "+BinaryExpression", "+VariableExpression", "-VariableExpression",
+                "+NumberLiteralExpression", "-NumberLiteralExpression", "-BinaryExpression", "-AssignmentStatement",
+                "+AssignmentStatement", "+AnonymousFunctionExpression", "-AnonymousFunctionExpression", "-AssignmentStatement"
+        ), recorder.events);
+    }
+
+    @Test
+    void walksDeepTreesWithoutRecursion() throws ParseError {
+        StringBuilder code = new StringBuilder("x = 1");
+        for (int i = 0; i < 100000; i++) {
+            code.append(" + 1");
+        }
+        int[] maxDepth = new int[1];
+        int[] count = new int[1];
+        new AstWalker() {
+            @Override
+            protected boolean enter(AstNode node) {
+                count[0]++;
+                maxDepth[0] = Math.max(maxDepth[0], depth());
+                return true;
+            }
+        }.walk(LuaParser.parse(code));
+        assertEquals(200002, count[0]);
+        assertEquals(100001, maxDepth[0]);
+    }
+
+    @Test
+    void ancestorsAreAvailable() throws ParseError {
+        List<String> parents = new ArrayList<>();
+        new AstWalker() {
+            @Override
+            protected boolean enter(AstNode node) {
+                if (node instanceof Expression.VariableExpression) {
+                    parents.add(ancestor(depth() - 1).getClass().getSimpleName() + "/" + ancestor(0).getClass().getSimpleName());
+                    assertThrows(IndexOutOfBoundsException.class, () -> ancestor(depth()));
+                }
+                return true;
+            }
+        }.walk(LuaParser.parse("while a do print(-b) end"));
+        assertEquals(List.of("WhileStatement/WhileStatement", "UnaryExpression/WhileStatement"), parents);
+    }
+
+    @Test
+    void elseifBranchesAreVisitedInSourceOrder() throws ParseError {
+        String code = "if a then b = 1 elseif c then d = 2 e = 3 elseif f then g = 4 else h = 5 end";
+        List<Integer> offsets = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        new AstWalker() {
+            @Override
+            protected boolean enter(AstNode node) {
+                offsets.add(node.getOffset());
+                if (node instanceof Expression.VariableExpression) {
+                    names.add(((Expression.VariableExpression) node).getName());
+                } else if (node instanceof Statement.AssignmentStatement) {
+                    names.add(((Statement.AssignmentStatement) node).variable);
+                }
+                return true;
+            }
+        }.walk(LuaParser.parse(code));
+        assertEquals(List.of("a", "b", "c", "d", "e", "f", "g", "h"), names);
+        for (int i = 1; i < offsets.size(); i++) {
+            assertTrue(offsets.get(i - 1) < offsets.get(i), offsets.toString());
+        }
+    }
+
+    @Test
+    void visitorDispatchesOnNodeType() throws ParseError {
+        AstVisitor<String, Integer> visitor = new AstVisitor<String, Integer>() {
+            @Override
+            public String visitNode(AstNode node, Integer context) {
+                return "node" + context;
+            }
+
+            @Override
+            public String visitBinary(Expression.BinaryExpression node, Integer context) {
+                return node.operator + context;
+            }
+        };
+        Statement.AssignmentStatement statement = (Statement.AssignmentStatement) LuaParser.parse("x = a * b").get(0);
+        assertEquals("node1", statement.accept(visitor, 1));
+        assertEquals("*2", statement.value.accept(visitor, 2));
+        assertEquals("node3", statement.value.child(0).accept(visitor, 3));
+    }
+
+    @Test
+    void nodesFromOutsideThePackageFallBackToVisitNode() {
+        // 以前 Expression 不是抽象类，外部可以直接创建或者继承它，不需要实现 accept
+        Expression custom = new Expression() {
+        };
+        assertEquals("node4", custom.accept(new AstVisitor<String, Integer>() {
+            @Override
+            public String visitNode(AstNode node, Integer context) {
+                return "node" + context;
+            }
+        }, 4));
+        assertEquals(0, new Expression().childCount());
+
+        Recorder recorder = new Recorder();
+        recorder.walk(new Statement.ExpressionStatement(custom));
+        assertEquals(4, recorder.events.size());
+    }
+}
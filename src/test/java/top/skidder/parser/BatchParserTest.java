@@ -0,0 +1,91 @@
+package top.skidder.parser;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BatchParserTest {
+    @TempDir
+    Path dir;
+
+    private List<Path> writeScripts(int count) throws IOException {
+        List<Path> paths = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Path file = dir.resolve("script" + i + ".lua");
+            Files.write(file, Trees.assignments(i + 1).getBytes(StandardCharsets.US_ASCII));
+            paths.add(file);
+        }
+        return paths;
+    }
+
+    @Test
+    void everyFileIsReported() throws Exception {
+        List<Path> paths = writeScripts(20);
+        Map<Path, ParsedFile> results = new HashMap<>();
+        LuaParser.parseAll(paths, file -> results.put(file.getPath(), file));
+        assertEquals(20, results.size());
+        for (int i = 0; i < paths.size(); i++) {
+            ParsedFile file = results.get(paths.get(i));
+            assertTrue(file.isSuccess(), file.toString());
+            assertEquals(i + 1, file.getStatements().size());
+        }
+    }
+
+    @Test
+    void failuresAreReportedPerFile() throws Exception {
+        List<Path> paths = writeScripts(2);
+        Path broken = dir.resolve("broken.lua");
+        Files.write(broken, "x = = 1".getBytes(StandardCharsets.US_ASCII));
+        paths.add(broken);
+        paths.add(dir.resolve("missing.lua"));
+        Map<Path, ParsedFile> results = new HashMap<>();
+        LuaParser.parseAll(paths, file -> results.put(file.getPath(), file));
+        assertEquals(4, results.size());
+        assertTrue(results.get(paths.get(0)).isSuccess());
+        assertInstanceOf(ParseError.class, results.get(broken).getError());
+        assertInstanceOf(NoSuchFileException.class, results.get(paths.get(3)).getError());
+    }
+
+    @Test
+    void inFlightFilesAreBounded() throws Exception {
+        List<Path> paths = writeScripts(30);
+        AtomicInteger submitted = new AtomicInteger();
+        AtomicInteger maxPending = new AtomicInteger();
+        int[] delivered = new int[1];
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            LuaParser.parseAll(paths, new SymbolPool(), task -> {
+                maxPending.accumulateAndGet(submitted.incrementAndGet() - delivered[0], Math::max);
+                executor.execute(task);
+            }, 3, file -> delivered[0]++);
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(30, delivered[0]);
+        assertTrue(maxPending.get() <= 3, "pending " + maxPending.get());
+    }
+
+    @Test
+    void rejectsNonPositiveLimit() {
+        assertThrows(IllegalArgumentException.class,
+                () -> LuaParser.parseAll(new ArrayList<>(), new SymbolPool(), Runnable::run, 0, file -> {
+                }));
+    }
+}
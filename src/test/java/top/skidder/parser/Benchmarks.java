@@ -0,0 +1,32 @@
+package top.skidder.parser;
+
+// 测试用：简单的计时工具，先预热再取多轮中最快的一轮，结果只用于比较同一台机器上的两种做法
+final class Benchmarks {
+    static final String TAG = "benchmark";
+
+    private Benchmarks() {
+    }
+
+    interface Task {
+        void run() throws Exception;
+    }
+
+    // 每轮运行一次 task 的最短耗时，单位毫秒
+    static double millis(int warmups, int rounds, Task task) throws Exception {
+        for (int i = 0; i < warmups; i++) {
+            task.run();
+        }
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < rounds; i++) {
+            long start = System.nanoTime();
+            task.run();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best / 1e6;
+    }
+
+    static void report(String name, String baseline, double baselineMillis, String candidate, double candidateMillis) {
+        System.out.printf("%s: %s %.2f ms, %s %.2f ms (%.1fx)%n", name, baseline, baselineMillis, candidate, candidateMillis,
+                baselineMillis / candidateMillis);
+    }
+}
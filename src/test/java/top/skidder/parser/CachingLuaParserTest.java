@@ -0,0 +1,58 @@
+package top.skidder.parser;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CachingLuaParserTest {
+    @Test
+    void identicalSourcesShareOneTree() throws ParseError {
+        CachingLuaParser parser = new CachingLuaParser(1 << 20);
+        List<Statement> first = parser.parse("x = 1 + 2");
+        assertSame(first, parser.parse(new StringBuilder("x = 1").append(" + 2")));
+        assertNotSame(first, parser.parse("x = 1 + 3"));
+        assertEquals(2, parser.size());
+        Trees.assertSameTree(LuaParser.parse("x = 1 + 2"), first);
+    }
+
+    @Test
+    void failuresAreNotCached() {
+        CachingLuaParser parser = new CachingLuaParser(1 << 20);
+        assertThrows(ParseError.class, () -> parser.parse("x = = 1"));
+        assertThrows(ParseError.class, () -> parser.parse("x = = 1"));
+        assertEquals(0, parser.size());
+        assertEquals(0, parser.weight());
+    }
+
+    @Test
+    void leastRecentlyUsedEntryIsEvicted() throws ParseError {
+        CachingLuaParser probe = new CachingLuaParser(Long.MAX_VALUE);
+        probe.parse("a = 1");
+        long entryWeight = probe.weight();
+
+        CachingLuaParser parser = new CachingLuaParser(entryWeight * 2);
+        List<Statement> a = parser.parse("a = 1");
+        List<Statement> b = parser.parse("b = 1");
+        parser.parse("a = 1");
+        parser.parse("c = 1");
+        assertEquals(2, parser.size());
+        assertEquals(entryWeight * 2, parser.weight());
+        assertSame(a, parser.parse("a = 1"));
+        assertNotSame(b, parser.parse("b = 1"));
+    }
+
+    @Test
+    void clearDropsEverything() throws ParseError {
+        CachingLuaParser parser = new CachingLuaParser(1 << 20);
+        List<Statement> first = parser.parse("x = 1");
+        parser.clear();
+        assertEquals(0, parser.size());
+        assertEquals(0, parser.weight());
+        assertNotSame(first, parser.parse("x = 1"));
+    }
+}
@@ -0,0 +1,91 @@
+package top.skidder.parser;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class ConstantFolderTest {
+    // 折叠后的结果与直接解析 expected 得到的语法树相同
+    private static void assertFolds(String expected, String code) throws ParseError {
+        assertEquals(LuaParser.parse(expected).toString(), ConstantFolder.fold(LuaParser.parse(code)).toString());
+    }
+
+    @Test
+    void foldsArithmeticAndConcatenation() throws ParseError {
+        assertFolds("x = 86400", "x = 60 * 60 * 24");
+        assertFolds("x = 0.5", "x = 1 / 2");
+        assertFolds("x = 3", "x = 7 // 2");
+        assertFolds("x = 7", "x = 3 | 4 ~ 1 & 3");
+        assertFolds("x = 'prefix_name'", "x = \"prefix\" .. \"_\" .. \"name\"");
+        assertFolds("x = 'a1'", "x = 'a' .. 1");
+        assertFolds("x = true", "x = 1 < 2 and not nil");
+    }
+
+    @Test
+    void negativeResultsBecomeLiterals() throws ParseError {
+        Expression value = ((Statement.AssignmentStatement) LuaParser.parse("x = -(2 + 3)").get(0)).value;
+        Expression.NumberLiteralExpression folded = (Expression.NumberLiteralExpression) ConstantFolder.fold(value);
+        assertEquals(-5, folded.longValue());
+    }
+
+    @Test
+    void keepsNonConstantAndFaultingOperations() throws ParseError {
+        assertFolds("x = y * 3", "x = y * (1 + 2)");
+        assertFolds("x = 1 // 0", "x = 1 // 0");
+        assertFolds("x = 1.5 | 1", "x = 1.5 | 1");
+        assertFolds("x = 'a' + 1", "x = 'a' + 1");
+        assertFolds("x = y", "x = false or y");
+        assertFolds("x = nil", "x = nil and y");
+    }
+
+    @Test
+    void logicalOperatorsKeepTruncatingCalls() throws ParseError {
+        String code = "local function f() return 1, 2, 3 end\n" +
+                "local t = { m = function(self) return 4, 5 end }\n" +
+                "return true and f(), nil or t:m(), true and f()";
+        List<Statement> statements = LuaParser.parse(code);
+        Object[] expected = LuaScript.compile(statements).execute();
+        assertArrayEquals(new Object[]{1L, 4L, 1L}, expected);
+        assertArrayEquals(expected, LuaScript.compile(ConstantFolder.fold(statements)).execute());
+        assertFolds("x = y", "x = true and y");
+    }
+
+    @Test
+    void stringsFoldTheSameWayTheyRun() throws ParseError {
+        String code = "return #'héllo', 'é' < 'z', 'z' <= 'é', #'\\xff\\65'";
+        List<Statement> statements = LuaParser.parse(code);
+        Object[] expected = LuaScript.compile(statements).execute();
+        assertArrayEquals(new Object[]{5L, false, true, 2L}, expected);
+        assertArrayEquals(expected, LuaScript.compile(ConstantFolder.fold(statements)).execute());
+        assertFolds("x = 5", "x = #'héllo'");
+        assertFolds("x = false", "x = 'é' < 'z'");
+    }
+
+    @Test
+    void prunesConstantConditions() throws ParseError {
+        assertFolds("a = 1\nc = 3", "a = 1\nif 1 > 2 then b = 2 end\nc = 3");
+        assertFolds("b = 2", "if 'x' then b = 2 else c = 3 end");
+        assertFolds("if y then b = 2 else c = 3 end", "if false then a = 1 elseif y then b = 2 elseif true then c = 3 else d = 4 end");
+        assertFolds("if true then local z = 1 end", "if 1 == 1 then local z = 1 end");
+    }
+
+    @Test
+    void unchangedTreesAreShared() throws ParseError {
+        List<Statement> statements = LuaParser.parse("x = y + 1\nwhile a do f(b) end");
+        List<Statement> folded = ConstantFolder.fold(statements);
+        assertSame(statements.get(0), folded.get(0));
+        assertSame(statements.get(1), folded.get(1));
+    }
+
+    @Test
+    void foldedNodesKeepSourceRange() throws ParseError {
+        Statement.AssignmentStatement statement = (Statement.AssignmentStatement) LuaParser.parse("x = 2 * 3").get(0);
+        Expression folded = ConstantFolder.fold(statement.value);
+        assertEquals(statement.value.getOffset(), folded.getOffset());
+        assertEquals(statement.value.getEndOffset(), folded.getEndOffset());
+    }
+}
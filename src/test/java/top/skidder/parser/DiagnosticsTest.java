@@ -0,0 +1,52 @@
+package top.skidder.parser;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DiagnosticsTest {
+    @Test
+    void validCodeHasNoDiagnostics() throws ParseError {
+        String code = "local a = 1\nprint(a)";
+        ParseResult result = LuaParser.parseWithDiagnostics(code);
+        assertFalse(result.hasErrors());
+        Trees.assertSameTree(LuaParser.parse(code), result.getStatements());
+    }
+
+    @Test
+    void reportsEveryErrorInOnePass() {
+        String code = "a = 1\nb = = 2\nlocal c = 3\nd = 'open\nlocal e = 5\nlocal f = )\n";
+        ParseResult result = LuaParser.parseWithDiagnostics(code);
+        List<Diagnostic> diagnostics = result.getDiagnostics();
+        assertTrue(diagnostics.size() >= 3, diagnostics.toString());
+        assertEquals(code.indexOf("= 2"), diagnostics.get(0).getOffset());
+        assertTrue(diagnostics.stream().anyMatch(d -> d.getOffset() == code.indexOf("'open") && d.getMessage().contains("Unterminated string")), diagnostics.toString());
+        assertTrue(diagnostics.stream().anyMatch(d -> d.getOffset() == code.indexOf(')')), diagnostics.toString());
+        for (int i = 1; i < diagnostics.size(); i++) {
+            assertTrue(diagnostics.get(i - 1).getOffset() <= diagnostics.get(i).getOffset(), diagnostics.toString());
+        }
+    }
+
+    @Test
+    void validStatementsSurviveErrors() {
+        // 出错后跳到下一个语句关键字继续解析
+        ParseResult result = LuaParser.parseWithDiagnostics("a = 1\nb = = 2\nlocal c = 3\nif x then y = end\nreturn c\n");
+        assertEquals(2, result.getDiagnostics().size(), result.getDiagnostics().toString());
+        List<Statement> statements = result.getStatements();
+        assertEquals("a", assertInstanceOf(Statement.AssignmentStatement.class, statements.get(0)).variable);
+        assertInstanceOf(Statement.LocalDeclarationStatement.class, statements.get(1));
+        assertInstanceOf(Statement.ReturnStatement.class, statements.get(statements.size() - 1));
+    }
+
+    @Test
+    void lineTableLocatesDiagnostics() {
+        ParseResult result = LuaParser.parseWithDiagnostics("x = 1\n\ny = +\n");
+        Diagnostic diagnostic = result.getDiagnostics().get(0);
+        assertEquals(3, result.getLineTable().line(diagnostic.getOffset()));
+    }
+}
@@ -0,0 +1,112 @@
+package top.skidder.parser;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FlatAstTest {
+    private static final String CODE = "local t = { x = 1, 'a' }\n" +
+            "function f(a, b) if a then return -a elseif b then return b else return true end end\n" +
+            "for k, v in pairs(t) do print(k, v) end\n" +
+            "print(obj:method(1).field, nil)\n";
+
+    @Test
+    void roundTripsToTheSameTree() throws ParseError {
+        List<Statement> statements = LuaParser.parse(CODE);
+        Trees.assertSameTree(statements, FlatAst.of(statements).toStatements());
+        Trees.assertSameTree(statements, LuaParser.parseFlat(CODE).toStatements());
+    }
+
+    @Test
+    void colonCallsKeepTheirImplicitSelf() throws ParseError {
+        String code = "t = { m = function(self, x) return x end }\nreturn t:m(5)";
+        FlatAst ast = LuaParser.parseFlat(code);
+        int call = ast.firstChild(ast.nextSibling(ast.firstChild(ast.root())));
+        assertEquals(FlatAst.COLON_CALL, ast.kind(call));
+        assertEquals(1, ast.childCount(ast.child(call, 1)));
+
+        List<Statement> statements = ast.toStatements();
+        Trees.assertSameTree(LuaParser.parse(code), statements);
+        Expression.MethodCallExpression method = (Expression.MethodCallExpression)
+                ((Statement.ReturnStatement) statements.get(1)).getReturnValues().get(0);
+        assertEquals(1, method.selfArguments());
+        assertEquals(5L, LuaScript.compile(statements).execute()[0]);
+    }
+
+    @Test
+    void nodesAreLaidOutInPreorder() throws ParseError {
+        FlatAst ast = LuaParser.parseFlat("x = 1 + y");
+        int root = ast.root();
+        assertEquals(FlatAst.CHUNK, ast.kind(root));
+        assertEquals(1, ast.childCount(root));
+
+        int assignment = ast.firstChild(root);
+        assertEquals(FlatAst.ASSIGNMENT, ast.kind(assignment));
+        assertEquals("x", ast.text(assignment));
+        assertEquals(0, ast.offset(assignment));
+
+        int binary = ast.child(assignment, 0);
+        assertEquals(FlatAst.BINARY, ast.kind(binary));
+        assertEquals("+", ast.text(binary));
+        assertEquals(FlatAst.NUMBER, ast.kind(ast.child(binary, 0)));
+        int variable = ast.child(binary, 1);
+        assertEquals(FlatAst.VARIABLE, ast.kind(variable));
+        assertEquals("y", ast.text(variable));
+        assertEquals(-1, ast.nextSibling(variable));
+        assertEquals(-1, ast.child(binary, 2));
+
+        assertEquals(ast.size(), ast.subtreeEnd(root));
+        assertEquals(variable + 1, ast.subtreeEnd(binary));
+    }
+
+    @Test
+    void booleanValuesAreStoredInline() {
+        List<Statement> statements = Collections.singletonList(
+                new Statement.AssignmentStatement("x", new Expression.BooleanLiteralExpression(true)));
+        FlatAst ast = FlatAst.of(statements);
+        int literal = ast.child(ast.firstChild(ast.root()), 0);
+        assertEquals(FlatAst.BOOLEAN, ast.kind(literal));
+        assertEquals(1, ast.value(literal));
+        assertNull(ast.text(literal));
+        Trees.assertSameTree(statements, ast.toStatements());
+    }
+
+    @Test
+    void everySubtreeIsContiguous() throws ParseError {
+        FlatAst ast = LuaParser.parseFlat(CODE);
+        for (int node = 0; node < ast.size(); node++) {
+            int end = ast.subtreeEnd(node);
+            for (int child = ast.firstChild(node); child >= 0; child = ast.nextSibling(child)) {
+                assertTrue(child > node && child < end);
+            }
+        }
+    }
+
+    @Test
+    void deepChainsConvertOnSmallStacks() throws Exception {
+        StringBuilder code = new StringBuilder("x = y");
+        for (int i = 0; i < 100000; i++) {
+            code.append(" + y");
+        }
+        String source = code.toString();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread thread = new Thread(null, () -> {
+            try {
+                FlatAst ast = LuaParser.parseFlat(source);
+                assertEquals(ast.size(), ast.subtreeEnd(ast.root()));
+                Trees.assertSameTree(LuaParser.parse(source), ast.toStatements());
+            } catch (Throwable t) {
+                failure.set(t);
+            }
+        }, "small-stack", 256 * 1024);
+        thread.start();
+        thread.join();
+        assertNull(failure.get());
+    }
+}
@@ -0,0 +1,56 @@
+package top.skidder.parser;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IncrementalTest {
+    // 增量结果必须与直接解析修改后的源码一致
+    private static ParseResult edit(ParseResult previous, int offset, int removed, String inserted) {
+        ParseResult result = LuaParser.reparse(previous, offset, removed, inserted);
+        ParseResult full = LuaParser.parseWithDiagnostics(result.getSource());
+        assertEquals(full.getSource().toString(), result.getSource().toString());
+        assertEquals(full.getStatements().toString(), result.getStatements().toString());
+        assertEquals(full.getDiagnostics().toString(), result.getDiagnostics().toString());
+        return result;
+    }
+
+    @Test
+    void reusesStatementsAfterTheEdit() {
+        String code = Trees.assignments(50);
+        ParseResult previous = LuaParser.parseWithDiagnostics(code);
+        int offset = code.indexOf("v10 = 10") + "v10 = ".length();
+        ParseResult result = edit(previous, offset, 2, "12345");
+        assertSame(previous.getStatements().get(0), result.getStatements().get(0));
+        assertSame(previous.getStatements().get(49), result.getStatements().get(49));
+        int shifted = result.getStatements().get(49).getOffset() + result.getOffsetShift(49);
+        assertEquals(result.getSource().toString().indexOf("v49 ="), shifted);
+    }
+
+    @Test
+    void editsThatChangeStatementBoundaries() {
+        String code = "a = 1\nfunction f()\n  c = 1\nend\nb = 2\n";
+        ParseResult result = edit(LuaParser.parseWithDiagnostics(code), code.indexOf("end"), 3, "");
+        assertTrue(result.hasErrors());
+        result = edit(result, result.getSource().length(), 0, "end\n");
+        assertFalse(result.hasErrors());
+        edit(result, 0, 0, "--[[ ");
+    }
+
+    @Test
+    void editsInsideLongComments() {
+        String code = "--[[ open\nx = 1\n]]\ny = 2\n";
+        ParseResult result = edit(LuaParser.parseWithDiagnostics(code), code.indexOf("]]"), 2, "");
+        edit(result, code.indexOf("]]"), 0, "]]");
+    }
+
+    @Test
+    void rejectsEditsOutsideTheSource() {
+        ParseResult previous = LuaParser.parseWithDiagnostics("x = 1");
+        assertThrows(IndexOutOfBoundsException.class, () -> LuaParser.reparse(previous, 3, 5, ""));
+    }
+}
@@ -0,0 +1,50 @@
+package top.skidder.parser;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class LazyParsingTest {
+    private static final String CODE = "function outer(a)\n" +
+            "  local inner = function(b) if b then x = b end end\n" +
+            "  while a do a = a - 1 end\n" +
+            "end\n" +
+            "y = outer(3)\n";
+
+    private static Expression.FunctionDefinitionExpression definition(List<Statement> statements) {
+        Statement.ExpressionStatement statement = assertInstanceOf(Statement.ExpressionStatement.class, statements.get(0));
+        return assertInstanceOf(Expression.FunctionDefinitionExpression.class, statement.getExpression());
+    }
+
+    @Test
+    void bodiesAreDeferred() throws ParseError {
+        List<Statement> statements = LuaParser.parseLazy(CODE);
+        assertEquals(2, statements.size());
+        assertInstanceOf(LazyBody.class, definition(statements).body);
+    }
+
+    @Test
+    void lazyBodiesMatchEagerParse() throws ParseError {
+        List<Statement> lazy = LuaParser.parseLazy(CODE);
+        List<Statement> eager = LuaParser.parse(CODE);
+        assertEquals(eager.toString(), lazy.toString());
+        Trees.assertSameTree(eager, lazy);
+    }
+
+    @Test
+    void bodyErrorsSurfaceOnFirstAccess() throws ParseError {
+        List<Statement> statements = LuaParser.parseLazy("function f() x = = 1 end\n");
+        List<Statement> body = definition(statements).body;
+        IllegalStateException error = assertThrows(IllegalStateException.class, body::size);
+        assertInstanceOf(ParseError.class, error.getCause());
+    }
+
+    @Test
+    void unbalancedBodyIsRejectedUpFront() {
+        assertThrows(ParseError.class, () -> LuaParser.parseLazy("function f() if x then y = 1 end\n"));
+    }
+}
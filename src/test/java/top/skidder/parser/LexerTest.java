@@ -0,0 +1,127 @@
+package top.skidder.parser;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LexerTest {
+    private static List<TokenKind> kinds(String code) {
+        Lexer lexer = new Lexer(code);
+        List<TokenKind> kinds = new ArrayList<>();
+        for (TokenKind kind = lexer.next(); kind != TokenKind.EOF; kind = lexer.next()) {
+            kinds.add(kind);
+        }
+        return kinds;
+    }
+
+    @Test
+    void everyKeywordIsRecognized() {
+        for (TokenKind kind : TokenKind.VALUES) {
+            if (kind.text != null && Character.isLetter(kind.text.charAt(0))) {
+                assertEquals(kind, TokenKind.keyword(kind.text, 0, kind.text.length()), kind.text);
+            }
+        }
+    }
+
+    @Test
+    void wordsCloseToKeywordsAreIdentifiers() {
+        for (String word : new String[]{"ends", "iff", "nill", "Then", "local_", "do1", "whilE", "x", "elsif", "functions"}) {
+            assertEquals(TokenKind.IDENTIFIER, TokenKind.keyword(word, 0, word.length()), word);
+        }
+    }
+
+    @Test
+    void tokenKinds() {
+        List<TokenKind> expected = new ArrayList<>();
+        expected.add(TokenKind.LOCAL);
+        expected.add(TokenKind.IDENTIFIER);
+        expected.add(TokenKind.ASSIGN);
+        expected.add(TokenKind.NUMBER);
+        expected.add(TokenKind.DOUBLE_SLASH);
+        expected.add(TokenKind.NUMBER);
+        expected.add(TokenKind.CONCAT);
+        expected.add(TokenKind.STRING);
+        expected.add(TokenKind.NE);
+        expected.add(TokenKind.NIL);
+        expected.add(TokenKind.AND);
+        expected.add(TokenKind.TRUE);
+        assertEquals(expected, kinds("local x = 0x1F // 2.5e3 .. 'a' ~= nil and true -- comment"));
+    }
+
+    private static String decode(String literal) {
+        Lexer lexer = new Lexer(literal);
+        assertEquals(TokenKind.STRING, lexer.next());
+        return Lexer.decodeString(literal, 0, literal.length());
+    }
+
+    @Test
+    void escapes() {
+        assertEquals("\u0007\b\f\n\r\t\u000B\\\"'", decode("\"\\a\\b\\f\\n\\r\\t\\v\\\\\\\"\\'\""));
+        assertEquals("A\u00ff\u0000", decode("'\\x41\\xfF\\0'"));
+        assertEquals("\u00ff9", decode("'\\2559'"));
+        assertEquals("a\nb", decode("'a\\\r\nb'"));
+        assertEquals("ab", decode("'a\\z  \n\t b'"));
+        assertEquals("\u00e9\ud83d\ude00", decode("'\\u{E9}\\u{0000001F600}'"));
+        assertEquals(new String(Character.toChars(Character.MAX_CODE_POINT)), decode("'\\u{10FFFF}'"));
+    }
+
+    @Test
+    void invalidEscapesAreLexerErrors() {
+        String[] invalid = {"'\\256'", "'\\999'", "'\\u{110000}'", "'\\u{FFFFFFFFFFFF}'", "'\\u{}'", "'\\u{12'", "'\\u12'", "'\\x4'", "'\\q'"};
+        for (String literal : invalid) {
+            String code = "x = " + literal;
+            LexerError error = assertThrows(LexerError.class, () -> new Lexer(code).tokenize(), literal);
+            assertEquals(4, error.offset, literal);
+        }
+    }
+
+    @Test
+    void invalidEscapesFailWhileParsing() {
+        // 与其他词法错误一样在扫描到字符串时报告，不会等到解码或构造错误信息时才失败
+        for (String code : new String[]{"x = \"\\u{110000}\"", "x = = \"\\u{110000}\"", "x = \"\\999\" +"}) {
+            LexerError error = assertThrows(LexerError.class, () -> LuaParser.parse(code), code);
+            assertEquals(code.indexOf('"'), error.offset, code);
+        }
+        ParseResult result = LuaParser.parseWithDiagnostics("x = '\\300'\ny = 1");
+        assertTrue(result.hasErrors());
+        assertEquals(4, result.getDiagnostics().get(0).getOffset());
+        assertTrue(result.getDiagnostics().get(0).getMessage().contains("Decimal escape too large"));
+    }
+
+    @Test
+    void longBrackets() {
+        assertEquals("a]]b]=]c", decode("[==[a]]b]=]c]==]"));
+        assertEquals("", decode("[[]]"));
+        assertEquals("x", decode("[=[\r\nx]=]"));
+        List<TokenKind> expected = new ArrayList<>();
+        expected.add(TokenKind.IDENTIFIER);
+        expected.add(TokenKind.IDENTIFIER);
+        assertEquals(expected, kinds("a --[==[ ]] ]=] \n ]==] b --[ not long\n"));
+    }
+
+    @Test
+    void lineCommentsEndAtAnyLineBreak() throws Exception {
+        List<TokenKind> expected = new ArrayList<>();
+        expected.add(TokenKind.IDENTIFIER);
+        expected.add(TokenKind.IDENTIFIER);
+        for (String code : new String[]{"a -- c\nb", "a -- c\rb", "a -- c\r\nb", "a -- c\n\rb"}) {
+            assertEquals(expected, kinds(code), code);
+        }
+        String code = "-- first\rx = 1\r-- second\ry = 2";
+        assertEquals(2, LuaParser.parse(code).size());
+        assertEquals(2, LuaParser.parse(new StringReader(code)).size());
+    }
+
+    @Test
+    void unterminatedLongBracketsAreErrors() {
+        for (String code : new String[]{"x = [==[ ]=] ]]", "--[=[ comment ]]", "x = [=", "x = [=x"}) {
+            assertThrows(LexerError.class, () -> new Lexer(code).tokenize(), code);
+        }
+    }
+}
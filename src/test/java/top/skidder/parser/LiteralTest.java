@@ -0,0 +1,80 @@
+package top.skidder.parser;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LiteralTest {
+    @TempDir
+    Path dir;
+
+    private static Expression value(String expression) throws ParseError {
+        Statement.AssignmentStatement assignment = (Statement.AssignmentStatement) LuaParser.parse("x = " + expression).get(0);
+        return assignment.value;
+    }
+
+    private static Expression.NumberLiteralExpression number(String text) throws ParseError {
+        return assertInstanceOf(Expression.NumberLiteralExpression.class, value(text));
+    }
+
+    @Test
+    void stringsAreDecodedOnceOnDemand() throws ParseError {
+        Expression.LiteralExpression literal = (Expression.LiteralExpression) value("'a\\tb'");
+        assertEquals("STRING", literal.type);
+        assertEquals("a\tb", literal.getValue());
+        assertSame(literal.getValue(), literal.getValue());
+        assertEquals("x\ny", ((Expression.LiteralExpression) value("[[\nx\ny]]")).getValue());
+    }
+
+    @Test
+    void integers() throws ParseError {
+        Expression.NumberLiteralExpression number = number("42");
+        assertTrue(number.isInteger());
+        assertEquals(42, number.longValue());
+        assertEquals("42", number.getValue());
+        assertEquals(255, number("0xFF").longValue());
+        // 十六进制整数按 2^64 回绕，十进制整数溢出时变成浮点数
+        assertEquals(-1, number("0xffffffffffffffff").longValue());
+        assertFalse(number("9223372036854775808").isInteger());
+        assertEquals(9223372036854775807L, number("9223372036854775807").longValue());
+    }
+
+    @Test
+    void floats() throws ParseError {
+        assertFalse(number("1.0").isInteger());
+        assertEquals(1.5e-3, number("1.5e-3").doubleValue());
+        assertEquals(0.5, number(".5").doubleValue());
+        assertEquals(12.0, number("0x1.8p3").doubleValue());
+        assertEquals(2.0, number("0x2.").doubleValue());
+    }
+
+    @Test
+    void mutatingTheInputDoesNotChangeTheTree() throws ParseError {
+        StringBuilder code = new StringBuilder("local x = \"hello\"\ny = 12");
+        List<Statement> statements = LuaParser.parse(code);
+        String expected = LuaParser.parse(code.toString()).toString();
+        code.replace(11, 16, "WORLD").replace(code.length() - 2, code.length(), "34");
+        assertEquals(expected, statements.toString());
+        assertEquals("hello", ((Expression.LiteralExpression) ((Statement.LocalDeclarationStatement) statements.get(0)).initializer).getValue());
+    }
+
+    @Test
+    void mappedFilesAreNotReferencedByTheTree() throws Exception {
+        Path file = dir.resolve("script.lua");
+        Files.write(file, "x = \"hello\"".getBytes(StandardCharsets.US_ASCII));
+        Statement.AssignmentStatement assignment = (Statement.AssignmentStatement) LuaParser.parse(file).get(0);
+        // 映射是共享的，文件被改写后映射的内容也会变化
+        Files.write(file, "x = \"WORLD\"".getBytes(StandardCharsets.US_ASCII));
+        assertEquals("hello", ((Expression.LiteralExpression) assignment.value).getValue());
+    }
+}
@@ -0,0 +1,48 @@
+package top.skidder.parser;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+// 编译成闭包后执行与每次都遍历语法树的解释执行的耗时对比
+@Tag(Benchmarks.TAG)
+class LuaScriptBenchmarkTest {
+    private static final String ARITHMETIC = "local function fib(n) if n < 2 then return n end return fib(n - 1) + fib(n - 2) end\n" +
+            "local sum = 0\n" +
+            "for i = 1, 20000 do sum = sum + i * 3 % 7 - i // 5 + (i & 15) end\n" +
+            "local x = 1.5\n" +
+            "while x < 1e6 do x = x * 1.01 + 1 end\n" +
+            "return fib(18) + sum, x";
+
+    private static final String TABLES = "local points = {}\n" +
+            "for i = 1, 2000 do rawset(points, i, { x = i, y = i * 2, tag = 'p' .. i }) end\n" +
+            "local total = 0\n" +
+            "for _, p in ipairs(points) do total = total + p.x * p.y end\n" +
+            "for i = 1, #points do local p = rawget(points, i) if p.x % 2 == 0 then total = total - p.y end end\n" +
+            "local counts = { a = 0, b = 0 }\n" +
+            "for k, v in pairs(points) do if v.x > 1000 then rawset(counts, 'a', counts.a + 1) else rawset(counts, 'b', counts.b + 1) end end\n" +
+            "return total, counts.a, counts.b";
+
+    @Test
+    void arithmetic() throws Exception {
+        compare("arithmetic", ARITHMETIC);
+    }
+
+    @Test
+    void tables() throws Exception {
+        compare("tables", TABLES);
+    }
+
+    private static void compare(String name, String code) throws Exception {
+        List<Statement> statements = LuaParser.parse(code);
+        LuaScript script = LuaScript.compile(statements);
+        assertArrayEquals(NaiveInterpreter.execute(statements, LuaScript.createGlobals()), script.execute());
+
+        double naive = Benchmarks.millis(10, 20, () -> NaiveInterpreter.execute(statements, LuaScript.createGlobals()));
+        double compiled = Benchmarks.millis(10, 20, script::execute);
+        Benchmarks.report(name, "tree walking", naive, "closures", compiled);
+    }
+}
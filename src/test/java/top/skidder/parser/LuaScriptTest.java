@@ -0,0 +1,73 @@
+package top.skidder.parser;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class LuaScriptTest {
+    private static Object run(String code) throws ParseError {
+        return LuaScript.compile(code).execute()[0];
+    }
+
+    @Test
+    void evaluatesArithmeticWithLuaSemantics() throws ParseError {
+        assertEquals(7L, run("return 1 + 2 * 3"));
+        assertEquals(0.5, run("return 1 / 2"));
+        assertEquals(-4L, run("return -7 // 2"));
+        assertEquals(1L, run("return -7 % 2"));
+        assertEquals(8.0, run("return 2 ^ 3"));
+        assertEquals("a1", run("return 'a' .. 1"));
+        assertEquals(true, run("return 1 == 1.0"));
+        assertEquals(Long.MIN_VALUE, run("return 9223372036854775807 + 1"));
+    }
+
+    @Test
+    void localsClosuresAndLoops() throws ParseError {
+        String code = "local function counter()\n" +
+                "  local n = 0\n" +
+                "  return function() n = n + 1 return n end\n" +
+                "end\n" +
+                "local c = counter()\n" +
+                "c()\n" +
+                "local sum = 0\n" +
+                "for i = 1, 10 do sum = sum + i end\n" +
+                "local t = {10, 20, 30}\n" +
+                "for _, v in ipairs(t) do sum = sum + v end\n" +
+                "while sum > 100 do sum = sum - 100 end\n" +
+                "return c() + sum";
+        assertEquals(2L + 15L, run(code));
+    }
+
+    @Test
+    void recursionAndGlobals() throws ParseError {
+        LuaTable globals = LuaScript.createGlobals();
+        globals.put("base", 10L);
+        LuaScript script = LuaScript.compile("function fib(n) if n < 2 then return n end return fib(n - 1) + fib(n - 2) end\nresult = fib(base)");
+        script.execute(globals);
+        assertEquals(55L, globals.get("result"));
+        assertEquals(55L, ((LuaFunction) globals.get("fib")).call(10L)[0]);
+    }
+
+    @Test
+    void hostFunctionsAreCallable() throws ParseError {
+        LuaTable globals = LuaScript.createGlobals();
+        globals.put("twice", (LuaFunction) arguments -> new Object[]{(Long) arguments[0] * 2, "ok"});
+        assertArrayEquals(new Object[]{42L, "ok"}, LuaScript.compile("return twice(21)").execute(globals));
+    }
+
+    @Test
+    void runtimeErrorsAreLuaErrors() throws ParseError {
+        LuaError error = assertThrows(LuaError.class, () -> run("local x = nil\nreturn x()"));
+        assertEquals("return x()".indexOf('x') + "local x = nil\n".length(), error.getOffset());
+        LuaError thrown = assertThrows(LuaError.class, () -> run("error('boom')"));
+        assertEquals("boom", thrown.getValue());
+    }
+
+    @Test
+    void deepRecursionFailsCleanly() throws ParseError {
+        LuaError error = assertThrows(LuaError.class, () -> run("function f(n) return f(n + 1) + 1 end\nreturn f(1)"));
+        assertEquals("stack overflow", error.getMessage());
+    }
+}
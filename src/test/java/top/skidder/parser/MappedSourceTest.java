@@ -0,0 +1,59 @@
+package top.skidder.parser;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class MappedSourceTest {
+    @TempDir
+    Path dir;
+
+    private Path write(byte[] bytes) throws IOException {
+        Path file = dir.resolve("script.lua");
+        Files.write(file, bytes);
+        return file;
+    }
+
+    @Test
+    void asciiFileIsReadInPlace() throws Exception {
+        Path file = write("x = 1".getBytes(StandardCharsets.US_ASCII));
+        CharSequence source = MappedSource.map(file);
+        assertInstanceOf(MappedSource.AsciiView.class, source);
+        assertEquals("x = 1", source.toString());
+        assertEquals("= 1", source.subSequence(2, 5).toString());
+    }
+
+    @Test
+    void utf8FileWithBomIsDecoded() throws Exception {
+        byte[] text = "s = \"héllo 😀\"".getBytes(StandardCharsets.UTF_8);
+        byte[] bytes = new byte[text.length + 3];
+        bytes[0] = (byte) 0xEF;
+        bytes[1] = (byte) 0xBB;
+        bytes[2] = (byte) 0xBF;
+        System.arraycopy(text, 0, bytes, 3, text.length);
+        Path file = write(bytes);
+        assertEquals("s = \"héllo 😀\"", MappedSource.map(file).toString());
+
+        List<Statement> statements = LuaParser.parse(file);
+        Statement.AssignmentStatement assignment = (Statement.AssignmentStatement) statements.get(0);
+        assertEquals("héllo 😀", ((Expression.LiteralExpression) assignment.value).getValue());
+    }
+
+    @Test
+    void decodeSizeIsComputedWithoutOverflow() throws Exception {
+        assertEquals(20, MappedSource.decodedBytes(10));
+        assertEquals(Integer.MAX_VALUE - 1, MappedSource.decodedBytes(Integer.MAX_VALUE / 2));
+        // 1 GiB 的非 ASCII 源码按 int 计算会溢出成负数
+        assertThrows(IOException.class, () -> MappedSource.decodedBytes(1L << 30));
+        assertThrows(IOException.class, () -> MappedSource.decodedBytes(Integer.MAX_VALUE));
+    }
+}
@@ -0,0 +1,367 @@
+package top.skidder.parser;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// 测试用：最直接的树遍历解释器，每次执行都重新访问语法树，局部变量保存在按作用域串起来的 HashMap 中。
+// 只作为 LuaScript 基准测试的对照，覆盖基准脚本用到的语法，不检查运行时错误。
+// 语句返回 null 表示正常结束，返回 Object[] 表示执行了 return；表达式返回第一个值
+final class NaiveInterpreter implements AstVisitor<Object, NaiveInterpreter.Scope> {
+    static final class Scope {
+        final Map<String, Object> locals = new HashMap<>();
+        final Scope parent;
+        final LuaTable globals;
+
+        Scope(Scope parent, LuaTable globals) {
+            this.parent = parent;
+            this.globals = globals;
+        }
+
+        Scope child() {
+            return new Scope(this, globals);
+        }
+
+        Object get(String name) {
+            for (Scope scope = this; scope != null; scope = scope.parent) {
+                if (scope.locals.containsKey(name)) {
+                    return scope.locals.get(name);
+                }
+            }
+            return globals.get(name);
+        }
+
+        void set(String name, Object value) {
+            for (Scope scope = this; scope != null; scope = scope.parent) {
+                if (scope.locals.containsKey(name)) {
+                    scope.locals.put(name, value);
+                    return;
+                }
+            }
+            globals.put(name, value);
+        }
+    }
+
+    static Object[] execute(List<Statement> statements, LuaTable globals) {
+        Object[] result = new NaiveInterpreter().block(statements, new Scope(null, globals));
+        return result == null ? LuaFunction.NONE : result;
+    }
+
+    private Object[] block(List<Statement> statements, Scope scope) {
+        for (Statement statement : statements) {
+            Object[] result = (Object[]) statement.accept(this, scope);
+            if (result != null) {
+                return result;
+            }
+        }
+        return null;
+    }
+
+    private Object eval(Expression expression, Scope scope) {
+        return expression == null ? null : expression.accept(this, scope);
+    }
+
+    // 表达式的所有值：函数调用展开全部返回值
+    private Object[] values(Expression expression, Scope scope) {
+        if (expression instanceof Expression.FunctionCallExpression || expression instanceof Expression.MethodCallExpression) {
+            return call(expression, scope);
+        }
+        return new Object[]{eval(expression, scope)};
+    }
+
+    // 参数列表、返回值和表构造器：最后一项是函数调用时展开
+    private Object[] list(List<Expression> expressions, Scope scope) {
+        List<Object> values = new ArrayList<>();
+        for (int i = 0; i < expressions.size(); i++) {
+            if (i == expressions.size() - 1) {
+                for (Object value : values(expressions.get(i), scope)) {
+                    values.add(value);
+                }
+            } else {
+                values.add(eval(expressions.get(i), scope));
+            }
+        }
+        return values.toArray();
+    }
+
+    private Object[] call(Expression expression, Scope scope) {
+        Object function;
+        Object[] arguments;
+        if (expression instanceof Expression.FunctionCallExpression) {
+            Expression.FunctionCallExpression call = (Expression.FunctionCallExpression) expression;
+            function = scope.get(call.name);
+            arguments = list(call.arguments, scope);
+        } else {
+            Expression.MethodCallExpression call = (Expression.MethodCallExpression) expression;
+            Object object = eval(call.getObject(), scope);
+            function = ((LuaTable) object).get(call.getMethod());
+            List<Expression> rest = call.getArguments().subList(call.selfArguments(), call.getArguments().size());
+            arguments = list(rest, scope);
+            if (call.isColonCall) {
+                Object[] withSelf = new Object[arguments.length + 1];
+                withSelf[0] = object;
+                System.arraycopy(arguments, 0, withSelf, 1, arguments.length);
+                arguments = withSelf;
+            }
+        }
+        Object[] results = ((LuaFunction) function).call(arguments);
+        return results == null ? LuaFunction.NONE : results;
+    }
+
+    private static Object first(Object[] values) {
+        return values.length == 0 ? null : values[0];
+    }
+
+    private LuaFunction closure(List<String> parameters, List<Statement> body, Scope scope) {
+        return arguments -> {
+            Scope local = scope.child();
+            for (int i = 0; i < parameters.size(); i++) {
+                local.locals.put(parameters.get(i), i < arguments.length ? arguments[i] : null);
+            }
+            Object[] result = block(body, local);
+            return result == null ? LuaFunction.NONE : result;
+        };
+    }
+
+    @Override
+    public Object visitNode(AstNode node, Scope scope) {
+        throw new UnsupportedOperationException(node.getClass().getSimpleName());
+    }
+
+    @Override
+    public Object visitExpressionStatement(Statement.ExpressionStatement node, Scope scope) {
+        Expression expression = node.getExpression();
+        if (expression instanceof Expression.FunctionDefinitionExpression) {
+            Expression.FunctionDefinitionExpression definition = (Expression.FunctionDefinitionExpression) expression;
+            scope.set(definition.name, closure(definition.parameters, definition.body, scope));
+        } else {
+            values(expression, scope);
+        }
+        return null;
+    }
+
+    @Override
+    public Object visitAssignment(Statement.AssignmentStatement node, Scope scope) {
+        scope.set(node.variable, eval(node.value, scope));
+        return null;
+    }
+
+    @Override
+    public Object visitIf(Statement.IfStatement node, Scope scope) {
+        if (LuaValues.truthy(eval(node.getCondition(), scope))) {
+            return block(node.getIfStatements(), scope.child());
+        }
+        List<Expression> conditions = node.getElseifConditions();
+        for (int i = 0; i < conditions.size(); i++) {
+            if (LuaValues.truthy(eval(conditions.get(i), scope))) {
+                return block(node.getElseifBody(i), scope.child());
+            }
+        }
+        return block(node.getElseStatements(), scope.child());
+    }
+
+    @Override
+    public Object visitWhile(Statement.WhileStatement node, Scope scope) {
+        while (LuaValues.truthy(eval(node.getCondition(), scope))) {
+            Object[] result = block(node.getBody(), scope.child());
+            if (result != null) {
+                return result;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Object visitRepeat(Statement.RepeatStatement node, Scope scope) {
+        while (true) {
+            Scope body = scope.child();
+            Object[] result = block(node.getBody(), body);
+            if (result != null) {
+                return result;
+            }
+            if (LuaValues.truthy(eval(node.getCondition(), body))) {
+                return null;
+            }
+        }
+    }
+
+    @Override
+    public Object visitFor(Statement.ForStatement node, Scope scope) {
+        Object start = eval(node.getStart(), scope);
+        Object end = eval(node.getEnd(), scope);
+        Object step = node.getStep() == null ? (Object) 1L : eval(node.getStep(), scope);
+        for (Object i = start; ; i = LuaValues.arithmetic("+", i, step)) {
+            int order = LuaValues.order(i, end);
+            if (LuaValues.order(step, 0L) > 0 ? order > 0 : order < 0) {
+                return null;
+            }
+            Scope body = scope.child();
+            body.locals.put(node.getVarName(), i);
+            Object[] result = block(node.getBody(), body);
+            if (result != null) {
+                return result;
+            }
+        }
+    }
+
+    @Override
+    public Object visitForIn(Statement.ForInStatement node, Scope scope) {
+        Object[] initial = values(node.getIterator(), scope);
+        LuaFunction next = (LuaFunction) initial[0];
+        Object state = initial.length > 1 ? initial[1] : null;
+        Object control = initial.length > 2 ? initial[2] : null;
+        while (true) {
+            Object[] results = next.call(state, control);
+            control = results == null ? null : first(results);
+            if (control == null) {
+                return null;
+            }
+            Scope body = scope.child();
+            body.locals.put(node.getKey(), control);
+            if (node.getValue() != null) {
+                body.locals.put(node.getValue(), results.length > 1 ? results[1] : null);
+            }
+            Object[] result = block(node.getBody(), body);
+            if (result != null) {
+                return result;
+            }
+        }
+    }
+
+    @Override
+    public Object visitLocalDeclaration(Statement.LocalDeclarationStatement node, Scope scope) {
+        if (node.initializer instanceof Expression.FunctionDefinitionExpression) {
+            Expression.FunctionDefinitionExpression definition = (Expression.FunctionDefinitionExpression) node.initializer;
+            scope.locals.put(node.variableName, null);
+            scope.locals.put(node.variableName, closure(definition.parameters, definition.body, scope));
+        } else {
+            scope.locals.put(node.variableName, eval(node.initializer, scope));
+        }
+        return null;
+    }
+
+    @Override
+    public Object visitReturn(Statement.ReturnStatement node, Scope scope) {
+        return list(node.getReturnValues(), scope);
+    }
+
+    @Override
+    public Object visitLiteral(Expression.LiteralExpression node, Scope scope) {
+        if (TokenKind.TRUE.type.equals(node.type)) {
+            return TokenKind.TRUE.text.equals(node.getValue());
+        }
+        return "NUMBER".equals(node.type) ? LuaValues.toNumber(node.getValue()) : node.getValue();
+    }
+
+    @Override
+    public Object visitNumberLiteral(Expression.NumberLiteralExpression node, Scope scope) {
+        return node.isInteger() ? (Object) node.longValue() : (Object) node.doubleValue();
+    }
+
+    @Override
+    public Object visitBooleanLiteral(Expression.BooleanLiteralExpression node, Scope scope) {
+        return node.getValue();
+    }
+
+    @Override
+    public Object visitNilLiteral(Expression.NilLiteralExpression node, Scope scope) {
+        return null;
+    }
+
+    @Override
+    public Object visitBinary(Expression.BinaryExpression node, Scope scope) {
+        Object left = eval(node.left, scope);
+        switch (node.operator) {
+            case "and":
+                return LuaValues.truthy(left) ? eval(node.right, scope) : left;
+            case "or":
+                return LuaValues.truthy(left) ? left : eval(node.right, scope);
+            default:
+                break;
+        }
+        Object right = eval(node.right, scope);
+        switch (node.operator) {
+            case "..":
+                return LuaValues.toDisplayString(left) + LuaValues.toDisplayString(right);
+            case "==":
+                return LuaValues.equal(left, right);
+            case "~=":
+                return !LuaValues.equal(left, right);
+            case "<":
+                return LuaValues.order(left, right) < 0;
+            case "<=":
+                return LuaValues.order(left, right) <= 0;
+            case ">":
+                return LuaValues.order(left, right) > 0;
+            case ">=":
+                return LuaValues.order(left, right) >= 0;
+            case "&":
+            case "|":
+            case "~":
+            case "<<":
+            case ">>":
+                return LuaValues.bitwise(node.operator, LuaValues.integer(left), LuaValues.integer(right));
+            default:
+                return LuaValues.arithmetic(node.operator, left, right);
+        }
+    }
+
+    @Override
+    public Object visitUnary(Expression.UnaryExpression node, Scope scope) {
+        Object value = eval(node.expression, scope);
+        switch (node.operator) {
+            case "not":
+                return !LuaValues.truthy(value);
+            case "-":
+                return LuaValues.arithmetic("-", 0L, value);
+            case "~":
+                return ~LuaValues.integer(value);
+            default:
+                return value instanceof LuaTable ? ((LuaTable) value).length() : (long) ((String) value).length();
+        }
+    }
+
+    @Override
+    public Object visitFunctionDefinition(Expression.FunctionDefinitionExpression node, Scope scope) {
+        return closure(node.parameters, node.body, scope);
+    }
+
+    @Override
+    public Object visitAnonymousFunction(Expression.AnonymousFunctionExpression node, Scope scope) {
+        return closure(node.parameters, node.body, scope);
+    }
+
+    @Override
+    public Object visitFunctionCall(Expression.FunctionCallExpression node, Scope scope) {
+        return first(call(node, scope));
+    }
+
+    @Override
+    public Object visitMethodCall(Expression.MethodCallExpression node, Scope scope) {
+        return first(call(node, scope));
+    }
+
+    @Override
+    public Object visitMemberAccess(Expression.MemberAccessExpression node, Scope scope) {
+        return ((LuaTable) eval(node.getObject(), scope)).get(node.getMember());
+    }
+
+    @Override
+    public Object visitTable(Expression.TableExpression node, Scope scope) {
+        LuaTable table = new LuaTable();
+        Object[] array = list(node.getArrayElements(), scope);
+        for (int i = 0; i < array.length; i++) {
+            table.put(i + 1L, array[i]);
+        }
+        for (Map.Entry<String, Expression> entry : node.getTableEntries().entrySet()) {
+            table.put(entry.getKey(), eval(entry.getValue(), scope));
+        }
+        return table;
+    }
+
+    @Override
+    public Object visitVariable(Expression.VariableExpression node, Scope scope) {
+        return scope.get(node.getName());
+    }
+}
@@ -0,0 +1,89 @@
+package top.skidder.parser;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class NestingTest {
+    private static final int DEEP = 5000;
+
+    private static String nestedIfs(int depth) {
+        StringBuilder code = new StringBuilder();
+        for (int i = 0; i < depth; i++) {
+            code.append("if x then ");
+        }
+        code.append("y = 1 ");
+        for (int i = 0; i < depth; i++) {
+            code.append("end ");
+        }
+        return code.toString();
+    }
+
+    private static String nestedParentheses(int depth) {
+        StringBuilder code = new StringBuilder("x = ");
+        for (int i = 0; i < depth; i++) {
+            code.append('(');
+        }
+        code.append('1');
+        for (int i = 0; i < depth; i++) {
+            code.append(')');
+        }
+        return code.toString();
+    }
+
+    // 在小栈线程上解析，递归实现会在这里栈溢出
+    private static Throwable parseOnSmallStack(String code) throws InterruptedException {
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread thread = new Thread(null, () -> {
+            try {
+                LuaParser.parse(code);
+            } catch (Throwable t) {
+                failure.set(t);
+            }
+        }, "small-stack", 256 * 1024);
+        thread.start();
+        thread.join();
+        return failure.get();
+    }
+
+    @Test
+    void deepBlocksParseOnSmallStack() throws InterruptedException {
+        assertNull(parseOnSmallStack(nestedIfs(DEEP)));
+        assertNull(parseOnSmallStack(nestedParentheses(DEEP)));
+    }
+
+    @Test
+    void deepOperatorChainParses() throws ParseError {
+        StringBuilder code = new StringBuilder("x = 1");
+        for (int i = 0; i < DEEP; i++) {
+            code.append(" .. 1");
+        }
+        Statement statement = LuaParser.parse(code).get(0);
+        Expression value = assertInstanceOf(Statement.AssignmentStatement.class, statement).value;
+        assertInstanceOf(Expression.BinaryExpression.class, value);
+    }
+
+    @Test
+    void nestedBlocksKeepStructure() throws ParseError {
+        List<Statement> statements = LuaParser.parse(nestedIfs(3));
+        assertEquals(1, statements.size());
+        Statement.IfStatement outer = assertInstanceOf(Statement.IfStatement.class, statements.get(0));
+        Statement.IfStatement middle = assertInstanceOf(Statement.IfStatement.class, outer.getIfStatements().get(0));
+        Statement.IfStatement inner = assertInstanceOf(Statement.IfStatement.class, middle.getIfStatements().get(0));
+        assertInstanceOf(Statement.AssignmentStatement.class, inner.getIfStatements().get(0));
+    }
+
+    @Test
+    void depthLimitFailsCleanly() {
+        ParseError error = assertThrows(ParseError.class, () -> LuaParser.parse(nestedIfs(100), new SymbolPool(), 50));
+        assertTrue(error.getMessage().contains("limit 50"), error.getMessage());
+        assertThrows(ParseError.class, () -> LuaParser.parse(nestedParentheses(100), new SymbolPool(), 50));
+    }
+}
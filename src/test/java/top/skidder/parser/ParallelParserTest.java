@@ -0,0 +1,57 @@
+package top.skidder.parser;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ParallelParserTest {
+    private static ForkJoinPool pool;
+
+    @BeforeAll
+    static void startPool() {
+        pool = new ForkJoinPool(4);
+    }
+
+    @AfterAll
+    static void stopPool() {
+        pool.shutdown();
+    }
+
+    // 足够大、能切成多段的源码，混合函数定义、数据表和普通语句
+    private static String largeSource() {
+        StringBuilder code = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            code.append("function f").append(i).append("(a, b)\n")
+                    .append("  if a then return a + b else return (a) end\n")
+                    .append("end\n")
+                    .append("t").append(i).append(" = { x = ").append(i).append(", k = 'v', 3 }\n")
+                    .append("f").append(i).append("(1, 2)\n");
+        }
+        return code.toString();
+    }
+
+    @Test
+    void matchesSequentialParse() throws ParseError {
+        String code = largeSource();
+        Trees.assertSameTree(LuaParser.parse(code), LuaParser.parseParallel(code, new SymbolPool(), pool));
+    }
+
+    @Test
+    void smallInputFallsBackToSequential() throws ParseError {
+        String code = Trees.assignments(3);
+        Trees.assertSameTree(LuaParser.parse(code), LuaParser.parseParallel(code, new SymbolPool(), pool));
+    }
+
+    @Test
+    void errorsMatchSequentialParse() {
+        String code = largeSource() + "x = = 1\n" + largeSource();
+        ParseError sequential = assertThrows(ParseError.class, () -> LuaParser.parse(code));
+        ParseError parallel = assertThrows(ParseError.class, () -> LuaParser.parseParallel(code, new SymbolPool(), pool));
+        assertEquals(sequential.getMessage(), parallel.getMessage());
+    }
+}
@@ -0,0 +1,45 @@
+package top.skidder.parser;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ParseContextTest {
+    private static final String[] SNIPPETS = {
+            "x = 1",
+            "if a then b = a .. 'x' elseif c then d = {1, 2, k = 3} else e = -f(1) end",
+            "function g(a, b) while a do a = a - 1 end return a end",
+            "repeat y = y + 1 until y > 10",
+            "",
+    };
+
+    @Test
+    void reusedContextMatchesFreshParse() throws ParseError {
+        ParseContext context = new ParseContext();
+        for (int round = 0; round < 3; round++) {
+            for (String snippet : SNIPPETS) {
+                Trees.assertSameTree(new Parser(new Lexer(snippet).tokenize()).parseAll(), context.parse(snippet));
+            }
+        }
+    }
+
+    @Test
+    void contextRecoversAfterErrors() throws ParseError {
+        ParseContext context = new ParseContext();
+        assertThrows(ParseError.class, () -> context.parse("if a then b = = 1 end"));
+        assertThrows(IllegalArgumentException.class, () -> context.parse("s = 'open"));
+        assertThrows(ParseError.class, () -> context.parse("if a then if b then c = 1 end end", null, 1));
+        assertEquals(1, context.parse("if a then if b then c = 1 end end").size());
+        Trees.assertSameTree(LuaParser.parse(SNIPPETS[1]), context.parse(SNIPPETS[1]));
+    }
+
+    @Test
+    void largerInputsGrowBuffers() throws ParseError {
+        ParseContext context = new ParseContext();
+        context.parse("x = 1");
+        String code = Trees.assignments(1000);
+        Trees.assertSameTree(LuaParser.parse(code), context.parse(code));
+        assertEquals(1, context.parse("x = 1").size());
+    }
+}
@@ -0,0 +1,65 @@
+package top.skidder.parser;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class PrecedenceTest {
+    // 把表达式写成完全加括号的形式
+    private static String render(Expression expression) {
+        if (expression instanceof Expression.BinaryExpression) {
+            Expression.BinaryExpression binary = (Expression.BinaryExpression) expression;
+            return "(" + render(binary.left) + " " + binary.operator + " " + render(binary.right) + ")";
+        }
+        if (expression instanceof Expression.UnaryExpression) {
+            Expression.UnaryExpression unary = (Expression.UnaryExpression) expression;
+            return "(" + unary.operator + " " + render(unary.expression) + ")";
+        }
+        if (expression instanceof Expression.VariableExpression) {
+            return ((Expression.VariableExpression) expression).getName();
+        }
+        if (expression instanceof Expression.LiteralExpression) {
+            return ((Expression.LiteralExpression) expression).getValue();
+        }
+        return expression.toString();
+    }
+
+    private static String parse(String expression) throws ParseError {
+        return render(((Statement.AssignmentStatement) LuaParser.parse("x = " + expression).get(0)).value);
+    }
+
+    @Test
+    void binaryPrecedence() throws ParseError {
+        assertEquals("(a or (b and (c < (d | (e ~ (f & (g << (h .. (i + (j * k))))))))))",
+                parse("a or b and c < d | e ~ f & g << h .. i + j * k"));
+        assertEquals("((((a * b) / c) // d) % e)", parse("a * b / c // d % e"));
+        assertEquals("((a - b) + c)", parse("a - b + c"));
+    }
+
+    @Test
+    void rightAssociativeOperators() throws ParseError {
+        assertEquals("(a .. (b .. c))", parse("a .. b .. c"));
+        assertEquals("(a ^ (b ^ c))", parse("a ^ b ^ c"));
+    }
+
+    @Test
+    void unaryOperators() throws ParseError {
+        assertEquals("(- (a ^ b))", parse("-a ^ b"));
+        assertEquals("((- a) * b)", parse("-a * b"));
+        assertEquals("(a ^ (- b))", parse("a ^ -b"));
+        assertEquals("((not a) == b)", parse("not a == b"));
+        assertEquals("((# a) + (~ b))", parse("#a + ~b"));
+    }
+
+    @Test
+    void parenthesesOverridePrecedence() throws ParseError {
+        assertEquals("((a + b) * c)", parse("(a + b) * c"));
+    }
+
+    @Test
+    void missingOperandIsAnError() {
+        assertThrows(ParseError.class, () -> LuaParser.parse("x = a +"));
+        assertThrows(ParseError.class, () -> LuaParser.parse("x = * a"));
+    }
+}
@@ -0,0 +1,59 @@
+package top.skidder.parser;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SourcePositionTest {
+    @Test
+    void lineTableHandlesAllLineEndings() {
+        LineTable table = new LineTable("a\nbc\r\nd\re");
+        assertEquals(4, table.lineCount());
+        assertEquals(1, table.line(0));
+        assertEquals(2, table.line(2));
+        assertEquals(2, table.column(3));
+        assertEquals(3, table.line(6));
+        assertEquals(4, table.line(8));
+        assertEquals("4:2", table.format(9));
+        assertEquals(6, table.lineStart(3));
+        assertThrows(IndexOutOfBoundsException.class, () -> table.line(10));
+        assertThrows(IndexOutOfBoundsException.class, () -> table.lineStart(5));
+    }
+
+    @Test
+    void tokensRecordTheirRange() {
+        String code = "local x = 'hi'";
+        TokenBuffer tokens = new Lexer(code).tokenize();
+        assertEquals(0, tokens.start(0));
+        assertEquals(5, tokens.end(0));
+        assertEquals(code.indexOf('\''), tokens.start(3));
+        assertEquals(code.length(), tokens.end(3));
+    }
+
+    @Test
+    void nodesRecordTheirRange() throws ParseError {
+        String code = "x = 1\nif a then\n  y = a + 2\nend";
+        List<Statement> statements = LuaParser.parse(code);
+        assertEquals(0, statements.get(0).getOffset());
+        assertEquals(5, statements.get(0).getEndOffset());
+
+        Statement.IfStatement statement = (Statement.IfStatement) statements.get(1);
+        assertEquals(code.indexOf("if"), statement.getOffset());
+        assertEquals(code.length(), statement.getEndOffset());
+
+        Statement.AssignmentStatement inner = (Statement.AssignmentStatement) statement.getIfStatements().get(0);
+        assertEquals(code.indexOf("a + 2"), inner.value.getOffset());
+        assertEquals(code.indexOf("a + 2") + 5, inner.value.getEndOffset());
+        assertEquals("3:3", new LineTable(code).format(inner.getOffset()));
+    }
+
+    @Test
+    void parseErrorsCarryTheirOffset() {
+        String code = "x = 1\ny = * 2";
+        ParseError error = assertThrows(ParseError.class, () -> LuaParser.parse(code));
+        assertEquals(code.indexOf('*'), error.getOffset());
+    }
+}
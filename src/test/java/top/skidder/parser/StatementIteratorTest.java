@@ -0,0 +1,81 @@
+package top.skidder.parser;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StatementIteratorTest {
+    // 记录读到了第几个字符
+    private static final class CountingReader extends StringReader {
+        int read;
+
+        CountingReader(String s) {
+            super(s);
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) throws IOException {
+            int n = super.read(buffer, offset, length);
+            if (n > 0) {
+                read += n;
+            }
+            return n;
+        }
+    }
+
+    @Test
+    void yieldsSameStatementsAsParse() throws ParseError {
+        String code = Trees.assignments(100) + "function f(a) return a end\n";
+        List<Statement> streamed = new ArrayList<>();
+        LuaParser.statements(new StringReader(code)).forEachRemaining(streamed::add);
+        Trees.assertSameTree(LuaParser.parse(code), streamed);
+    }
+
+    @Test
+    void readsInputIncrementally() {
+        String code = Trees.assignments(100000);
+        CountingReader reader = new CountingReader(code);
+        Iterator<Statement> statements = LuaParser.statements(reader);
+        assertTrue(statements.hasNext());
+        assertEquals("v0", ((Statement.AssignmentStatement) statements.next()).variable);
+        assertTrue(reader.read < code.length(), "read " + reader.read + " of " + code.length());
+    }
+
+    @Test
+    void statementsBeforeAnErrorAreYielded() {
+        Iterator<Statement> statements = LuaParser.statements(new StringReader("a = 1\nb = = 2\n"));
+        assertInstanceOf(Statement.AssignmentStatement.class, statements.next());
+        IllegalStateException error = assertThrows(IllegalStateException.class, statements::hasNext);
+        assertInstanceOf(ParseError.class, error.getCause());
+        assertFalse(statements.hasNext());
+        assertThrows(NoSuchElementException.class, statements::next);
+    }
+
+    @Test
+    void readFailuresAreUnchecked() {
+        Reader failing = new Reader() {
+            @Override
+            public int read(char[] buffer, int offset, int length) throws IOException {
+                throw new IOException("boom");
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        assertThrows(UncheckedIOException.class, () -> LuaParser.statements(failing).hasNext());
+    }
+}
@@ -0,0 +1,52 @@
+package top.skidder.parser;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.Reader;
+import java.io.StringReader;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class StreamingLexerTest {
+    // 每次最多读取一个字符，让每个 token 都跨越读取边界
+    private static Reader trickle(String code) {
+        return new StringReader(code) {
+            @Override
+            public int read(char[] buffer, int offset, int length) throws java.io.IOException {
+                return super.read(buffer, offset, Math.min(length, 1));
+            }
+        };
+    }
+
+    @Test
+    void readerProducesSameTreeAsString() throws Exception {
+        String code = "local s = 'a\\'b' -- comment\nif x >= 10 then print(s .. [==[long ]] string]==]) end\n" + Trees.assignments(2000);
+        Trees.assertSameTree(LuaParser.parse(code), LuaParser.parse(new StringReader(code)));
+        Trees.assertSameTree(LuaParser.parse(code), LuaParser.parse(trickle(code)));
+    }
+
+    @Test
+    void tokenLongerThanWindowIsKept() throws Exception {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            text.append((char) ('a' + i % 26));
+        }
+        String code = "x = \"" + text + "\"";
+        Statement.AssignmentStatement assignment = (Statement.AssignmentStatement) LuaParser.parse(trickle(code)).get(0);
+        assertEquals(text.toString(), ((Expression.LiteralExpression) assignment.value).getValue());
+    }
+
+    @Test
+    void streamingLexerMatchesTokens() {
+        String code = "a.b:c(1, 2.5e-3, 0x1p4) ~= nil";
+        Lexer strings = new Lexer(code);
+        Lexer stream = new Lexer(trickle(code));
+        for (TokenKind kind = strings.next(); ; kind = strings.next()) {
+            assertEquals(kind, stream.next());
+            assertEquals(strings.tokenText(kind), stream.tokenText(kind));
+            if (kind == TokenKind.EOF) {
+                break;
+            }
+        }
+    }
+}
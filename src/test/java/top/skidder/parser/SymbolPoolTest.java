@@ -0,0 +1,68 @@
+package top.skidder.parser;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class SymbolPoolTest {
+    @Test
+    void internReturnsCanonicalInstance() {
+        SymbolPool pool = new SymbolPool();
+        String first = pool.intern("name");
+        assertSame(first, pool.intern(new String("name")));
+        assertSame(first, pool.intern("local name = 1", 6, 10));
+        assertEquals("other", pool.intern(new StringBuilder("other"), 0, 5));
+    }
+
+    @Test
+    void capacityIsBounded() {
+        SymbolPool pool = new SymbolPool(1, 4);
+        for (int i = 0; i < 1000; i++) {
+            assertEquals("s" + i, pool.intern("s" + i));
+        }
+        // 淘汰后仍然返回内容相同的字符串
+        assertEquals("s0", pool.intern("s0"));
+    }
+
+    @Test
+    void sharedAcrossParses() throws Exception {
+        SymbolPool pool = new SymbolPool();
+        Statement.AssignmentStatement a = (Statement.AssignmentStatement) LuaParser.parse("counter = 'short'", pool).get(0);
+        Statement.AssignmentStatement b = (Statement.AssignmentStatement) LuaParser.parse("counter = 'short'", pool).get(0);
+        assertSame(a.variable, b.variable);
+        assertSame(((Expression.LiteralExpression) a.value).getValue(), ((Expression.LiteralExpression) b.value).getValue());
+    }
+
+    @Test
+    void concurrentInternAgrees() throws Exception {
+        SymbolPool pool = new SymbolPool(4, 1024);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String[]>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                futures.add(executor.submit(() -> {
+                    String[] results = new String[200];
+                    for (int i = 0; i < results.length; i++) {
+                        results[i] = pool.intern(new String("id" + i % 50));
+                    }
+                    return results;
+                }));
+            }
+            for (Future<String[]> future : futures) {
+                String[] results = future.get();
+                for (int i = 0; i < results.length; i++) {
+                    assertEquals("id" + i % 50, results[i]);
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package top.skidder.parser;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TokenBufferTest {
+    @Test
+    void storesKindsOffsetsAndValues() {
+        String code = "print(\"a\\tb\", x1)";
+        TokenBuffer tokens = new Lexer(code).tokenize();
+        assertEquals(6, tokens.size());
+        assertEquals(TokenKind.IDENTIFIER, tokens.kind(0));
+        assertEquals("print", tokens.value(0));
+        assertEquals(TokenKind.STRING, tokens.kind(2));
+        assertEquals("a\tb", tokens.value(2));
+        assertEquals(6, tokens.start(2));
+        assertEquals(12, tokens.end(2));
+        assertEquals("x1", tokens.value(4));
+        assertEquals(")", tokens.value(5));
+        assertEquals(TokenKind.EOF, tokens.kind(6));
+        assertEquals(code.length(), tokens.offset(6));
+    }
+
+    @Test
+    void growsPastInitialCapacity() {
+        StringBuilder code = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            code.append("a").append(i).append(' ');
+        }
+        TokenBuffer tokens = new TokenBuffer(code, 1, null);
+        new Lexer(code).tokenize(tokens);
+        assertEquals(1000, tokens.size());
+        assertEquals("a999", tokens.value(999));
+    }
+
+    @Test
+    void fillsOnDemandFromLexer() {
+        String code = "a b c";
+        TokenBuffer tokens = new Lexer(code).tokens(null);
+        assertEquals(0, tokens.size());
+        assertEquals("c", tokens.value(2));
+        assertEquals(3, tokens.size());
+        assertEquals(TokenKind.EOF, tokens.kind(3));
+    }
+}
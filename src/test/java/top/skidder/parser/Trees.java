@@ -0,0 +1,29 @@
+package top.skidder.parser;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.fail;
+
+// 测试用：按序列化结果比较两棵语法树，包括节点结构、值和源码范围
+final class Trees {
+    private Trees() {
+    }
+
+    static void assertSameTree(List<Statement> expected, List<Statement> actual) {
+        if (!Arrays.equals(AstSerializer.write(expected), AstSerializer.write(actual))) {
+            assertEquals(expected.toString(), actual.toString());
+            fail("trees differ in source ranges");
+        }
+    }
+
+    // 由 count 条赋值语句组成的源码
+    static String assignments(int count) {
+        StringBuilder code = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            code.append("v").append(i).append(" = ").append(i).append(" + f(").append(i).append(")\n");
+        }
+        return code.toString();
+    }
+}